@@ -36,6 +36,8 @@ import com.hubspot.baragon.agent.config.TemplateConfiguration;
 import com.hubspot.baragon.agent.config.TestingConfiguration;
 import com.hubspot.baragon.agent.handlebars.FirstOfHelper;
 import com.hubspot.baragon.agent.handlebars.FormatTimestampHelper;
+import com.hubspot.baragon.agent.lbs.HaproxyRuntimeAdapter;
+import com.hubspot.baragon.agent.lbs.LbRuntimeAdapter;
 import com.hubspot.baragon.agent.models.LbConfigTemplate;
 import com.hubspot.baragon.config.AuthConfiguration;
 import com.hubspot.baragon.config.ZooKeeperConfiguration;
@@ -52,6 +54,7 @@ public class BaragonAgentServiceModule extends AbstractModule {
   public static final String AGENT_MOST_RECENT_REQUEST_ID = "baragon.agent.mostRecentRequestId";
   public static final String AGENT_LOCK_TIMEOUT_MS = "baragon.agent.lock.timeoutMs";
   public static final String AGENT_INSTANCE_ID = "baragon.agent.instanceid";
+  public static final String AGENT_RUNTIME_ADAPTER = "baragon.agent.runtimeAdapter";
   public static final String DEFAULT_TEMPLATE_NAME = "default";
 
   @Override
@@ -101,6 +104,17 @@ public class BaragonAgentServiceModule extends AbstractModule {
     return configuration.getLoadBalancerConfiguration();
   }
 
+  @Provides
+  @Singleton
+  @Named(AGENT_RUNTIME_ADAPTER)
+  public Optional<LbRuntimeAdapter> providesRuntimeAdapter(LoadBalancerConfiguration loadBalancerConfiguration) {
+    if (loadBalancerConfiguration.getRuntimeApi().isPresent()) {
+      return Optional.<LbRuntimeAdapter>of(new HaproxyRuntimeAdapter(loadBalancerConfiguration.getRuntimeApi().get()));
+    } else {
+      return Optional.absent();
+    }
+  }
+
   @Provides
   public ZooKeeperConfiguration provideZooKeeperConfiguration(BaragonAgentConfiguration configuration) {
     return configuration.getZooKeeperConfiguration();
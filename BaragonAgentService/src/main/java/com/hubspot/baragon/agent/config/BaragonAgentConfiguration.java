@@ -79,6 +79,11 @@ public class BaragonAgentConfiguration extends Configuration {
   @JsonProperty("exitOnStartupError")
   private boolean exitOnStartupError = false;
 
+  // threads used to render, compare and write the configs of every service on startup
+  @JsonProperty("bootstrapThreads")
+  @Min(1)
+  private int bootstrapThreads = 10;
+
   public HttpClientConfiguration getHttpClientConfiguration() {
     return httpClientConfiguration;
   }
@@ -194,4 +199,12 @@ public class BaragonAgentConfiguration extends Configuration {
   public void setExitOnStartupError(boolean exitOnStartupError) {
     this.exitOnStartupError = exitOnStartupError;
   }
+
+  public int getBootstrapThreads() {
+    return bootstrapThreads;
+  }
+
+  public void setBootstrapThreads(int bootstrapThreads) {
+    this.bootstrapThreads = bootstrapThreads;
+  }
 }
@@ -1,5 +1,6 @@
 package com.hubspot.baragon.agent.config;
 
+import javax.validation.Valid;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
@@ -26,6 +27,21 @@ public class LoadBalancerConfiguration {
   @Min(0)
   private int commandTimeoutMs = DEFAULT_COMMAND_TIMEOUT_MS;
 
+  // When above 0, apply and revert requests arriving within this many ms of each other are written together, checked
+  // with one run of checkConfigCommand and activated with one run of reloadConfigCommand
+  @Min(0)
+  private int batchWindowMs = 0;
+
+  @Min(1)
+  private int maxBatchSize = 50;
+
+  // When set, the hashes of written configs are kept in this file across restarts
+  private String manifestPath;
+
+  // When set, changes that only add or remove upstreams are pushed to the load balancer at runtime instead of reloading
+  @Valid
+  private RuntimeApiConfiguration runtimeApi;
+
   public String getName() {
     return name;
   }
@@ -66,6 +82,38 @@ public class LoadBalancerConfiguration {
     this.commandTimeoutMs = commandTimeoutMs;
   }
 
+  public int getBatchWindowMs() {
+    return batchWindowMs;
+  }
+
+  public void setBatchWindowMs(int batchWindowMs) {
+    this.batchWindowMs = batchWindowMs;
+  }
+
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  public void setMaxBatchSize(int maxBatchSize) {
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  public Optional<String> getManifestPath() {
+    return Optional.fromNullable(Strings.emptyToNull(manifestPath));
+  }
+
+  public void setManifestPath(String manifestPath) {
+    this.manifestPath = manifestPath;
+  }
+
+  public Optional<RuntimeApiConfiguration> getRuntimeApi() {
+    return Optional.fromNullable(runtimeApi);
+  }
+
+  public void setRuntimeApi(RuntimeApiConfiguration runtimeApi) {
+    this.runtimeApi = runtimeApi;
+  }
+
   public Optional<String> getDomain() {
     return Optional.fromNullable(Strings.emptyToNull(domain));
   }
@@ -0,0 +1,76 @@
+package com.hubspot.baragon.agent.config;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+// Where to reach the HAProxy runtime API (a `stats socket ipv4@host:port level admin` listener), and how the servers
+// of a service's backend are named. Each backend needs serverSlots servers, e.g. declared with server-template.
+public class RuntimeApiConfiguration {
+  @NotNull
+  private String host = "127.0.0.1";
+
+  @Min(1)
+  private int port;
+
+  // formatted with the service id
+  @NotNull
+  private String backendNameFormat = "%s";
+
+  // formatted with the slot number, starting at 1 like the servers of a server-template
+  @NotNull
+  private String serverNameFormat = "srv%d";
+
+  @Min(1)
+  private int serverSlots = 50;
+
+  @Min(0)
+  private int timeoutMs = 2000;
+
+  public String getHost() {
+    return host;
+  }
+
+  public void setHost(String host) {
+    this.host = host;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public void setPort(int port) {
+    this.port = port;
+  }
+
+  public String getBackendNameFormat() {
+    return backendNameFormat;
+  }
+
+  public void setBackendNameFormat(String backendNameFormat) {
+    this.backendNameFormat = backendNameFormat;
+  }
+
+  public String getServerNameFormat() {
+    return serverNameFormat;
+  }
+
+  public void setServerNameFormat(String serverNameFormat) {
+    this.serverNameFormat = serverNameFormat;
+  }
+
+  public int getServerSlots() {
+    return serverSlots;
+  }
+
+  public void setServerSlots(int serverSlots) {
+    this.serverSlots = serverSlots;
+  }
+
+  public int getTimeoutMs() {
+    return timeoutMs;
+  }
+
+  public void setTimeoutMs(int timeoutMs) {
+    this.timeoutMs = timeoutMs;
+  }
+}
@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.inject.Inject;
 import com.hubspot.baragon.agent.lbs.LocalLbAdapter;
+import com.hubspot.baragon.agent.models.ConfigCheckResult;
 import com.hubspot.dropwizard.guice.InjectableHealthCheck;
 
 public class LoadBalancerHealthcheck extends InjectableHealthCheck {
@@ -19,11 +20,16 @@ public class LoadBalancerHealthcheck extends InjectableHealthCheck {
     this.adapter = adapter;
   }
 
+  // serves the last check while the configs are unchanged, polling this doesn't run checkConfigCommand each time
   @Override
   protected Result check() throws Exception {
     try {
-      adapter.checkConfigs();
-      return Result.healthy();
+      final ConfigCheckResult configCheck = adapter.getConfigCheck(false);
+      if (configCheck.isValid()) {
+        return Result.healthy();
+      }
+      LOG.warn("Healthcheck failed: " + configCheck.getErrorMessage().get());
+      return Result.unhealthy(configCheck.getErrorMessage().get());
     } catch (Exception e) {
       LOG.warn("Healthcheck failed: " + e.getMessage());
       return Result.unhealthy(e);
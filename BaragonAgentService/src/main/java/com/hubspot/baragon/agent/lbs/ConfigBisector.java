@@ -0,0 +1,79 @@
+package com.hubspot.baragon.agent.lbs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.hubspot.baragon.agent.models.ConfigChange;
+
+// Writes a batch of changes and checks them with a single config check. Only if that check fails are the changes
+// bisected to find the ones breaking it. How a change is written, undone and checked is up to the subclass, W being
+// whatever it needs to undo a write.
+abstract class ConfigBisector<W> {
+  private static final Logger LOG = LoggerFactory.getLogger(ConfigBisector.class);
+
+  // absent if the change was already in place
+  protected abstract Optional<W> write(ConfigChange change) throws Exception;
+
+  protected abstract void restore(W written);
+
+  protected abstract void check() throws Exception;
+
+  // Returns the changes that were written, a change that was already in place or failed to write is left out
+  List<ConfigChange> writeAll(List<ConfigChange> changes, Map<String, W> written, Map<String, Exception> failures) {
+    final List<ConfigChange> onDisk = new ArrayList<>(changes.size());
+
+    for (ConfigChange change : changes) {
+      try {
+        final Optional<W> maybeWritten = write(change);
+        if (maybeWritten.isPresent()) {
+          written.put(change.getRequestId(), maybeWritten.get());
+          onDisk.add(change);
+        }
+      } catch (Exception e) {
+        failures.put(change.getRequestId(), e);
+      }
+    }
+
+    return onDisk;
+  }
+
+  // Checks changes that are already on disk. On failure all of them are reverted and each half is written and checked
+  // again on its own, the left half staying in place while the right one is checked. Returns the changes left on disk.
+  List<ConfigChange> checkOrBisect(List<ConfigChange> onDisk, Map<String, W> written, Map<String, Exception> failures) {
+    if (onDisk.isEmpty()) {
+      return onDisk;
+    }
+
+    try {
+      check();
+      return onDisk;
+    } catch (Exception e) {
+      for (ConfigChange change : Lists.reverse(onDisk)) {
+        restore(written.remove(change.getRequestId()));
+      }
+
+      if (onDisk.size() == 1) {
+        LOG.error(String.format("Config check failed for %s, reverted to backups", onDisk.get(0).getContext().getService().getServiceId()), e);
+        failures.put(onDisk.get(0).getRequestId(), e);
+        return Collections.emptyList();
+      }
+
+      LOG.warn(String.format("Config check failed for a batch of %s changes, bisecting", onDisk.size()));
+    }
+
+    final List<ConfigChange> applied = new ArrayList<>();
+
+    for (List<ConfigChange> half : Lists.partition(onDisk, (onDisk.size() + 1) / 2)) {
+      applied.addAll(checkOrBisect(writeAll(half, written, failures), written, failures));
+    }
+
+    return applied;
+  }
+}
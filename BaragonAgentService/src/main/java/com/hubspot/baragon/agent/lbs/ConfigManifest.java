@@ -0,0 +1,161 @@
+package com.hubspot.baragon.agent.lbs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.hubspot.baragon.agent.config.LoadBalancerConfiguration;
+import com.hubspot.baragon.agent.models.AppliedConfigs;
+import com.hubspot.baragon.agent.models.ConfigManifestEntry;
+import com.hubspot.baragon.agent.models.ConfigManifestSnapshot;
+
+// Index of every config file the agent knows the content of. As long as a file's attributes still match its entry the
+// file is taken to be unchanged, so checking whether a config needs writing is a stat and a lookup rather than a read.
+// When a manifest path is configured the index is kept on disk, which lets a restarted agent skip reading back every
+// config during bootstrap. Entries are only hints, a file whose attributes don't match is simply read again.
+// It also keeps what was last applied for each service, see FilesystemConfigHelper.
+@Singleton
+public class ConfigManifest {
+  private static final Logger LOG = LoggerFactory.getLogger(ConfigManifest.class);
+  private static final HashFunction CONTENT_HASH = Hashing.sha1();
+
+  private final Optional<Path> manifestPath;
+  private final ObjectMapper objectMapper;
+  private final ConcurrentMap<String, ConfigManifestEntry> files = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AppliedConfigs> services = new ConcurrentHashMap<>();
+  private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+  @Inject
+  public ConfigManifest(LoadBalancerConfiguration loadBalancerConfiguration, ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+
+    if (loadBalancerConfiguration.getManifestPath().isPresent()) {
+      this.manifestPath = Optional.of(Paths.get(loadBalancerConfiguration.getManifestPath().get()));
+    } else {
+      this.manifestPath = Optional.absent();
+    }
+  }
+
+  public static HashCode hash(byte[] content) {
+    return CONTENT_HASH.hashBytes(content);
+  }
+
+  // absent if the file doesn't exist, otherwise the known hash, reading the file only if it was changed by someone else
+  public Optional<HashCode> currentHash(String filename) {
+    final Path path = Paths.get(filename);
+
+    try {
+      final BasicFileAttributes attributes;
+      try {
+        attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      } catch (NoSuchFileException e) {
+        forget(filename);
+        return Optional.absent();
+      }
+
+      final ConfigManifestEntry entry = files.get(filename);
+
+      if (entry != null && entry.matches(attributes)) {
+        return Optional.of(HashCode.fromString(entry.getHash()));
+      }
+
+      final HashCode hash = hash(Files.readAllBytes(path));
+      put(filename, ConfigManifestEntry.fromAttributes(hash.toString(), attributes));
+      return Optional.of(hash);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  // to be called right after the file was written with content of the given hash
+  public void record(String filename, HashCode hash) throws IOException {
+    put(filename, ConfigManifestEntry.fromAttributes(hash.toString(), Files.readAttributes(Paths.get(filename), BasicFileAttributes.class)));
+  }
+
+  public void forget(String filename) {
+    if (files.remove(filename) != null) {
+      dirty.set(true);
+    }
+  }
+
+  public Optional<AppliedConfigs> getApplied(String serviceId) {
+    return Optional.fromNullable(services.get(serviceId));
+  }
+
+  public void setApplied(String serviceId, AppliedConfigs applied) {
+    if (!applied.equals(services.put(serviceId, applied))) {
+      dirty.set(true);
+    }
+  }
+
+  public void forgetApplied(String serviceId) {
+    if (services.remove(serviceId) != null) {
+      dirty.set(true);
+    }
+  }
+
+  public void load() {
+    if (!manifestPath.isPresent()) {
+      return;
+    }
+
+    try {
+      final ConfigManifestSnapshot loaded = objectMapper.readValue(Files.readAllBytes(manifestPath.get()), ConfigManifestSnapshot.class);
+      files.putAll(loaded.getFiles());
+      services.putAll(loaded.getServices());
+      LOG.info("Loaded {} files and {} services from config manifest {}", loaded.getFiles().size(), loaded.getServices().size(), manifestPath.get());
+    } catch (NoSuchFileException e) {
+      LOG.info("No config manifest at {}, starting with an empty one", manifestPath.get());
+    } catch (Exception e) {
+      LOG.warn(String.format("Ignoring unreadable config manifest %s", manifestPath.get()), e);
+    }
+  }
+
+  // written to a temporary file and renamed into place, so a crash never leaves a truncated manifest behind
+  public void save() {
+    if (!manifestPath.isPresent() || !dirty.getAndSet(false)) {
+      return;
+    }
+
+    final Path path = manifestPath.get().toAbsolutePath();
+
+    try {
+      final Path tempFile = Files.createTempFile(path.getParent(), "." + path.getFileName(), ".tmp");
+      try {
+        Files.write(tempFile, objectMapper.writeValueAsBytes(new ConfigManifestSnapshot(new TreeMap<>(files), new TreeMap<>(services))));
+        Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tempFile);
+      }
+      LOG.debug("Saved {} entries to config manifest {}", files.size(), path);
+    } catch (IOException e) {
+      dirty.set(true);
+      LOG.warn(String.format("Failed to save config manifest %s", path), e);
+    }
+  }
+
+  private void put(String filename, ConfigManifestEntry entry) {
+    if (!entry.equals(files.put(filename, entry))) {
+      dirty.set(true);
+    }
+  }
+}
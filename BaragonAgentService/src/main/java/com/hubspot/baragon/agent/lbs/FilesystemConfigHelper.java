@@ -2,9 +2,27 @@ package com.hubspot.baragon.agent.lbs;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
 import java.util.Collection;
-
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,9 +30,13 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Throwables;
 import com.google.common.base.Optional;
-import com.google.common.io.Files;
+import com.google.common.hash.HashCode;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.hubspot.baragon.agent.BaragonAgentServiceModule;
+import com.hubspot.baragon.agent.models.AppliedConfigs;
+import com.hubspot.baragon.agent.models.ConfigChange;
 import com.hubspot.baragon.exceptions.InvalidConfigException;
 import com.hubspot.baragon.exceptions.LbAdapterExecuteException;
 import com.hubspot.baragon.exceptions.MissingTemplateException;
@@ -30,40 +52,88 @@ public class FilesystemConfigHelper {
 
   private final LbConfigGenerator configGenerator;
   private final LocalLbAdapter adapter;
+  private final ConfigManifest manifest;
+  private final ServiceContextHasher contextHasher;
+  private final Optional<LbRuntimeAdapter> runtimeAdapter;
+
+  private final ConfigBisector<WrittenChange> bisector = new ConfigBisector<WrittenChange>() {
+    @Override
+    protected Optional<WrittenChange> write(ConfigChange change) throws Exception {
+      return FilesystemConfigHelper.this.write(change.getContext(), change.getMaybeOldService(), true);
+    }
+
+    @Override
+    protected void restore(WrittenChange written) {
+      FilesystemConfigHelper.this.restore(written);
+    }
+
+    @Override
+    protected void check() throws Exception {
+      adapter.checkConfigs();
+    }
+  };
 
   @Inject
-  public FilesystemConfigHelper(LbConfigGenerator configGenerator, LocalLbAdapter adapter) {
+  public FilesystemConfigHelper(LbConfigGenerator configGenerator,
+                                LocalLbAdapter adapter,
+                                ConfigManifest manifest,
+                                ServiceContextHasher contextHasher,
+                                @Named(BaragonAgentServiceModule.AGENT_RUNTIME_ADAPTER) Optional<LbRuntimeAdapter> runtimeAdapter) {
     this.configGenerator = configGenerator;
     this.adapter = adapter;
+    this.manifest = manifest;
+    this.contextHasher = contextHasher;
+    this.runtimeAdapter = runtimeAdapter;
   }
 
   public void remove(BaragonService service, boolean reloadConfigs) throws LbAdapterExecuteException, IOException {
+    manifest.forgetApplied(service.getServiceId());
     for (String filename : configGenerator.getConfigPathsForProject(service)) {
       File file = new File(filename);
+      manifest.forget(filename);
       if (!file.exists()) {
         continue;
       }
 
-      if (!file.delete()) {
+      final boolean deleted = file.delete();
+      adapter.configsChanged();
+      if (!deleted) {
         throw new RuntimeException(String.format("Failed to remove %s for %s", filename, service.getServiceId()));
       }
     }
 
     if (reloadConfigs) {
-      adapter.reloadConfigs();
+      reload();
     }
   }
 
   public void checkAndReload() throws InvalidConfigException, LbAdapterExecuteException, IOException {
     adapter.checkConfigs();
+    reload();
+  }
+
+  private void reload() throws LbAdapterExecuteException, IOException {
+    // forgotten up front, a reload that fails may still have replaced some of the servers
+    if (runtimeAdapter.isPresent()) {
+      runtimeAdapter.get().reloaded();
+    }
     adapter.reloadConfigs();
   }
 
   public Optional<Collection<BaragonConfigFile>> configsToApply(ServiceContext context) throws MissingTemplateException {
     final BaragonService service = context.getService();
+    final HashCode serviceHash = contextHasher.hashService(context);
+    final HashCode inputsHash = contextHasher.hash(serviceHash, context);
+    if (context.isPresent() && isApplied(previouslyApplied(service.getServiceId(), serviceHash), inputsHash)) {
+      return Optional.absent();
+    }
+
     final boolean previousConfigsExist = configsExist(service);
     Collection<BaragonConfigFile> newConfigs = configGenerator.generateConfigsForProject(context);
-    if (previousConfigsExist && configsMatch(newConfigs, readConfigs(service))) {
+    if (previousConfigsExist && configsUnchanged(newConfigs)) {
+      if (context.isPresent()) {
+        manifest.setApplied(service.getServiceId(), appliedConfigs(inputsHash, serviceHash, newConfigs));
+      }
       return Optional.absent();
     } else {
       return Optional.of(newConfigs);
@@ -74,50 +144,169 @@ public class FilesystemConfigHelper {
     return currentConfigs.containsAll(newConfigs);
   }
 
-  public void bootstrapApply(ServiceContext context, Collection<BaragonConfigFile> newConfigs) throws InvalidConfigException, LbAdapterExecuteException, IOException, MissingTemplateException {
+  // Writes the already rendered configs of every service in parallel on the given executor, then checks them with a
+  // single config check and reloads once. Only if that check fails are the services bisected to find the ones breaking
+  // it, which are reverted. Returns the exception for each service that couldn't be applied, keyed by service id.
+  public Map<String, Exception> bootstrapApply(List<Pair<ServiceContext, Collection<BaragonConfigFile>>> toApply, ExecutorService executor) throws InterruptedException, InvalidConfigException, LbAdapterExecuteException, IOException {
+    final List<Callable<WrittenChange>> tasks = new ArrayList<>(toApply.size());
+
+    for (final Pair<ServiceContext, Collection<BaragonConfigFile>> entry : toApply) {
+      tasks.add(new Callable<WrittenChange>() {
+        @Override
+        public WrittenChange call() throws Exception {
+          final BaragonService service = entry.getKey().getService();
+          LOG.info(String.format("Going to apply %s: %s", service.getServiceId(), Joiner.on(", ").join(entry.getKey().getUpstreams())));
+
+          final boolean previousConfigsExist = configsExist(service);
+          final HashCode serviceHash = contextHasher.hashService(entry.getKey());
+          final Optional<AppliedConfigs> applied = Optional.of(appliedConfigs(contextHasher.hash(serviceHash, entry.getKey()), serviceHash, entry.getValue()));
+          final WrittenChange written = new WrittenChange(service, service, previousConfigsExist, previousConfigsExist, applied, Optional.<ServiceContext>absent());
+          backupConfigs(service);
+          try {
+            writeConfigs(entry.getValue());
+          } catch (Exception e) {
+            LOG.error(String.format("Caught exception while writing configs for %s, reverting to backups!", service.getServiceId()), e);
+            restore(written);
+            throw e;
+          }
+          return written;
+        }
+      });
+    }
+
+    final Map<String, Exception> failures = new HashMap<>();
+    final Map<String, WrittenChange> written = new HashMap<>();
+    final List<ConfigChange> onDisk = new ArrayList<>(toApply.size());
+    final List<Future<WrittenChange>> futures = executor.invokeAll(tasks);
+
+    for (int i = 0; i < futures.size(); i++) {
+      final ServiceContext context = toApply.get(i).getKey();
+      final String serviceId = context.getService().getServiceId();
+
+      try {
+        written.put(serviceId, futures.get(i).get());
+        onDisk.add(new ConfigChange(serviceId, context, Optional.<BaragonService>absent()));
+      } catch (ExecutionException e) {
+        failures.put(serviceId, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+      }
+    }
+
+    if (onDisk.isEmpty()) {
+      adapter.checkConfigs();
+    } else {
+      for (ConfigChange change : bisector.checkOrBisect(onDisk, written, failures)) {
+        finish(written.get(change.getRequestId()));
+      }
+    }
+
+    reload();
+
+    LOG.info(String.format("Bootstrap apply finished, %s of %s services failed", failures.size(), toApply.size()));
+    return failures;
+  }
+
+  public void apply(ServiceContext context, Optional<BaragonService> maybeOldService, boolean revertOnFailure) throws InvalidConfigException, LbAdapterExecuteException, IOException, MissingTemplateException {
     final BaragonService service = context.getService();
-    final boolean previousConfigsExist = configsExist(service);
+
     LOG.info(String.format("Going to apply %s: %s", service.getServiceId(), Joiner.on(", ").join(context.getUpstreams())));
-    backupConfigs(service);
+    final Optional<WrittenChange> maybeWritten = write(context, maybeOldService, revertOnFailure);
+
+    if (!maybeWritten.isPresent()) {
+      LOG.info("    Configs are unchanged, skipping apply");
+      return;
+    }
+
     try {
-      writeConfigs(newConfigs);
       adapter.checkConfigs();
     } catch (Exception e) {
-      LOG.error(String.format("Caught exception while writing configs for %s, reverting to backups!", service.getServiceId()), e);
-      if (previousConfigsExist) {
-        restoreConfigs(service);
-      } else {
-        remove(service, false);
+      LOG.error(String.format("Caught exception while checking configs for %s, reverting to backups!", service.getServiceId()), e);
+      if (revertOnFailure) {
+        restore(maybeWritten.get());
       }
       throw Throwables.propagate(e);
     }
+
+    activate(Collections.singletonList(maybeWritten.get()));
+
+    finish(maybeWritten.get());
     LOG.info(String.format("Apply finished for %s", service.getServiceId()));
   }
 
-  public void apply(ServiceContext context, Optional<BaragonService> maybeOldService, boolean revertOnFailure) throws InvalidConfigException, LbAdapterExecuteException, IOException, MissingTemplateException {
+  // Writes all changes, checks them with a single config check and activates them with at most one reload. If the check
+  // fails the changes are bisected until the ones breaking it are found, everything else is still applied. Returns the
+  // exception for each change that couldn't be applied, keyed by request id.
+  public Map<String, Exception> applyBatch(List<ConfigChange> changes) throws LbAdapterExecuteException, IOException {
+    LOG.info(String.format("Going to apply a batch of %s changes", changes.size()));
+
+    final Map<String, Exception> failures = new HashMap<>();
+    final Map<String, WrittenChange> written = new HashMap<>();
+
+    for (ConfigChange change : changes) {
+      final ServiceContext context = change.getContext();
+      LOG.info(String.format("    %s: %s", context.getService().getServiceId(), Joiner.on(", ").join(context.getUpstreams())));
+    }
+
+    final List<ConfigChange> applied = bisector.checkOrBisect(bisector.writeAll(changes, written, failures), written, failures);
+    final List<WrittenChange> appliedWrites = new ArrayList<>(applied.size());
+
+    for (ConfigChange change : applied) {
+      appliedWrites.add(written.get(change.getRequestId()));
+    }
+
+    activate(appliedWrites);
+
+    for (ConfigChange change : applied) {
+      finish(written.get(change.getRequestId()));
+    }
+
+    LOG.info(String.format("Batch finished, %s applied, %s unchanged, %s failed", applied.size(), changes.size() - applied.size() - failures.size(), failures.size()));
+    return failures;
+  }
+
+  // Writes the new configs, or removes them if the service is no longer on this load balancer, without checking or
+  // reloading. Absent if nothing had to change. If anything goes wrong while writing, the backups are restored.
+  private Optional<WrittenChange> write(ServiceContext context, Optional<BaragonService> maybeOldService, boolean backup) throws MissingTemplateException {
     final BaragonService service = context.getService();
     final BaragonService oldService = maybeOldService.or(service);
+    final boolean sameServiceId = oldService.getServiceId().equals(service.getServiceId());
+
+    final HashCode serviceHash = contextHasher.hashService(context);
+    final HashCode inputsHash = contextHasher.hash(serviceHash, context);
+    final Optional<AppliedConfigs> previous = sameServiceId && context.isPresent() ? previouslyApplied(service.getServiceId(), serviceHash) : Optional.<AppliedConfigs>absent();
+
+    // rendering the same inputs again would only change the timestamp printed in the configs
+    if (isApplied(previous, inputsHash)) {
+      return Optional.absent();
+    }
+
+    // only the upstreams differ from what's in place, the running load balancer can be updated without a reload
+    final Optional<ServiceContext> runtimeUpdate = previous.isPresent() && runtimeAdapter.isPresent() ? Optional.of(context) : Optional.<ServiceContext>absent();
 
-    LOG.info(String.format("Going to apply %s: %s", service.getServiceId(), Joiner.on(", ").join(context.getUpstreams())));
     final boolean oldServiceExists = configsExist(oldService);
     final boolean previousConfigsExist = configsExist(service);
 
     Collection<BaragonConfigFile> newConfigs = configGenerator.generateConfigsForProject(context);
 
-    if (configsMatch(newConfigs, readConfigs(oldService))) {
-      LOG.info("    Configs are unchanged, skipping apply");
-      return;
+    final Optional<AppliedConfigs> applied = context.isPresent() ? Optional.of(appliedConfigs(inputsHash, serviceHash, newConfigs)) : Optional.<AppliedConfigs>absent();
+
+    // files of a previous service id still need to be removed, even if the new ones are already in place
+    if (sameServiceId && configsUnchanged(newConfigs)) {
+      if (applied.isPresent()) {
+        manifest.setApplied(service.getServiceId(), applied.get());
+      }
+      return Optional.absent();
     }
 
+    final WrittenChange written = new WrittenChange(service, oldService, oldServiceExists, previousConfigsExist, applied, runtimeUpdate);
+
     // Backup configs
-    if (revertOnFailure) {
+    if (backup) {
       backupConfigs(service);
       if (oldServiceExists) {
         backupConfigs(oldService);
       }
     }
 
-    // Write & check the configs
     try {
       if (context.isPresent()) {
         writeConfigs(newConfigs);
@@ -128,30 +317,63 @@ public class FilesystemConfigHelper {
       } else {
         remove(service, false);
       }
-
-      adapter.checkConfigs();
     } catch (Exception e) {
       LOG.error(String.format("Caught exception while writing configs for %s, reverting to backups!", service.getServiceId()), e);
+      if (backup) {
+        restore(written);
+      }
+      throw Throwables.propagate(e);
+    }
 
-      // Restore configs
-      if (revertOnFailure) {
-        if (oldServiceExists && !oldService.equals(service)) {
-          restoreConfigs(oldService);
-        }
-        if (previousConfigsExist) {
-          restoreConfigs(service);
-        } else {
-          remove(service, false);
-        }
+    return Optional.of(written);
+  }
+
+  // Reloads, unless every change can be pushed to the running load balancer instead. A failed push falls back to the
+  // reload, which picks up whatever was written for all of them.
+  private void activate(List<WrittenChange> applied) throws LbAdapterExecuteException, IOException {
+    if (applied.isEmpty()) {
+      return;
+    }
+
+    for (WrittenChange written : applied) {
+      if (!written.runtimeUpdate.isPresent()) {
+        reload();
+        return;
       }
+    }
 
-      throw Throwables.propagate(e);
+    for (WrittenChange written : applied) {
+      try {
+        runtimeAdapter.get().updateUpstreams(written.runtimeUpdate.get());
+      } catch (Exception e) {
+        LOG.warn(String.format("Failed to update upstreams of %s at runtime, reloading instead", written.service.getServiceId()), e);
+        reload();
+        return;
+      }
     }
+  }
 
-    adapter.reloadConfigs();
+  // once a write passed the config check, its backups are no longer needed
+  private void finish(WrittenChange written) {
+    removeBackupConfigs(written.oldService);
+    if (written.applied.isPresent()) {
+      manifest.setApplied(written.service.getServiceId(), written.applied.get());
+    }
+  }
 
-    removeBackupConfigs(oldService);
-    LOG.info(String.format("Apply finished for %s", service.getServiceId()));
+  private void restore(WrittenChange written) {
+    try {
+      if (written.oldServiceExists && !written.oldService.equals(written.service)) {
+        restoreConfigs(written.oldService);
+      }
+      if (written.previousConfigsExist) {
+        restoreConfigs(written.service);
+      } else {
+        remove(written.service, false);
+      }
+    } catch (LbAdapterExecuteException | IOException e) {
+      throw Throwables.propagate(e);
+    }
   }
 
   public void delete(BaragonService service, Optional<BaragonService> maybeOldService) throws InvalidConfigException, LbAdapterExecuteException, IOException, MissingTemplateException {
@@ -180,13 +402,22 @@ public class FilesystemConfigHelper {
 
       throw Throwables.propagate(e);
      }
-    adapter.reloadConfigs();
+    reload();
   }
 
+  // Only files whose content differs from what's on disk are written. Each is written to a temporary file in the same
+  // directory, synced, and renamed over the old one, so the load balancer never sees a partially written config.
   private void writeConfigs(Collection<BaragonConfigFile> files) {
     for (BaragonConfigFile file : files) {
+      final byte[] content = file.getContent().getBytes(Charsets.UTF_8);
+      final HashCode hash = ConfigManifest.hash(content);
+
+      if (hash.equals(manifest.currentHash(file.getFullPath()).orNull())) {
+        continue;
+      }
+
       try {
-        Files.write(file.getContent().getBytes(Charsets.UTF_8), new File(file.getFullPath()));
+        writeAtomically(file.getFullPath(), content, hash);
       } catch (IOException e) {
         LOG.error(String.format("Failed writing %s", file.getFullPath()), e);
         throw new RuntimeException(String.format("Failed writing %s", file.getFullPath()), e);
@@ -194,34 +425,106 @@ public class FilesystemConfigHelper {
     }
   }
 
-  private Collection<BaragonConfigFile> readConfigs(BaragonService service) {
-    final Collection<BaragonConfigFile> configs = new ArrayList<>();
+  private void writeAtomically(String filename, byte[] content, HashCode hash) throws IOException {
+    final Path path = Paths.get(filename);
+    final Path directory = path.toAbsolutePath().getParent();
+    // a leading dot and a trailing .tmp keep the temporary file out of the load balancer's include patterns
+    final Path tempFile = Files.createTempFile(directory, "." + path.getFileName(), ".tmp");
 
-    for (String filename : configGenerator.getConfigPathsForProject(service)) {
-      File file = new File(filename);
-      if (!file.exists()) {
-        continue;
+    try {
+      // temporary files are created owner-only, give it the permissions of the file it replaces
+      try {
+        Files.setPosixFilePermissions(tempFile, Files.exists(path) ? Files.getPosixFilePermissions(path) : PosixFilePermissions.fromString("rw-r--r--"));
+      } catch (UnsupportedOperationException e) {
+        // not a posix filesystem
       }
 
-      try {
-        configs.add(new BaragonConfigFile(filename, Files.asCharSource(file, Charsets.UTF_8).read()));
-      } catch (IOException e) {
-        throw Throwables.propagate(e);
+      try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+        final ByteBuffer buffer = ByteBuffer.wrap(content);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        channel.force(true);
+      }
+
+      Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE);
+      adapter.configsChanged();
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+
+    syncDirectory(directory);
+    manifest.record(filename, hash);
+  }
+
+  // makes the rename itself durable, not supported everywhere so failures are only logged
+  private void syncDirectory(Path directory) {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      LOG.debug(String.format("Could not sync %s", directory), e);
+    }
+  }
+
+  private boolean configsUnchanged(Collection<BaragonConfigFile> newConfigs) {
+    for (BaragonConfigFile file : newConfigs) {
+      if (!ConfigManifest.hash(file.getContent().getBytes(Charsets.UTF_8)).equals(manifest.currentHash(file.getFullPath()).orNull())) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  // What was last applied for the service, if it was rendered from the same service and templates, and every file written
+  // back then still has the content it was written with. Its upstreams may differ.
+  private Optional<AppliedConfigs> previouslyApplied(String serviceId, HashCode serviceHash) {
+    final Optional<AppliedConfigs> maybeApplied = manifest.getApplied(serviceId);
+
+    if (!maybeApplied.isPresent() || !serviceHash.toString().equals(maybeApplied.get().getServiceHash())) {
+      return Optional.absent();
+    }
+
+    for (Map.Entry<String, String> file : maybeApplied.get().getFileHashes().entrySet()) {
+      final Optional<HashCode> currentHash = manifest.currentHash(file.getKey());
+      if (!currentHash.isPresent() || !currentHash.get().toString().equals(file.getValue())) {
+        return Optional.absent();
       }
     }
 
-    return configs;
+    return maybeApplied;
+  }
+
+  private static boolean isApplied(Optional<AppliedConfigs> previous, HashCode inputsHash) {
+    return previous.isPresent() && previous.get().getInputsHash().equals(inputsHash.toString());
+  }
+
+  private AppliedConfigs appliedConfigs(HashCode inputsHash, HashCode serviceHash, Collection<BaragonConfigFile> files) {
+    final Map<String, String> fileHashes = new HashMap<>();
+
+    for (BaragonConfigFile file : files) {
+      fileHashes.put(file.getFullPath(), ConfigManifest.hash(file.getContent().getBytes(Charsets.UTF_8)).toString());
+    }
+
+    return new AppliedConfigs(inputsHash.toString(), serviceHash.toString(), fileHashes);
   }
 
+  // Configs are only ever replaced by renaming a new file over them, so a hard link to the current file is a complete
+  // backup. Filesystems without hard link support get a copy instead.
   private void backupConfigs(BaragonService service) {
     for (String filename : configGenerator.getConfigPathsForProject(service)) {
       try {
-        File src = new File(filename);
-        if (!src.exists()) {
+        Path src = Paths.get(filename);
+        if (!Files.exists(src)) {
           continue;
         }
-        File dest = new File(filename + BACKUP_FILENAME_SUFFIX);
-        Files.copy(src, dest);
+        Path dest = Paths.get(filename + BACKUP_FILENAME_SUFFIX);
+        Files.deleteIfExists(dest);
+        try {
+          Files.createLink(dest, src);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+          Files.copy(src, dest, StandardCopyOption.REPLACE_EXISTING);
+        }
       } catch (IOException e) {
         LOG.error(String.format("Failed to backup %s", filename), e);
         throw new RuntimeException(String.format("Failed to backup %s", filename));
@@ -251,16 +554,36 @@ public class FilesystemConfigHelper {
   private void restoreConfigs(BaragonService service) {
     for (String filename : configGenerator.getConfigPathsForProject(service)) {
       try {
-        File src = new File(filename + BACKUP_FILENAME_SUFFIX);
-        if (!src.exists()) {
+        Path src = Paths.get(filename + BACKUP_FILENAME_SUFFIX);
+        if (!Files.exists(src)) {
           continue;
         }
-        File dest = new File(filename);
-        Files.copy(src, dest);
+        manifest.forget(filename);
+        Files.move(src, Paths.get(filename), StandardCopyOption.ATOMIC_MOVE);
+        adapter.configsChanged();
       } catch (IOException e) {
         LOG.error(String.format("Failed to restore %s", filename), e);
         throw new RuntimeException(String.format("Failed to restore %s", filename));
       }
     }
   }
+
+  // what has to be undone to revert a write
+  private static class WrittenChange {
+    private final BaragonService service;
+    private final BaragonService oldService;
+    private final boolean oldServiceExists;
+    private final boolean previousConfigsExist;
+    private final Optional<AppliedConfigs> applied;
+    private final Optional<ServiceContext> runtimeUpdate;
+
+    private WrittenChange(BaragonService service, BaragonService oldService, boolean oldServiceExists, boolean previousConfigsExist, Optional<AppliedConfigs> applied, Optional<ServiceContext> runtimeUpdate) {
+      this.service = service;
+      this.oldService = oldService;
+      this.oldServiceExists = oldServiceExists;
+      this.previousConfigsExist = previousConfigsExist;
+      this.applied = applied;
+      this.runtimeUpdate = runtimeUpdate;
+    }
+  }
 }
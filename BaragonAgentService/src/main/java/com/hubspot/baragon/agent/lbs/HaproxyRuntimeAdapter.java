@@ -0,0 +1,195 @@
+package com.hubspot.baragon.agent.lbs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+import com.hubspot.baragon.agent.config.RuntimeApiConfiguration;
+import com.hubspot.baragon.exceptions.LbAdapterExecuteException;
+import com.hubspot.baragon.models.ServiceContext;
+import com.hubspot.baragon.models.UpstreamInfo;
+
+// Points the server slots of a service's backend at its upstreams through the HAProxy runtime API, and puts the unused
+// slots into maintenance. Each upstream keeps its slot for as long as it stays in the service, so an update only touches
+// the slots of upstreams that were added or removed. Until a backend has been updated once since the last reload, its
+// slots are unknown and all of them are set. Any reply that isn't a known success fails the update, in which case the
+// caller falls back to reloading.
+public class HaproxyRuntimeAdapter implements LbRuntimeAdapter {
+  private static final Logger LOG = LoggerFactory.getLogger(HaproxyRuntimeAdapter.class);
+  private static final String[] SUCCESS_PREFIXES = {"IP changed", "no need to change", "Nothing changed"};
+
+  private final RuntimeApiConfiguration configuration;
+
+  // backend -> upstream -> slot, as last set on the running load balancer
+  private final ConcurrentMap<String, Map<String, Integer>> slotsByBackend = new ConcurrentHashMap<>();
+
+  public HaproxyRuntimeAdapter(RuntimeApiConfiguration configuration) {
+    this.configuration = configuration;
+  }
+
+  @Override
+  public void updateUpstreams(ServiceContext context) throws LbAdapterExecuteException, IOException {
+    final String backend = String.format(configuration.getBackendNameFormat(), context.getService().getServiceId());
+    final Set<String> upstreams = new LinkedHashSet<>();
+
+    for (UpstreamInfo upstreamInfo : context.getUpstreams()) {
+      upstreams.add(upstreamInfo.getUpstream());
+    }
+
+    if (upstreams.size() > configuration.getServerSlots()) {
+      throw failure(backend, "", String.format("%s upstreams don't fit into %s server slots", upstreams.size(), configuration.getServerSlots()));
+    }
+
+    // whatever happens below, the backend's slots are only known again once an update went through
+    final Map<String, Integer> previousSlots = slotsByBackend.remove(backend);
+    final Map<String, Integer> slots = assignSlots(previousSlots, upstreams, configuration.getServerSlots());
+    final List<String> commands = commands(backend, previousSlots, slots);
+
+    if (!commands.isEmpty()) {
+      execute(Joiner.on(';').join(commands));
+    }
+
+    slotsByBackend.put(backend, slots);
+
+    LOG.info(String.format("Pointed %s at %s upstreams without a reload (%s commands)", backend, upstreams.size(), commands.size()));
+  }
+
+  @Override
+  public void reloaded() {
+    slotsByBackend.clear();
+  }
+
+  // Upstreams that already had a slot keep it, new ones get the lowest slots nobody else is using
+  private static Map<String, Integer> assignSlots(Map<String, Integer> previousSlots, Set<String> upstreams, int serverSlots) {
+    final Map<String, Integer> slots = new HashMap<>();
+    final boolean[] used = new boolean[serverSlots + 1];
+
+    if (previousSlots != null) {
+      for (String upstream : upstreams) {
+        final Integer slot = previousSlots.get(upstream);
+        if (slot != null && slot <= serverSlots) {
+          slots.put(upstream, slot);
+          used[slot] = true;
+        }
+      }
+    }
+
+    int nextSlot = 1;
+    for (String upstream : upstreams) {
+      if (slots.containsKey(upstream)) {
+        continue;
+      }
+      while (used[nextSlot]) {
+        nextSlot++;
+      }
+      slots.put(upstream, nextSlot);
+      used[nextSlot] = true;
+    }
+
+    return slots;
+  }
+
+  // Commands for every slot whose upstream differs from before, or for all slots if there's nothing to compare with
+  private List<String> commands(String backend, Map<String, Integer> previousSlots, Map<String, Integer> slots) throws LbAdapterExecuteException {
+    final String[] previousUpstreams = bySlot(previousSlots);
+    final String[] upstreams = bySlot(slots);
+    final List<String> commands = new ArrayList<>();
+
+    for (int slot = 1; slot <= configuration.getServerSlots(); slot++) {
+      if (previousSlots != null && Objects.equal(previousUpstreams[slot], upstreams[slot])) {
+        continue;
+      }
+
+      final String server = String.format("%s/%s", backend, String.format(configuration.getServerNameFormat(), slot));
+
+      if (upstreams[slot] != null) {
+        final String upstream = upstreams[slot];
+        final int colon = upstream.lastIndexOf(':');
+        if (colon < 0) {
+          throw failure(server, "", String.format("Upstream %s has no port", upstream));
+        }
+        commands.add(String.format("set server %s addr %s port %s", server, upstream.substring(0, colon), upstream.substring(colon + 1)));
+        commands.add(String.format("set server %s state ready", server));
+      } else {
+        commands.add(String.format("set server %s state maint", server));
+      }
+    }
+
+    return commands;
+  }
+
+  private String[] bySlot(Map<String, Integer> slots) {
+    final String[] upstreams = new String[configuration.getServerSlots() + 1];
+
+    if (slots != null) {
+      for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+        if (entry.getValue() <= configuration.getServerSlots()) {
+          upstreams[entry.getValue()] = entry.getKey();
+        }
+      }
+    }
+
+    return upstreams;
+  }
+
+  // All commands of an update go out as one line over one connection, the runtime API runs them in order, answers and
+  // closes the connection when not in interactive mode
+  private void execute(String command) throws LbAdapterExecuteException, IOException {
+    final String output;
+
+    try (Socket socket = new Socket()) {
+      socket.connect(new InetSocketAddress(configuration.getHost(), configuration.getPort()), configuration.getTimeoutMs());
+      socket.setSoTimeout(configuration.getTimeoutMs());
+
+      final OutputStream out = socket.getOutputStream();
+      out.write((command + "\n").getBytes(Charsets.UTF_8));
+      out.flush();
+
+      final InputStream in = socket.getInputStream();
+      final ByteArrayOutputStream response = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        response.write(buffer, 0, read);
+      }
+      output = response.toString(Charsets.UTF_8.name());
+    }
+
+    for (String line : Splitter.on('\n').trimResults().omitEmptyStrings().split(output)) {
+      if (!isSuccess(line)) {
+        throw failure(command, output, line);
+      }
+    }
+  }
+
+  private static boolean isSuccess(String line) {
+    for (String prefix : SUCCESS_PREFIXES) {
+      if (line.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static LbAdapterExecuteException failure(String command, String output, String message) {
+    return new LbAdapterExecuteException(output, new IOException(message), command);
+  }
+}
@@ -2,10 +2,13 @@ package com.hubspot.baragon.agent.lbs;
 
 import java.io.StringWriter;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,6 +30,9 @@ public class LbConfigGenerator {
   private final LoadBalancerConfiguration loadBalancerConfiguration;
   private final Map<String, List<LbConfigTemplate>> templates;
 
+  // templates are fixed at startup, so the paths a service id maps to never change
+  private final ConcurrentMap<String, Set<String>> configPaths = new ConcurrentHashMap<>();
+
   @Inject
   public LbConfigGenerator(LoadBalancerConfiguration loadBalancerConfiguration,
                            @Named(BaragonAgentServiceModule.AGENT_TEMPLATES) Map<String, List<LbConfigTemplate>> templates) {
@@ -61,6 +67,11 @@ public class LbConfigGenerator {
   }
 
   public Set<String> getConfigPathsForProject(BaragonService service) {
+    final Set<String> cached = configPaths.get(service.getServiceId());
+    if (cached != null) {
+      return cached;
+    }
+
     final Set<String> paths = new HashSet<>();
     for (Map.Entry<String,List<LbConfigTemplate>> entry : templates.entrySet()) {
       for (LbConfigTemplate template : entry.getValue()) {
@@ -70,7 +81,8 @@ public class LbConfigGenerator {
         }
       }
     }
-    return paths;
+    configPaths.putIfAbsent(service.getServiceId(), Collections.unmodifiableSet(paths));
+    return configPaths.get(service.getServiceId());
   }
 
 }
@@ -0,0 +1,15 @@
+package com.hubspot.baragon.agent.lbs;
+
+import java.io.IOException;
+
+import com.hubspot.baragon.exceptions.LbAdapterExecuteException;
+import com.hubspot.baragon.models.ServiceContext;
+
+// Changes a running load balancer in place, next to LocalLbAdapter which can only have it reload everything from disk.
+// Only upstream membership is handled this way, anything else still takes a write and a reload.
+public interface LbRuntimeAdapter {
+  void updateUpstreams(ServiceContext context) throws LbAdapterExecuteException, IOException;
+
+  // a reload puts back the servers as rendered into the configs, replacing whatever was changed in place
+  void reloaded();
+}
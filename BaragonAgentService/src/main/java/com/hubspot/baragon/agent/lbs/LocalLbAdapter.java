@@ -7,19 +7,27 @@ import org.apache.commons.exec.ExecuteWatchdog;
 import org.apache.commons.exec.PumpStreamHandler;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.hubspot.baragon.agent.config.LoadBalancerConfiguration;
+import com.hubspot.baragon.agent.models.ConfigCheckResult;
 import com.hubspot.baragon.exceptions.InvalidConfigException;
 import com.hubspot.baragon.exceptions.LbAdapterExecuteException;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Singleton
 public class LocalLbAdapter {
   private final LoadBalancerConfiguration loadBalancerConfiguration;
 
+  // bumped whenever a config file is changed, a check result only holds for the generation it ran against
+  private final AtomicLong configGeneration = new AtomicLong();
+  private volatile Optional<ConfigCheckResult> lastCheck = Optional.absent();
+
   @Inject
   public LocalLbAdapter(LoadBalancerConfiguration loadBalancerConfiguration) {
     this.loadBalancerConfiguration = loadBalancerConfiguration;
@@ -40,13 +48,43 @@ public class LocalLbAdapter {
   }
 
   public void checkConfigs() throws InvalidConfigException {
+    final long generation = configGeneration.get();
+
     try {
       executeWithTimeout(CommandLine.parse(loadBalancerConfiguration.getCheckConfigCommand()), loadBalancerConfiguration.getCommandTimeoutMs());
+      lastCheck = Optional.of(new ConfigCheckResult(generation, System.currentTimeMillis(), true, Optional.<String>absent()));
     } catch (LbAdapterExecuteException e) {
+      lastCheck = Optional.of(new ConfigCheckResult(generation, System.currentTimeMillis(), false, Optional.of(e.getOutput())));
       throw new InvalidConfigException(e.getOutput());
     } catch (IOException e) {
-      throw new InvalidConfigException(e.getMessage());
+      // some IOExceptions carry no message, fall back to the exception itself so the failure is never blank
+      final String message = Objects.firstNonNull(e.getMessage(), e.toString());
+      lastCheck = Optional.of(new ConfigCheckResult(generation, System.currentTimeMillis(), false, Optional.of(message)));
+      throw new InvalidConfigException(message);
+    }
+  }
+
+  // The result of the last check, as long as no config was changed since it started. Otherwise, or if fresh is set, the
+  // configs are checked again. Callers waiting on a running check get its result instead of starting another one.
+  public synchronized ConfigCheckResult getConfigCheck(boolean fresh) {
+    final Optional<ConfigCheckResult> maybeLastCheck = lastCheck;
+
+    if (!fresh && maybeLastCheck.isPresent() && maybeLastCheck.get().getGeneration() == configGeneration.get()) {
+      return maybeLastCheck.get();
     }
+
+    try {
+      checkConfigs();
+    } catch (InvalidConfigException e) {
+      // recorded in lastCheck
+    }
+
+    return lastCheck.get();
+  }
+
+  // called once a change is on disk, a check running in between would otherwise count for files it never read
+  public void configsChanged() {
+    configGeneration.incrementAndGet();
   }
 
   public void reloadConfigs() throws LbAdapterExecuteException, IOException {
@@ -0,0 +1,95 @@
+package com.hubspot.baragon.agent.lbs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.hubspot.baragon.agent.BaragonAgentServiceModule;
+import com.hubspot.baragon.agent.models.LbConfigTemplate;
+import com.hubspot.baragon.models.ServiceContext;
+import com.hubspot.baragon.models.UpstreamInfo;
+
+// Hashes everything a service's configs are rendered from, except the context's timestamp, which changes on every
+// request without changing what the configs mean. The same hash means rendering would produce the same configs, apart
+// from wherever a template prints the timestamp.
+@Singleton
+public class ServiceContextHasher {
+  private final Map<String, List<LbConfigTemplate>> templates;
+  private final ObjectWriter canonicalWriter;
+
+  @Inject
+  public ServiceContextHasher(@Named(BaragonAgentServiceModule.AGENT_TEMPLATES) Map<String, List<LbConfigTemplate>> templates,
+                              ObjectMapper objectMapper) {
+    this.templates = templates;
+    this.canonicalWriter = objectMapper.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+  }
+
+  public HashCode hash(ServiceContext context) {
+    return hash(hashService(context), context);
+  }
+
+  // everything but the upstreams, two contexts with the same service hash only differ in upstream membership
+  public HashCode hashService(ServiceContext context) {
+    final String templateName = context.getService().getTemplateName().or(BaragonAgentServiceModule.DEFAULT_TEMPLATE_NAME);
+    final Hasher hasher = Hashing.sha1().newHasher();
+
+    putString(hasher, templateName);
+    if (templates.containsKey(templateName)) {
+      for (LbConfigTemplate template : templates.get(templateName)) {
+        putString(hasher, template.getFilename());
+        putString(hasher, template.getTemplate().text());
+      }
+    }
+
+    try {
+      putString(hasher, canonicalWriter.writeValueAsString(context.getService()));
+    } catch (JsonProcessingException e) {
+      throw Throwables.propagate(e);
+    }
+
+    hasher.putBoolean(context.isPresent());
+
+    return hasher.hash();
+  }
+
+  public HashCode hash(HashCode serviceHash, ServiceContext context) {
+    final Hasher hasher = Hashing.sha1().newHasher().putBytes(serviceHash.asBytes());
+
+    try {
+      // upstreams arrive in no particular order
+      final List<String> upstreams = new ArrayList<>(context.getUpstreams().size());
+      for (UpstreamInfo upstream : context.getUpstreams()) {
+        upstreams.add(canonicalWriter.writeValueAsString(upstream));
+      }
+      Collections.sort(upstreams);
+
+      hasher.putInt(upstreams.size());
+      for (String upstream : upstreams) {
+        putString(hasher, upstream);
+      }
+    } catch (JsonProcessingException e) {
+      throw Throwables.propagate(e);
+    }
+
+    return hasher.hash();
+  }
+
+  // length prefixed, so adjacent values can't run into each other
+  private static void putString(Hasher hasher, String value) {
+    final byte[] bytes = value.getBytes(Charsets.UTF_8);
+    hasher.putInt(bytes.length).putBytes(bytes);
+  }
+}
@@ -13,6 +13,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.hubspot.baragon.BaragonDataModule;
 import com.hubspot.baragon.agent.config.BaragonAgentConfiguration;
 import com.hubspot.baragon.agent.workers.AgentHeartbeatWorker;
@@ -29,6 +30,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.hubspot.baragon.agent.lbs.BootstrapFileChecker;
+import com.hubspot.baragon.agent.lbs.ConfigManifest;
 import com.hubspot.baragon.models.BaragonConfigFile;
 import com.hubspot.baragon.models.ServiceContext;
 import com.hubspot.baragon.agent.BaragonAgentServiceModule;
@@ -50,6 +52,7 @@ public class BootstrapManaged implements Managed {
 
   private final BaragonAgentConfiguration configuration;
   private final FilesystemConfigHelper configHelper;
+  private final ConfigManifest manifest;
   private final BaragonStateDatastore stateDatastore;
   private final BaragonLoadBalancerDatastore loadBalancerDatastore;
   private final BaragonAuthDatastore authDatastore;
@@ -73,6 +76,7 @@ public class BootstrapManaged implements Managed {
                           BaragonAgentConfiguration configuration,
                           BaragonAuthDatastore authDatastore,
                           FilesystemConfigHelper configHelper,
+                          ConfigManifest manifest,
                           AgentHeartbeatWorker agentHeartbeatWorker,
                           BaragonAgentMetadata baragonAgentMetadata,
                           @Named(BaragonAgentServiceModule.AGENT_SCHEDULED_EXECUTOR) ScheduledExecutorService executorService,
@@ -80,6 +84,7 @@ public class BootstrapManaged implements Managed {
                           @Named(BaragonDataModule.BARAGON_AGENT_HTTP_CLIENT) HttpClient httpClient) {
     this.configuration = configuration;
     this.configHelper = configHelper;
+    this.manifest = manifest;
     this.stateDatastore = stateDatastore;
     this.leaderLatch = leaderLatch;
     this.knownAgentsDatastore = knownAgentsDatastore;
@@ -98,9 +103,10 @@ public class BootstrapManaged implements Managed {
     final Stopwatch stopwatch = Stopwatch.createStarted();
     final long now = System.currentTimeMillis();
 
+    manifest.load();
+
     final Collection<String> services = stateDatastore.getServices();
     if (services.size() > 0) {
-      ExecutorService executorService = Executors.newFixedThreadPool(services.size());
       List<Callable<Optional<Pair<ServiceContext, Collection<BaragonConfigFile>>>>> todo = new ArrayList<>(services.size());
 
       for (BaragonServiceState serviceState : stateDatastore.getGlobalState()) {
@@ -111,26 +117,33 @@ public class BootstrapManaged implements Managed {
 
       LOG.info("Going to apply {} services...", todo.size());
 
+      final ExecutorService bootstrapExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(configuration.getBootstrapThreads(), todo.size())), new ThreadFactoryBuilder().setNameFormat("BaragonBootstrap-%d").build());
+
       try {
-        List<Future<Optional<Pair<ServiceContext, Collection<BaragonConfigFile>>>>> applied = executorService.invokeAll(todo);
-        for (Future<Optional<Pair<ServiceContext, Collection<BaragonConfigFile>>>> serviceFuture : applied) {
-          Optional<Pair<ServiceContext, Collection<BaragonConfigFile>>> maybeToApply = serviceFuture.get();
-          if (maybeToApply.isPresent()) {
-            try {
-              configHelper.bootstrapApply(maybeToApply.get().getKey(), maybeToApply.get().getValue());
-            } catch (Exception e) {
-              LOG.error(String.format("Caught exception while applying %s during bootstrap", maybeToApply.get().getKey().getService().getServiceId()), e);
-            }
-          }
+        final List<Pair<ServiceContext, Collection<BaragonConfigFile>>> toApply = new ArrayList<>();
+
+        for (Future<Optional<Pair<ServiceContext, Collection<BaragonConfigFile>>>> serviceFuture : bootstrapExecutor.invokeAll(todo)) {
+          toApply.addAll(serviceFuture.get().asSet());
+        }
+
+        LOG.info("{} of {} services have changed configs", toApply.size(), todo.size());
+
+        final Map<String, Exception> failures = configHelper.bootstrapApply(toApply, bootstrapExecutor);
+
+        for (Map.Entry<String, Exception> failure : failures.entrySet()) {
+          LOG.error(String.format("Caught exception while applying %s during bootstrap", failure.getKey()), failure.getValue());
         }
-        configHelper.checkAndReload();
       } catch (Exception e) {
         LOG.error(String.format("Caught exception while applying and parsing configs"), e);
         if (configuration.isExitOnStartupError()) {
           Throwables.propagate(e);
         }
+      } finally {
+        bootstrapExecutor.shutdown();
       }
 
+      manifest.save();
+
       LOG.info("Applied {} services in {}ms", todo.size(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
     } else {
       LOG.info("No services were found to apply");
@@ -164,6 +177,7 @@ public class BootstrapManaged implements Managed {
   public void stop() throws Exception {
     leaderLatch.close();
     executorService.shutdown();
+    manifest.save();
     if (configuration.isDeregisterOnGracefulShutdown()) {
       LOG.info("Notifying BaragonService of shutdown...");
       notifyService("shutdown");
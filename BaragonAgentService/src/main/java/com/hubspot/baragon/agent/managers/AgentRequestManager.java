@@ -1,15 +1,23 @@
 package com.hubspot.baragon.agent.managers;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import javax.ws.rs.core.Response;
 
 import com.google.common.base.Optional;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
@@ -19,9 +27,13 @@ import org.slf4j.LoggerFactory;
 import com.hubspot.baragon.agent.config.LoadBalancerConfiguration;
 import com.hubspot.baragon.agent.config.TestingConfiguration;
 import com.hubspot.baragon.agent.lbs.FilesystemConfigHelper;
+import com.hubspot.baragon.agent.models.ConfigChange;
 import com.hubspot.baragon.data.BaragonRequestDatastore;
 import com.hubspot.baragon.data.BaragonStateDatastore;
+import com.hubspot.baragon.models.AgentRequestType;
 import com.hubspot.baragon.models.BaragonRequest;
+import com.hubspot.baragon.models.BaragonRequestBatchItem;
+import com.hubspot.baragon.models.BaragonRequestBatchResult;
 import com.hubspot.baragon.models.BaragonService;
 import com.hubspot.baragon.models.RequestAction;
 import com.hubspot.baragon.models.ServiceContext;
@@ -42,6 +54,9 @@ public class AgentRequestManager {
   private final Lock agentLock;
   private final long agentLockTimeoutMs;
 
+  // apply and revert requests waiting to be picked up by a batch, only used when batching is enabled
+  private final ConcurrentLinkedQueue<PendingRequest> pendingRequests = new ConcurrentLinkedQueue<>();
+
   @Inject
   public AgentRequestManager(BaragonStateDatastore stateDatastore,
                         BaragonRequestDatastore requestDatastore,
@@ -64,9 +79,82 @@ public class AgentRequestManager {
   }
 
   public Response processRequest(String requestId, Optional<RequestAction> maybeAction) throws InterruptedException {
+    if (loadBalancerConfiguration.getBatchWindowMs() > 0) {
+      final Optional<BaragonRequest> maybeRequest = requestDatastore.getRequest(requestId);
+      if (maybeRequest.isPresent()) {
+        final RequestAction action = maybeAction.or(maybeRequest.get().getAction().or(RequestAction.UPDATE));
+        if (action == RequestAction.UPDATE || action == RequestAction.REVERT) {
+          return processBatched(new PendingRequest(maybeRequest.get(), action));
+        }
+      }
+    }
+
     if (!agentLock.tryLock(agentLockTimeoutMs, TimeUnit.MILLISECONDS)) {
       return Response.status(Response.Status.CONFLICT).build();
     }
+
+    try {
+      return processLocked(requestId, maybeAction);
+    } finally {
+      agentLock.unlock();
+    }
+  }
+
+  // Handles several requests under a single acquisition of the agent lock, responding for each of them. Consecutive
+  // apply and revert requests are applied together with a single config check and reload.
+  public List<BaragonRequestBatchResult> processRequests(List<BaragonRequestBatchItem> items) throws InterruptedException {
+    final List<ListenableFuture<Response>> responses = new ArrayList<>(items.size());
+
+    if (!agentLock.tryLock(agentLockTimeoutMs, TimeUnit.MILLISECONDS)) {
+      for (BaragonRequestBatchItem item : items) {
+        responses.add(Futures.immediateFuture(Response.status(Response.Status.CONFLICT).build()));
+      }
+      return toBatchResults(items, responses);
+    }
+
+    try {
+      final ConcurrentLinkedQueue<PendingRequest> batchable = new ConcurrentLinkedQueue<>();
+
+      for (BaragonRequestBatchItem item : items) {
+        final Optional<RequestAction> maybeAction = item.getRequestType() == AgentRequestType.APPLY ? Optional.<RequestAction>absent() : Optional.of(RequestAction.REVERT);
+        final Optional<BaragonRequest> maybeRequest = requestDatastore.getRequest(item.getRequestId());
+
+        if (maybeRequest.isPresent()) {
+          final RequestAction action = maybeAction.or(maybeRequest.get().getAction().or(RequestAction.UPDATE));
+          if (action == RequestAction.UPDATE || action == RequestAction.REVERT) {
+            final PendingRequest pending = new PendingRequest(maybeRequest.get(), action);
+            batchable.add(pending);
+            responses.add(pending.response);
+            continue;
+          }
+        }
+
+        // deletes and reloads go one at a time, after whatever was queued before them
+        applyAll(batchable);
+        responses.add(Futures.immediateFuture(processLocked(item.getRequestId(), maybeAction)));
+      }
+
+      applyAll(batchable);
+    } finally {
+      agentLock.unlock();
+    }
+
+    return toBatchResults(items, responses);
+  }
+
+  private List<BaragonRequestBatchResult> toBatchResults(List<BaragonRequestBatchItem> items, List<ListenableFuture<Response>> responses) {
+    final List<BaragonRequestBatchResult> results = new ArrayList<>(items.size());
+
+    for (int i = 0; i < items.size(); i++) {
+      final Response response = Futures.getUnchecked(responses.get(i));
+      final Optional<String> message = response.getEntity() == null ? Optional.<String>absent() : Optional.of(response.getEntity().toString());
+      results.add(new BaragonRequestBatchResult(items.get(i).getRequestId(), response.getStatus(), message));
+    }
+
+    return results;
+  }
+
+  private Response processLocked(String requestId, Optional<RequestAction> maybeAction) {
     final Optional<BaragonRequest> maybeRequest = requestDatastore.getRequest(requestId);
     if (!maybeRequest.isPresent()) {
       return Response.status(Response.Status.NOT_FOUND).entity(String.format("Request %s does not exist", requestId)).build();
@@ -92,8 +180,134 @@ public class AgentRequestManager {
       return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(String.format("Caught exception while %sING for request %s: %s", action, requestId, e.getMessage())).build();
     } finally {
       LOG.info(String.format("Done processing %s request: %s", action, requestId));
+    }
+  }
+
+  // Whoever holds the agent lock applies the pending requests in batches until its own request is done. Requests that
+  // couldn't get the lock in time only fail if no batch has picked them up yet, otherwise they wait for their result.
+  private Response processBatched(PendingRequest pending) throws InterruptedException {
+    LOG.info(String.format("Received request to %s with id %s, queueing it for the next batch", pending.action, pending.request.getLoadBalancerRequestId()));
+    pendingRequests.add(pending);
+
+    if (!agentLock.tryLock(agentLockTimeoutMs, TimeUnit.MILLISECONDS)) {
+      if (pendingRequests.remove(pending)) {
+        return Response.status(Response.Status.CONFLICT).build();
+      }
+      return Futures.getUnchecked(pending.response);
+    }
+
+    try {
+      if (!pending.response.isDone()) {
+        // let requests arriving right behind this one join its batch
+        Thread.sleep(loadBalancerConfiguration.getBatchWindowMs());
+      }
+
+      while (!pending.response.isDone()) {
+        applyBatch(takeBatch(pendingRequests));
+      }
+    } finally {
       agentLock.unlock();
     }
+
+    return Futures.getUnchecked(pending.response);
+  }
+
+  // Takes pending requests in order. Only one request per service goes into a batch, so that backups taken for one
+  // request aren't overwritten by the next, later requests for that service wait for the next batch.
+  private List<PendingRequest> takeBatch(ConcurrentLinkedQueue<PendingRequest> queue) {
+    final List<PendingRequest> batch = new ArrayList<>();
+    final Set<String> serviceIds = new HashSet<>();
+
+    for (PendingRequest pending : queue) {
+      if (batch.size() >= loadBalancerConfiguration.getMaxBatchSize()) {
+        break;
+      }
+
+      final Set<String> requestServiceIds = pending.getServiceIds();
+      final boolean conflicts = !Collections.disjoint(serviceIds, requestServiceIds);
+      serviceIds.addAll(requestServiceIds);
+
+      if (!conflicts && queue.remove(pending)) {
+        batch.add(pending);
+      }
+    }
+
+    return batch;
+  }
+
+  private void applyAll(ConcurrentLinkedQueue<PendingRequest> queue) {
+    while (!queue.isEmpty()) {
+      applyBatch(takeBatch(queue));
+    }
+  }
+
+  private void applyBatch(List<PendingRequest> batch) {
+    final List<ConfigChange> changes = new ArrayList<>(batch.size());
+
+    try {
+      for (PendingRequest pending : batch) {
+        try {
+          final BaragonRequest request = pending.request;
+          pending.maybeOldService = getOldService(request);
+
+          if (pending.action == RequestAction.REVERT) {
+            changes.add(new ConfigChange(request.getLoadBalancerRequestId(), getRevertContext(request, pending.maybeOldService), Optional.<BaragonService>absent()));
+          } else {
+            changes.add(new ConfigChange(request.getLoadBalancerRequestId(), getApplyContext(request), pending.maybeOldService));
+          }
+
+          triggerTesting();
+        } catch (Exception e) {
+          pending.response.set(errorResponse(pending, e));
+        }
+      }
+
+      final Map<String, Exception> failures = configHelper.applyBatch(changes);
+
+      for (PendingRequest pending : batch) {
+        if (!pending.response.isDone()) {
+          pending.response.set(batchResponse(pending, Optional.fromNullable(failures.get(pending.request.getLoadBalancerRequestId()))));
+        }
+      }
+    } catch (Exception e) {
+      LOG.error(String.format("Caught exception while applying a batch of %s requests", batch.size()), e);
+      for (PendingRequest pending : batch) {
+        if (!pending.response.isDone()) {
+          pending.response.set(errorResponse(pending, e));
+        }
+      }
+    } finally {
+      for (PendingRequest pending : batch) {
+        LOG.info(String.format("Done processing %s request: %s", pending.action, pending.request.getLoadBalancerRequestId()));
+      }
+    }
+  }
+
+  // mirrors what apply and revert respond with when processed on their own
+  private Response batchResponse(PendingRequest pending, Optional<Exception> maybeFailure) {
+    if (!maybeFailure.isPresent()) {
+      if (pending.action != RequestAction.REVERT) {
+        mostRecentRequestId.set(pending.request.getLoadBalancerRequestId());
+      }
+      return Response.ok().build();
+    }
+
+    final Exception e = maybeFailure.get();
+
+    if (pending.action == RequestAction.REVERT && e instanceof MissingTemplateException) {
+      if (serviceDidNotPreviouslyExist(pending.maybeOldService)) {
+        return Response.ok().build();
+      }
+      return errorResponse(pending, e);
+    }
+
+    return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+  }
+
+  private Response errorResponse(PendingRequest pending, Exception e) {
+    final String requestId = pending.request.getLoadBalancerRequestId();
+    LOG.error(String.format("Caught exception while %sING for request %s", pending.action, requestId), e);
+    return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(String.format("Caught exception while %sING for request %s: %s", pending.action, requestId, e.getMessage())).build();
   }
 
   private Response reload() throws Exception {
@@ -123,18 +337,14 @@ public class AgentRequestManager {
   }
 
   private Response revert(BaragonRequest request, Optional<BaragonService> maybeOldService) throws Exception {
-    final ServiceContext update;
-    if (movedOffLoadBalancer(maybeOldService)) {
-      update = new ServiceContext(request.getLoadBalancerService(), Collections.<UpstreamInfo>emptyList(), System.currentTimeMillis(), false);
-    } else {
-      update = new ServiceContext(maybeOldService.get(), stateDatastore.getUpstreamsMap(maybeOldService.get().getServiceId()).values(), System.currentTimeMillis(), true);
-    }
+    final ServiceContext update = getRevertContext(request, maybeOldService);
 
     triggerTesting();
 
     LOG.info(String.format("Reverting to %s", update));
     try {
-      configHelper.apply(update, Optional.<BaragonService>absent(), false);
+      // backed up and restored if the check fails, the same as a revert that goes through a batch
+      configHelper.apply(update, Optional.<BaragonService>absent(), true);
     } catch (MissingTemplateException e) {
       if (serviceDidNotPreviouslyExist(maybeOldService)) {
         return Response.ok().build();
@@ -148,6 +358,14 @@ public class AgentRequestManager {
     return Response.ok().build();
   }
 
+  private ServiceContext getRevertContext(BaragonRequest request, Optional<BaragonService> maybeOldService) throws Exception {
+    if (movedOffLoadBalancer(maybeOldService)) {
+      return new ServiceContext(request.getLoadBalancerService(), Collections.<UpstreamInfo>emptyList(), System.currentTimeMillis(), false);
+    } else {
+      return new ServiceContext(maybeOldService.get(), stateDatastore.getUpstreamsMap(maybeOldService.get().getServiceId()).values(), System.currentTimeMillis(), true);
+    }
+  }
+
   private ServiceContext getApplyContext(BaragonRequest request) throws Exception {
     if (movedOffLoadBalancer(request)) {
       return new ServiceContext(request.getLoadBalancerService(), Collections.<UpstreamInfo>emptyList(), System.currentTimeMillis(), false);
@@ -204,4 +422,23 @@ public class AgentRequestManager {
       }
     }
   }
+
+  private static class PendingRequest {
+    private final BaragonRequest request;
+    private final RequestAction action;
+    private final SettableFuture<Response> response = SettableFuture.create();
+    private Optional<BaragonService> maybeOldService = Optional.absent();
+
+    private PendingRequest(BaragonRequest request, RequestAction action) {
+      this.request = request;
+      this.action = action;
+    }
+
+    private Set<String> getServiceIds() {
+      final Set<String> serviceIds = new HashSet<>();
+      serviceIds.add(request.getLoadBalancerService().getServiceId());
+      serviceIds.addAll(request.getReplaceServiceId().asSet());
+      return serviceIds;
+    }
+  }
 }
@@ -0,0 +1,79 @@
+package com.hubspot.baragon.agent.models;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+// What was last applied for a service: the hash of the inputs it was rendered from, the same without the upstreams,
+// and the hash of each file written
+@JsonIgnoreProperties( ignoreUnknown = true )
+public class AppliedConfigs {
+  private final String inputsHash;
+  private final String serviceHash;
+  private final Map<String, String> fileHashes;
+
+  @JsonCreator
+  public AppliedConfigs(@JsonProperty("inputsHash") String inputsHash,
+                        @JsonProperty("serviceHash") String serviceHash,
+                        @JsonProperty("fileHashes") Map<String, String> fileHashes) {
+    this.inputsHash = inputsHash;
+    this.serviceHash = serviceHash;
+    this.fileHashes = fileHashes;
+  }
+
+  public String getInputsHash() {
+    return inputsHash;
+  }
+
+  public String getServiceHash() {
+    return serviceHash;
+  }
+
+  public Map<String, String> getFileHashes() {
+    return fileHashes;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    AppliedConfigs that = (AppliedConfigs) o;
+
+    if (!fileHashes.equals(that.fileHashes)) {
+      return false;
+    }
+    if (!inputsHash.equals(that.inputsHash)) {
+      return false;
+    }
+    if (serviceHash != null ? !serviceHash.equals(that.serviceHash) : that.serviceHash != null) {
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = inputsHash.hashCode();
+    result = 31 * result + (serviceHash != null ? serviceHash.hashCode() : 0);
+    result = 31 * result + fileHashes.hashCode();
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("inputsHash", inputsHash)
+        .add("serviceHash", serviceHash)
+        .add("fileHashes", fileHashes)
+        .toString();
+  }
+}
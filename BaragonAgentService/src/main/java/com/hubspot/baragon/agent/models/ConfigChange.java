@@ -0,0 +1,39 @@
+package com.hubspot.baragon.agent.models;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.hubspot.baragon.models.BaragonService;
+import com.hubspot.baragon.models.ServiceContext;
+
+public class ConfigChange {
+  private final String requestId;
+  private final ServiceContext context;
+  private final Optional<BaragonService> maybeOldService;
+
+  public ConfigChange(String requestId, ServiceContext context, Optional<BaragonService> maybeOldService) {
+    this.requestId = requestId;
+    this.context = context;
+    this.maybeOldService = maybeOldService;
+  }
+
+  public String getRequestId() {
+    return requestId;
+  }
+
+  public ServiceContext getContext() {
+    return context;
+  }
+
+  public Optional<BaragonService> getMaybeOldService() {
+    return maybeOldService;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(ConfigChange.class)
+        .add("requestId", requestId)
+        .add("context", context)
+        .add("maybeOldService", maybeOldService)
+        .toString();
+  }
+}
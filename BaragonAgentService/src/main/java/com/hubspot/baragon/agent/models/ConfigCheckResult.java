@@ -0,0 +1,45 @@
+package com.hubspot.baragon.agent.models;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+
+// Outcome of a run of checkConfigCommand, and the generation of the configs on disk at the time it started
+public class ConfigCheckResult {
+  private final long generation;
+  private final long checkedAt;
+  private final boolean valid;
+  private final Optional<String> errorMessage;
+
+  public ConfigCheckResult(long generation, long checkedAt, boolean valid, Optional<String> errorMessage) {
+    this.generation = generation;
+    this.checkedAt = checkedAt;
+    this.valid = valid;
+    this.errorMessage = errorMessage;
+  }
+
+  public long getGeneration() {
+    return generation;
+  }
+
+  public long getCheckedAt() {
+    return checkedAt;
+  }
+
+  public Optional<String> getErrorMessage() {
+    return errorMessage;
+  }
+
+  public boolean isValid() {
+    return valid;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(ConfigCheckResult.class)
+        .add("generation", generation)
+        .add("checkedAt", checkedAt)
+        .add("valid", valid)
+        .add("errorMessage", errorMessage)
+        .toString();
+  }
+}
@@ -0,0 +1,105 @@
+package com.hubspot.baragon.agent.models;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+// Hash of what a config file was last known to contain, along with the attributes the file had at that point
+@JsonIgnoreProperties( ignoreUnknown = true )
+public class ConfigManifestEntry {
+  private final String hash;
+  private final String fileKey;
+  private final long lastModifiedMillis;
+  private final long size;
+
+  @JsonCreator
+  public ConfigManifestEntry(@JsonProperty("hash") String hash,
+                             @JsonProperty("fileKey") String fileKey,
+                             @JsonProperty("lastModifiedMillis") long lastModifiedMillis,
+                             @JsonProperty("size") long size) {
+    this.hash = hash;
+    this.fileKey = fileKey;
+    this.lastModifiedMillis = lastModifiedMillis;
+    this.size = size;
+  }
+
+  public static ConfigManifestEntry fromAttributes(String hash, BasicFileAttributes attributes) {
+    return new ConfigManifestEntry(hash, attributes.fileKey() == null ? null : attributes.fileKey().toString(), attributes.lastModifiedTime().toMillis(), attributes.size());
+  }
+
+  public String getHash() {
+    return hash;
+  }
+
+  public String getFileKey() {
+    return fileKey;
+  }
+
+  public long getLastModifiedMillis() {
+    return lastModifiedMillis;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  // the file key (device and inode on posix) changes whenever the file is replaced, so without one nothing is trusted
+  @JsonIgnore
+  public boolean matches(BasicFileAttributes attributes) {
+    return fileKey != null
+        && attributes.fileKey() != null
+        && fileKey.equals(attributes.fileKey().toString())
+        && lastModifiedMillis == attributes.lastModifiedTime().toMillis()
+        && size == attributes.size();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    ConfigManifestEntry that = (ConfigManifestEntry) o;
+
+    if (lastModifiedMillis != that.lastModifiedMillis) {
+      return false;
+    }
+    if (size != that.size) {
+      return false;
+    }
+    if (fileKey != null ? !fileKey.equals(that.fileKey) : that.fileKey != null) {
+      return false;
+    }
+    if (!hash.equals(that.hash)) {
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = hash.hashCode();
+    result = 31 * result + (fileKey != null ? fileKey.hashCode() : 0);
+    result = 31 * result + (int) (lastModifiedMillis ^ (lastModifiedMillis >>> 32));
+    result = 31 * result + (int) (size ^ (size >>> 32));
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("hash", hash)
+        .add("fileKey", fileKey)
+        .add("lastModifiedMillis", lastModifiedMillis)
+        .add("size", size)
+        .toString();
+  }
+}
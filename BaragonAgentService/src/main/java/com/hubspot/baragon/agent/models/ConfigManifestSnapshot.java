@@ -0,0 +1,39 @@
+package com.hubspot.baragon.agent.models;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+// on-disk form of the config manifest
+@JsonIgnoreProperties( ignoreUnknown = true )
+public class ConfigManifestSnapshot {
+  private final Map<String, ConfigManifestEntry> files;
+  private final Map<String, AppliedConfigs> services;
+
+  @JsonCreator
+  public ConfigManifestSnapshot(@JsonProperty("files") Map<String, ConfigManifestEntry> files,
+                                @JsonProperty("services") Map<String, AppliedConfigs> services) {
+    this.files = Objects.firstNonNull(files, Collections.<String, ConfigManifestEntry>emptyMap());
+    this.services = Objects.firstNonNull(services, Collections.<String, AppliedConfigs>emptyMap());
+  }
+
+  public Map<String, ConfigManifestEntry> getFiles() {
+    return files;
+  }
+
+  public Map<String, AppliedConfigs> getServices() {
+    return services;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("files", files.size())
+        .add("services", services.size())
+        .toString();
+  }
+}
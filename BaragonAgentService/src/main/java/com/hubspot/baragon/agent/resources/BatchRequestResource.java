@@ -0,0 +1,31 @@
+package com.hubspot.baragon.agent.resources;
+
+import java.util.List;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import com.google.inject.Inject;
+import com.hubspot.baragon.agent.managers.AgentRequestManager;
+import com.hubspot.baragon.models.BaragonRequestBatchItem;
+import com.hubspot.baragon.models.BaragonRequestBatchResult;
+
+@Path("/batch")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class BatchRequestResource {
+  private final AgentRequestManager agentRequestManager;
+
+  @Inject
+  public BatchRequestResource(AgentRequestManager agentRequestManager) {
+    this.agentRequestManager = agentRequestManager;
+  }
+
+  @POST
+  public List<BaragonRequestBatchResult> apply(List<BaragonRequestBatchItem> items) throws InterruptedException {
+    return agentRequestManager.processRequests(items);
+  }
+}
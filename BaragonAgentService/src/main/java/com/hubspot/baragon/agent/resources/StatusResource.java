@@ -5,6 +5,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 
 import com.hubspot.baragon.data.BaragonKnownAgentsDatastore;
@@ -12,15 +13,14 @@ import com.hubspot.baragon.models.BaragonAgentMetadata;
 import org.apache.curator.framework.recipes.leader.LeaderLatch;
 import org.apache.curator.framework.state.ConnectionState;
 
-import com.google.common.base.Optional;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import com.hubspot.baragon.BaragonDataModule;
 import com.hubspot.baragon.agent.BaragonAgentServiceModule;
 import com.hubspot.baragon.agent.config.LoadBalancerConfiguration;
 import com.hubspot.baragon.agent.lbs.LocalLbAdapter;
+import com.hubspot.baragon.agent.models.ConfigCheckResult;
 import com.hubspot.baragon.auth.NoAuth;
-import com.hubspot.baragon.exceptions.InvalidConfigException;
 import com.hubspot.baragon.models.BaragonAgentStatus;
 
 @Path("/status")
@@ -46,21 +46,13 @@ public class StatusResource {
 
   @GET
   @NoAuth
-  public BaragonAgentStatus getStatus() {
-    boolean validConfigs = true;
-    Optional<String> errorMessage = Optional.absent();
-
-    try {
-      adapter.checkConfigs();
-    } catch (InvalidConfigException e) {
-      validConfigs = false;
-      errorMessage = Optional.of(e.getMessage());
-    }
+  public BaragonAgentStatus getStatus(@QueryParam("fresh") boolean fresh) {
+    final ConfigCheckResult configCheck = adapter.getConfigCheck(fresh);
 
     final ConnectionState currentConnectionState = connectionState.get();
 
     final String connectionStateString = currentConnectionState == null ? "UNKNOWN" : currentConnectionState.name();
 
-    return new BaragonAgentStatus(loadBalancerConfiguration.getName(), validConfigs, errorMessage, leaderLatch.hasLeadership(), mostRecentRequestId.get(), connectionStateString);
+    return new BaragonAgentStatus(loadBalancerConfiguration.getName(), configCheck.isValid(), configCheck.getErrorMessage(), leaderLatch.hasLeadership(), mostRecentRequestId.get(), connectionStateString, configCheck.getCheckedAt(), configCheck.getGeneration());
   }
 }
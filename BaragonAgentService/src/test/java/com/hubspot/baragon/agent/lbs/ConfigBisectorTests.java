@@ -0,0 +1,137 @@
+package com.hubspot.baragon.agent.lbs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.hubspot.baragon.agent.models.ConfigChange;
+import com.hubspot.baragon.models.BaragonService;
+import com.hubspot.baragon.models.ServiceContext;
+import com.hubspot.baragon.models.UpstreamInfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigBisectorTests {
+
+  // Keeps the request ids that are "on disk", the check fails while any broken one is among them
+  private static class FakeBisector extends ConfigBisector<String> {
+    private final Set<String> broken;
+    private final Set<String> unwritable;
+    private final Set<String> onDisk = new HashSet<>();
+    private int checks = 0;
+
+    private FakeBisector(Set<String> broken, Set<String> unwritable) {
+      this.broken = broken;
+      this.unwritable = unwritable;
+    }
+
+    @Override
+    protected Optional<String> write(ConfigChange change) throws Exception {
+      if (unwritable.contains(change.getRequestId())) {
+        throw new IllegalStateException("Failed writing " + change.getRequestId());
+      }
+      onDisk.add(change.getRequestId());
+      return Optional.of(change.getRequestId());
+    }
+
+    @Override
+    protected void restore(String written) {
+      onDisk.remove(written);
+    }
+
+    @Override
+    protected void check() throws Exception {
+      checks++;
+      for (String requestId : onDisk) {
+        if (broken.contains(requestId)) {
+          throw new IllegalStateException("Config check failed");
+        }
+      }
+    }
+
+    private Set<String> apply(List<ConfigChange> changes, Map<String, Exception> failures) {
+      final Map<String, String> written = new HashMap<>();
+      final Set<String> applied = new HashSet<>();
+      for (ConfigChange change : checkOrBisect(writeAll(changes, written, failures), written, failures)) {
+        applied.add(change.getRequestId());
+      }
+      return applied;
+    }
+  }
+
+  private static List<ConfigChange> changes(int count) {
+    final List<ConfigChange> changes = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      final BaragonService service = new BaragonService("service-" + i, Collections.<String>emptyList(), "/service-" + i, ImmutableSet.of("test"), Collections.<String, Object>emptyMap());
+      changes.add(new ConfigChange("request-" + i, new ServiceContext(service, Collections.<UpstreamInfo>emptyList(), System.currentTimeMillis(), true), Optional.<BaragonService>absent()));
+    }
+    return changes;
+  }
+
+  private static Set<String> requestIds(int count) {
+    final Set<String> requestIds = new HashSet<>();
+    for (int i = 0; i < count; i++) {
+      requestIds.add("request-" + i);
+    }
+    return requestIds;
+  }
+
+  @Test
+  public void testPassingBatchIsCheckedOnce() {
+    final FakeBisector bisector = new FakeBisector(Collections.<String>emptySet(), Collections.<String>emptySet());
+    final Map<String, Exception> failures = new HashMap<>();
+
+    assertEquals(requestIds(8), bisector.apply(changes(8), failures));
+    assertTrue(failures.isEmpty());
+    assertEquals(1, bisector.checks);
+  }
+
+  @Test
+  public void testBrokenChangesAreFoundAndReverted() {
+    final FakeBisector bisector = new FakeBisector(ImmutableSet.of("request-2", "request-6"), Collections.<String>emptySet());
+    final Map<String, Exception> failures = new HashMap<>();
+
+    final Set<String> applied = bisector.apply(changes(8), failures);
+
+    final Set<String> expected = requestIds(8);
+    expected.removeAll(ImmutableSet.of("request-2", "request-6"));
+
+    assertEquals(expected, applied);
+    assertEquals(ImmutableSet.of("request-2", "request-6"), failures.keySet());
+    // everything that passed is still in place, nothing broken is
+    assertEquals(expected, bisector.onDisk);
+  }
+
+  @Test
+  public void testSingleBrokenChangeTakesLogarithmicChecks() {
+    final FakeBisector bisector = new FakeBisector(ImmutableSet.of("request-11"), Collections.<String>emptySet());
+    final Map<String, Exception> failures = new HashMap<>();
+
+    bisector.apply(changes(16), failures);
+
+    assertEquals(ImmutableSet.of("request-11"), failures.keySet());
+    // the whole batch, then both halves at every level down to the broken change
+    assertTrue(bisector.checks <= 1 + 2 * 4);
+  }
+
+  @Test
+  public void testUnwritableChangeFailsWithoutCheck() {
+    final FakeBisector bisector = new FakeBisector(Collections.<String>emptySet(), ImmutableSet.of("request-1"));
+    final Map<String, Exception> failures = new HashMap<>();
+
+    final Set<String> applied = bisector.apply(changes(3), failures);
+
+    assertEquals(ImmutableSet.of("request-0", "request-2"), applied);
+    assertEquals(ImmutableSet.of("request-1"), failures.keySet());
+    assertEquals(1, bisector.checks);
+  }
+}
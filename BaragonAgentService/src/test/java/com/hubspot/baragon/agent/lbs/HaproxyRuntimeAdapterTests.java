@@ -0,0 +1,192 @@
+package com.hubspot.baragon.agent.lbs;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.hubspot.baragon.agent.config.RuntimeApiConfiguration;
+import com.hubspot.baragon.exceptions.LbAdapterExecuteException;
+import com.hubspot.baragon.models.BaragonService;
+import com.hubspot.baragon.models.ServiceContext;
+import com.hubspot.baragon.models.UpstreamInfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HaproxyRuntimeAdapterTests {
+  public static final String SERVICE_ID = "runtime-service";
+  public static final int SERVER_SLOTS = 4;
+
+  private StubRuntimeApi runtimeApi;
+  private HaproxyRuntimeAdapter adapter;
+
+  // Answers each command line like the runtime API does, then closes the connection
+  private static class StubRuntimeApi implements Runnable {
+    private final ServerSocket serverSocket;
+    private final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+    private volatile Optional<String> failure = Optional.absent();
+
+    private StubRuntimeApi() throws IOException {
+      this.serverSocket = new ServerSocket(0);
+    }
+
+    @Override
+    public void run() {
+      while (!serverSocket.isClosed()) {
+        try (Socket socket = serverSocket.accept()) {
+          final String line = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charsets.UTF_8)).readLine();
+          lines.add(line);
+
+          final StringBuilder reply = new StringBuilder();
+          if (failure.isPresent()) {
+            reply.append(failure.get()).append('\n');
+          } else {
+            for (String command : Splitter.on(';').split(line)) {
+              // setting a state answers with an empty line
+              reply.append(command.contains(" addr ") ? "IP changed from '0.0.0.0' to 'x' by 'stats socket command'" : "").append('\n');
+            }
+          }
+
+          final OutputStream out = socket.getOutputStream();
+          out.write(reply.toString().getBytes(Charsets.UTF_8));
+          out.flush();
+        } catch (IOException e) {
+          // closed by the test
+        }
+      }
+    }
+
+    private List<String> takeLines() {
+      synchronized (lines) {
+        final List<String> taken = new ArrayList<>(lines);
+        lines.clear();
+        return taken;
+      }
+    }
+  }
+
+  @Before
+  public void startRuntimeApi() throws IOException {
+    runtimeApi = new StubRuntimeApi();
+
+    final Thread thread = new Thread(runtimeApi, "stub-runtime-api");
+    thread.setDaemon(true);
+    thread.start();
+
+    final RuntimeApiConfiguration configuration = new RuntimeApiConfiguration();
+    configuration.setPort(runtimeApi.serverSocket.getLocalPort());
+    configuration.setServerSlots(SERVER_SLOTS);
+
+    adapter = new HaproxyRuntimeAdapter(configuration);
+  }
+
+  @After
+  public void stopRuntimeApi() throws IOException {
+    runtimeApi.serverSocket.close();
+  }
+
+  private static ServiceContext context(String... upstreams) {
+    final List<UpstreamInfo> upstreamInfos = new ArrayList<>();
+    for (String upstream : upstreams) {
+      upstreamInfos.add(new UpstreamInfo(upstream, Optional.<String>absent(), Optional.<String>absent()));
+    }
+
+    final BaragonService service = new BaragonService(SERVICE_ID, Collections.<String>emptyList(), "/" + SERVICE_ID, ImmutableSet.of("test"), Collections.<String, Object>emptyMap());
+    return new ServiceContext(service, upstreamInfos, System.currentTimeMillis(), true);
+  }
+
+  private static String ready(int slot, String host, int port) {
+    return String.format("set server %s/srv%d addr %s port %d;set server %s/srv%d state ready", SERVICE_ID, slot, host, port, SERVICE_ID, slot);
+  }
+
+  private static String maint(int slot) {
+    return String.format("set server %s/srv%d state maint", SERVICE_ID, slot);
+  }
+
+  private static List<String> line(String... commands) {
+    return Collections.singletonList(Joiner.on(';').join(commands));
+  }
+
+  @Test
+  public void testFirstUpdateSetsEverySlot() throws Exception {
+    adapter.updateUpstreams(context("10.0.0.1:80", "10.0.0.2:80"));
+
+    assertEquals(line(ready(1, "10.0.0.1", 80), ready(2, "10.0.0.2", 80), maint(3), maint(4)), runtimeApi.takeLines());
+  }
+
+  @Test
+  public void testUnchangedUpstreamsKeepTheirSlots() throws Exception {
+    adapter.updateUpstreams(context("10.0.0.1:80", "10.0.0.2:80", "10.0.0.3:80"));
+    runtimeApi.takeLines();
+
+    // reordered, with the second upstream replaced by a new one
+    adapter.updateUpstreams(context("10.0.0.4:8080", "10.0.0.3:80", "10.0.0.1:80"));
+    assertEquals(line(ready(2, "10.0.0.4", 8080)), runtimeApi.takeLines());
+
+    adapter.updateUpstreams(context("10.0.0.3:80", "10.0.0.1:80"));
+    assertEquals(line(maint(2)), runtimeApi.takeLines());
+
+    adapter.updateUpstreams(context("10.0.0.1:80", "10.0.0.3:80"));
+    assertTrue(runtimeApi.takeLines().isEmpty());
+  }
+
+  @Test
+  public void testFailedReplyForgetsSlots() throws Exception {
+    adapter.updateUpstreams(context("10.0.0.1:80"));
+    runtimeApi.takeLines();
+
+    runtimeApi.failure = Optional.of("No such server.");
+    try {
+      adapter.updateUpstreams(context("10.0.0.1:80", "10.0.0.2:80"));
+      fail("Update should have failed");
+    } catch (LbAdapterExecuteException e) {
+      assertEquals("No such server.", e.getExecuteException().getMessage());
+    }
+    assertEquals(line(ready(2, "10.0.0.2", 80)), runtimeApi.takeLines());
+
+    // the failed update may have been applied partly, so everything is set again
+    runtimeApi.failure = Optional.absent();
+    adapter.updateUpstreams(context("10.0.0.1:80", "10.0.0.2:80"));
+    assertEquals(line(ready(1, "10.0.0.1", 80), ready(2, "10.0.0.2", 80), maint(3), maint(4)), runtimeApi.takeLines());
+  }
+
+  @Test
+  public void testReloadForgetsSlots() throws Exception {
+    adapter.updateUpstreams(context("10.0.0.1:80", "10.0.0.2:80"));
+    runtimeApi.takeLines();
+
+    adapter.reloaded();
+
+    adapter.updateUpstreams(context("10.0.0.2:80"));
+    assertEquals(line(ready(1, "10.0.0.2", 80), maint(2), maint(3), maint(4)), runtimeApi.takeLines());
+  }
+
+  @Test
+  public void testTooManyUpstreamsSendNothing() throws Exception {
+    try {
+      adapter.updateUpstreams(context("10.0.0.1:80", "10.0.0.2:80", "10.0.0.3:80", "10.0.0.4:80", "10.0.0.5:80"));
+      fail("Update should have failed");
+    } catch (LbAdapterExecuteException e) {
+      // expected
+    }
+
+    assertEquals(ImmutableList.<String>of(), runtimeApi.takeLines());
+  }
+}
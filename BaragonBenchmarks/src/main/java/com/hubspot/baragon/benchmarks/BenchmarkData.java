@@ -0,0 +1,48 @@
+package com.hubspot.baragon.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.guava.GuavaModule;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.hubspot.baragon.models.BaragonService;
+import com.hubspot.baragon.models.UpstreamInfo;
+
+// fixtures shared by the benchmarks, shaped like what a production cluster sends
+public final class BenchmarkData {
+  public static final String LOAD_BALANCER_GROUP = "benchmark";
+  public static final long FETCH_TIMEOUT_MILLIS = 60000;
+
+  private BenchmarkData() {}
+
+  public static ObjectMapper objectMapper() {
+    final ObjectMapper objectMapper = new ObjectMapper();
+
+    objectMapper.registerModule(new GuavaModule());
+
+    return objectMapper;
+  }
+
+  public static BaragonService service(int index) {
+    final Map<String, Object> options = ImmutableMap.<String, Object>of(
+        "nginxExtraConfigs", Collections.singletonList("rewrite ^/service" + index + "$ /service" + index + "/ permanent;"),
+        "nginxProxyReadTimeout", 120);
+
+    return new BaragonService("service" + index, Collections.singletonList("owner" + index + "@example.com"), "/service" + index, ImmutableSet.of(LOAD_BALANCER_GROUP), options);
+  }
+
+  public static List<UpstreamInfo> upstreams(int serviceIndex, int count) {
+    final List<UpstreamInfo> upstreams = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      upstreams.add(new UpstreamInfo(String.format("10.%d.%d.%d:%d", serviceIndex % 256, i / 256, i % 256, 31000 + i), Optional.of("request-" + serviceIndex), Optional.of("rack" + (i % 3))));
+    }
+
+    return upstreams;
+  }
+}
@@ -0,0 +1,106 @@
+package com.hubspot.baragon.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.guava.GuavaModule;
+import com.google.common.base.Optional;
+import com.google.common.io.Files;
+import com.hubspot.baragon.agent.config.LoadBalancerConfiguration;
+import com.hubspot.baragon.agent.lbs.ConfigManifest;
+import com.hubspot.baragon.agent.lbs.FilesystemConfigHelper;
+import com.hubspot.baragon.agent.lbs.LbConfigGenerator;
+import com.hubspot.baragon.agent.lbs.LbRuntimeAdapter;
+import com.hubspot.baragon.agent.lbs.LocalLbAdapter;
+import com.hubspot.baragon.agent.lbs.ServiceContextHasher;
+import com.hubspot.baragon.models.BaragonService;
+import com.hubspot.baragon.models.ServiceContext;
+
+// end to end apply against a scratch directory, with `true` standing in for the check and reload commands
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FilesystemConfigHelperBenchmark {
+  @Param({"10", "100"})
+  public int upstreams;
+
+  private File rootPath;
+  private FilesystemConfigHelper configHelper;
+  private ServiceContext[] contexts;
+  private int next = 0;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    rootPath = Files.createTempDir();
+    new File(rootPath, "proxy").mkdir();
+    new File(rootPath, "upstreams").mkdir();
+
+    final LbConfigGenerator configGenerator = LbConfigGeneratorBenchmark.newConfigGenerator(rootPath.getAbsolutePath());
+
+    final LoadBalancerConfiguration loadBalancerConfiguration = new LoadBalancerConfiguration();
+    loadBalancerConfiguration.setName(BenchmarkData.LOAD_BALANCER_GROUP);
+    loadBalancerConfiguration.setRootPath(rootPath.getAbsolutePath());
+    loadBalancerConfiguration.setCheckConfigCommand("true");
+    loadBalancerConfiguration.setReloadConfigCommand("true");
+
+    final ObjectMapper objectMapper = new ObjectMapper();
+    objectMapper.registerModule(new GuavaModule());
+
+    configHelper = new FilesystemConfigHelper(configGenerator, new LocalLbAdapter(loadBalancerConfiguration),
+        new ConfigManifest(loadBalancerConfiguration, objectMapper),
+        new ServiceContextHasher(LbConfigGeneratorBenchmark.newTemplates(), objectMapper),
+        Optional.<LbRuntimeAdapter>absent());
+
+    // alternate between two upstream sets so every apply has something to write
+    final BaragonService service = BenchmarkData.service(0);
+    contexts = new ServiceContext[] {
+        new ServiceContext(service, BenchmarkData.upstreams(0, upstreams), System.currentTimeMillis(), true),
+        new ServiceContext(service, BenchmarkData.upstreams(1, upstreams), System.currentTimeMillis(), true)
+    };
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    deleteRecursively(rootPath);
+  }
+
+  @Benchmark
+  public void applyChanged() throws Exception {
+    configHelper.apply(contexts[next++ % contexts.length], Optional.<BaragonService>absent(), true);
+  }
+
+  @Benchmark
+  public void applyUnchanged() throws Exception {
+    configHelper.apply(contexts[0], Optional.<BaragonService>absent(), true);
+  }
+
+  private static void deleteRecursively(File file) {
+    final File[] children = file.listFiles();
+
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+
+    file.delete();
+  }
+}
@@ -0,0 +1,83 @@
+package com.hubspot.baragon.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hubspot.baragon.models.BaragonRequest;
+import com.hubspot.baragon.models.BaragonServiceState;
+import com.hubspot.baragon.models.UpstreamInfo;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JacksonBenchmark {
+  private static final TypeReference<List<BaragonServiceState>> GLOBAL_STATE_TYPE = new TypeReference<List<BaragonServiceState>>() {};
+
+  @Param({"10", "100"})
+  public int upstreams;
+
+  // the global state node holds one of these per service
+  @Param({"1000"})
+  public int services;
+
+  private ObjectMapper objectMapper;
+  private BaragonRequest request;
+  private byte[] serializedRequest;
+  private List<BaragonServiceState> globalState;
+  private byte[] serializedGlobalState;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    objectMapper = BenchmarkData.objectMapper();
+
+    request = new BaragonRequest("request-0", BenchmarkData.service(0), BenchmarkData.upstreams(0, upstreams), Collections.<UpstreamInfo>emptyList());
+    serializedRequest = objectMapper.writeValueAsBytes(request);
+
+    globalState = new ArrayList<>(services);
+    for (int i = 0; i < services; i++) {
+      globalState.add(new BaragonServiceState(BenchmarkData.service(i), BenchmarkData.upstreams(i, upstreams)));
+    }
+    serializedGlobalState = objectMapper.writeValueAsBytes(globalState);
+  }
+
+  @Benchmark
+  public byte[] serializeRequest() throws IOException {
+    return objectMapper.writeValueAsBytes(request);
+  }
+
+  @Benchmark
+  public BaragonRequest deserializeRequest() throws IOException {
+    return objectMapper.readValue(serializedRequest, BaragonRequest.class);
+  }
+
+  @Benchmark
+  public byte[] serializeGlobalState() throws IOException {
+    return objectMapper.writeValueAsBytes(globalState);
+  }
+
+  @Benchmark
+  public List<BaragonServiceState> deserializeGlobalState() throws IOException {
+    return objectMapper.readValue(serializedGlobalState, GLOBAL_STATE_TYPE);
+  }
+}
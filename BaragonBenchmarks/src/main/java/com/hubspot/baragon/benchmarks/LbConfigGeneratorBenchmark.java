@@ -0,0 +1,137 @@
+package com.hubspot.baragon.benchmarks;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.hubspot.baragon.agent.BaragonAgentServiceModule;
+import com.hubspot.baragon.agent.config.LoadBalancerConfiguration;
+import com.hubspot.baragon.agent.handlebars.FirstOfHelper;
+import com.hubspot.baragon.agent.handlebars.FormatTimestampHelper;
+import com.hubspot.baragon.agent.lbs.LbConfigGenerator;
+import com.hubspot.baragon.agent.models.LbConfigTemplate;
+import com.hubspot.baragon.exceptions.MissingTemplateException;
+import com.hubspot.baragon.models.BaragonConfigFile;
+import com.hubspot.baragon.models.ServiceContext;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LbConfigGeneratorBenchmark {
+  // the nginx templates from the example agent configuration
+  public static final String PROXY_TEMPLATE =
+      "# This configuration is automatically generated by Baragon, local changes may be lost!\n" +
+      "#\n" +
+      "# Service ID: {{{service.serviceId}}}\n" +
+      "# Service base path: {{{service.serviceBasePath}}}\n" +
+      "# Owners:\n" +
+      "{{#each service.owners}}\n" +
+      "#   - {{{.}}}\n" +
+      "{{else}}\n" +
+      "#   No owners!\n" +
+      "{{/each}}\n" +
+      "# Last updated: {{formatTimestamp timestamp}}\n" +
+      "{{#if upstreams}}\n" +
+      "{{#if service.options.nginxExtraConfigs}}\n" +
+      "# BEGIN CUSTOM NGINX CONFIGS\n" +
+      "{{#each service.options.nginxExtraConfigs}}{{{.}}}\n" +
+      "{{/each}}\n" +
+      "# END CUSTOM NGINX CONFIGS\n" +
+      "{{/if}}\n" +
+      "location {{{service.options.nginxLocationModifier}}} {{{service.serviceBasePath}}} {\n" +
+      "    proxy_pass_header Server;\n" +
+      "    proxy_set_header Host $http_host;\n" +
+      "    proxy_redirect off;\n" +
+      "    proxy_set_header X-RealIP $remote_addr;\n" +
+      "    proxy_set_header X-Scheme $scheme;\n" +
+      "    proxy_set_header X-Request-Start \"${msec}\";\n" +
+      "    {{#if service.options.nginxProxyPassOverride}}\n" +
+      "    proxy_pass http://{{{service.options.nginxProxyPassOverride}}};\n" +
+      "    {{else}}\n" +
+      "    proxy_pass http://baragon_{{{service.serviceId}}};\n" +
+      "    {{/if}}\n" +
+      "    proxy_connect_timeout {{firstOf service.options.nginxProxyConnectTimeout 55}};\n" +
+      "    proxy_read_timeout {{firstOf service.options.nginxProxyReadTimeout 60}};\n" +
+      "}\n" +
+      "{{else}}\n" +
+      "#\n" +
+      "# Service is disabled due to no defined upstreams!\n" +
+      "#\n" +
+      "{{/if}}\n";
+
+  public static final String UPSTREAM_TEMPLATE =
+      "# This configuration is automatically generated by Baragon, local changes may be lost!\n" +
+      "#\n" +
+      "# Service ID: {{{service.serviceId}}}\n" +
+      "# Service base path: {{{service.serviceBasePath}}}\n" +
+      "{{#if upstreams}}\n" +
+      "upstream baragon_{{{service.serviceId}}} {\n" +
+      "    {{#each upstreams}}server {{{upstream}}};  # {{{requestId}}}\n" +
+      "    {{/each}}\n" +
+      "}\n" +
+      "{{else}}\n" +
+      "#\n" +
+      "# Service is disabled due to no defined upstreams!\n" +
+      "#\n" +
+      "{{/if}}\n";
+
+  @Param({"1", "10", "100"})
+  public int upstreams;
+
+  private LbConfigGenerator configGenerator;
+  private ServiceContext context;
+
+  public static Map<String, List<LbConfigTemplate>> newTemplates() throws Exception {
+    final Handlebars handlebars = new Handlebars();
+
+    handlebars.registerHelper("formatTimestamp", new FormatTimestampHelper("yyyy-MM-dd hh:mm a"));
+    handlebars.registerHelper("firstOf", new FirstOfHelper(""));
+
+    final List<LbConfigTemplate> templates = Arrays.asList(
+        new LbConfigTemplate("proxy/%s.conf", handlebars.compileInline(PROXY_TEMPLATE)),
+        new LbConfigTemplate("upstreams/%s.conf", handlebars.compileInline(UPSTREAM_TEMPLATE)));
+
+    return Collections.singletonMap(BaragonAgentServiceModule.DEFAULT_TEMPLATE_NAME, templates);
+  }
+
+  public static LbConfigGenerator newConfigGenerator(String rootPath) throws Exception {
+    final LoadBalancerConfiguration loadBalancerConfiguration = new LoadBalancerConfiguration();
+    loadBalancerConfiguration.setName(BenchmarkData.LOAD_BALANCER_GROUP);
+    loadBalancerConfiguration.setRootPath(rootPath);
+    loadBalancerConfiguration.setCheckConfigCommand("true");
+    loadBalancerConfiguration.setReloadConfigCommand("true");
+
+    return new LbConfigGenerator(loadBalancerConfiguration, newTemplates());
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    configGenerator = newConfigGenerator("/etc/nginx/conf.d");
+    context = new ServiceContext(BenchmarkData.service(0), BenchmarkData.upstreams(0, upstreams), System.currentTimeMillis(), true);
+  }
+
+  @Benchmark
+  public Collection<BaragonConfigFile> generateConfigsForProject() throws MissingTemplateException {
+    return configGenerator.generateConfigsForProject(context);
+  }
+}
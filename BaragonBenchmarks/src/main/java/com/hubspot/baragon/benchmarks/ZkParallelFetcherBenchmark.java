@@ -0,0 +1,93 @@
+package com.hubspot.baragon.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.ZKPaths;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Functions;
+import com.hubspot.baragon.utils.ZkParallelFetcher;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ZkParallelFetcherBenchmark {
+  private static final String ROOT_PATH = "/benchmark";
+  private static final int CHILDREN_PER_NODE = 10;
+
+  @Param({"10", "100", "1000"})
+  public int batchSize;
+
+  @Param({"256"})
+  public int nodeBytes;
+
+  @Param({"100", "1000"})
+  public int maxInFlight;
+
+  private TestingServer testingServer;
+  private CuratorFramework curatorFramework;
+  private ZkParallelFetcher zkFetcher;
+  private List<String> paths;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    testingServer = new TestingServer();
+    curatorFramework = CuratorFrameworkFactory.newClient(testingServer.getConnectString(), new RetryOneTime(1));
+    curatorFramework.start();
+
+    zkFetcher = new ZkParallelFetcher(curatorFramework, maxInFlight, BenchmarkData.FETCH_TIMEOUT_MILLIS);
+    paths = new ArrayList<>(batchSize);
+
+    final byte[] data = new byte[nodeBytes];
+
+    for (int i = 0; i < batchSize; i++) {
+      final String path = ZKPaths.makePath(ROOT_PATH, "node" + i);
+      curatorFramework.create().creatingParentsIfNeeded().forPath(path, data);
+
+      for (int j = 0; j < CHILDREN_PER_NODE; j++) {
+        curatorFramework.create().forPath(ZKPaths.makePath(path, "child" + j));
+      }
+
+      paths.add(path);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    curatorFramework.close();
+    testingServer.close();
+  }
+
+  @Benchmark
+  public Map<String, byte[]> fetchDataInParallel() throws Exception {
+    return zkFetcher.fetchDataInParallel(paths, Functions.<byte[]>identity());
+  }
+
+  @Benchmark
+  public Map<String, Collection<String>> fetchChildrenInParallel() throws Exception {
+    return zkFetcher.fetchChildrenInParallel(paths);
+  }
+}
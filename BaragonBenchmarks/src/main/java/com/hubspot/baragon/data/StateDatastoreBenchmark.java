@@ -0,0 +1,78 @@
+package com.hubspot.baragon.data;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hubspot.baragon.benchmarks.BenchmarkData;
+import com.hubspot.baragon.models.BaragonServiceState;
+import com.hubspot.baragon.utils.ZkParallelFetcher;
+import com.hubspot.baragon.utils.ZkReadCache;
+
+// in the datastore's package, so it can call computeAllServiceStates directly
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StateDatastoreBenchmark {
+  @Param({"100", "1000"})
+  public int services;
+
+  @Param({"2", "20"})
+  public int upstreamsPerService;
+
+  @Param({"1000"})
+  public int maxInFlight;
+
+  private TestingServer testingServer;
+  private CuratorFramework curatorFramework;
+  private BaragonStateDatastore stateDatastore;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    testingServer = new TestingServer();
+    curatorFramework = CuratorFrameworkFactory.newClient(testingServer.getConnectString(), new RetryOneTime(1));
+    curatorFramework.start();
+
+    final ObjectMapper objectMapper = BenchmarkData.objectMapper();
+    final ZkParallelFetcher zkFetcher = new ZkParallelFetcher(curatorFramework, maxInFlight, BenchmarkData.FETCH_TIMEOUT_MILLIS);
+
+    stateDatastore = new BaragonStateDatastore(curatorFramework, objectMapper, zkFetcher, new ZkReadCache(curatorFramework, zkFetcher, false));
+
+    for (int i = 0; i < services; i++) {
+      stateDatastore.addService(BenchmarkData.service(i));
+      stateDatastore.addUpstreams("service" + i, BenchmarkData.upstreams(i, upstreamsPerService));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    curatorFramework.close();
+    testingServer.close();
+  }
+
+  @Benchmark
+  public Collection<BaragonServiceState> computeAllServiceStates() throws Exception {
+    return stateDatastore.computeAllServiceStates();
+  }
+}
@@ -1,5 +1,6 @@
 package com.hubspot.baragon.config;
 
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 public class ZooKeeperConfiguration {
@@ -17,6 +18,14 @@ public class ZooKeeperConfiguration {
   @NotNull
   private String zkNamespace;
 
+  private boolean readCacheEnabled = false;
+
+  @Min(1)
+  private int parallelFetchMaxInFlight = 1000;
+
+  @Min(1)
+  private long parallelFetchTimeoutMillis = 10000;
+
   public String getQuorum() {
     return quorum;
   }
@@ -65,4 +74,28 @@ public class ZooKeeperConfiguration {
     this.zkNamespace = zkNamespace;
   }
 
+  public boolean isReadCacheEnabled() {
+    return readCacheEnabled;
+  }
+
+  public void setReadCacheEnabled(boolean readCacheEnabled) {
+    this.readCacheEnabled = readCacheEnabled;
+  }
+
+  public int getParallelFetchMaxInFlight() {
+    return parallelFetchMaxInFlight;
+  }
+
+  public void setParallelFetchMaxInFlight(int parallelFetchMaxInFlight) {
+    this.parallelFetchMaxInFlight = parallelFetchMaxInFlight;
+  }
+
+  public long getParallelFetchTimeoutMillis() {
+    return parallelFetchTimeoutMillis;
+  }
+
+  public void setParallelFetchTimeoutMillis(long parallelFetchTimeoutMillis) {
+    this.parallelFetchTimeoutMillis = parallelFetchTimeoutMillis;
+  }
+
 }
@@ -13,6 +13,12 @@ public class BaragonAgentStatus {
   private final boolean leader;
   private final String mostRecentRequestId;
   private final String zookeeperState;
+  private final long configsCheckedAt;
+  private final long configGeneration;
+
+  public BaragonAgentStatus(String group, boolean validConfigs, Optional<String> errorMessage, boolean leader, String mostRecentRequestId, String zookeeperState) {
+    this(group, validConfigs, errorMessage, leader, mostRecentRequestId, zookeeperState, 0, 0);
+  }
 
   @JsonCreator
   public BaragonAgentStatus(@JsonProperty("group") String group,
@@ -20,13 +26,17 @@ public class BaragonAgentStatus {
                             @JsonProperty("errorMessage") Optional<String> errorMessage,
                             @JsonProperty("leader") boolean leader,
                             @JsonProperty("mostRecentRequestId") String mostRecentRequestId,
-                            @JsonProperty("zookeeperState") String zookeeperState) {
+                            @JsonProperty("zookeeperState") String zookeeperState,
+                            @JsonProperty("configsCheckedAt") long configsCheckedAt,
+                            @JsonProperty("configGeneration") long configGeneration) {
     this.group = group;
     this.validConfigs = validConfigs;
     this.errorMessage = errorMessage;
     this.leader = leader;
     this.mostRecentRequestId = mostRecentRequestId;
     this.zookeeperState = zookeeperState;
+    this.configsCheckedAt = configsCheckedAt;
+    this.configGeneration = configGeneration;
   }
 
   public String getGroup() {
@@ -53,6 +63,14 @@ public class BaragonAgentStatus {
     return zookeeperState;
   }
 
+  public long getConfigsCheckedAt() {
+    return configsCheckedAt;
+  }
+
+  public long getConfigGeneration() {
+    return configGeneration;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -70,6 +88,12 @@ public class BaragonAgentStatus {
     if (validConfigs != that.validConfigs) {
       return false;
     }
+    if (configsCheckedAt != that.configsCheckedAt) {
+      return false;
+    }
+    if (configGeneration != that.configGeneration) {
+      return false;
+    }
     if (!errorMessage.equals(that.errorMessage)) {
       return false;
     }
@@ -95,6 +119,8 @@ public class BaragonAgentStatus {
     result = 31 * result + (leader ? 1 : 0);
     result = 31 * result + (mostRecentRequestId != null ? mostRecentRequestId.hashCode() : 0);
     result = 31 * result + zookeeperState.hashCode();
+    result = 31 * result + (int) (configsCheckedAt ^ (configsCheckedAt >>> 32));
+    result = 31 * result + (int) (configGeneration ^ (configGeneration >>> 32));
     return result;
   }
 
@@ -107,6 +133,8 @@ public class BaragonAgentStatus {
         ", leader=" + leader +
         ", mostRecentRequestId='" + mostRecentRequestId + '\'' +
         ", zookeeperState='" + zookeeperState + '\'' +
+        ", configsCheckedAt=" + configsCheckedAt +
+        ", configGeneration=" + configGeneration +
         ']';
   }
 }
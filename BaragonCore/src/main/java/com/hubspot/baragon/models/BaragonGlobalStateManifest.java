@@ -0,0 +1,93 @@
+package com.hubspot.baragon.models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// stored in place of the global state when it is split across several chunk nodes
+@JsonIgnoreProperties( ignoreUnknown = true )
+public class BaragonGlobalStateManifest {
+  public static final String STATE_CHUNKS_PATH = "/state-chunks";
+  public static final String STATE_CHUNK_GENERATION_FORMAT = STATE_CHUNKS_PATH + "/%s";
+  public static final String STATE_CHUNK_FORMAT = STATE_CHUNK_GENERATION_FORMAT + "/%s";
+
+  private final long generation;
+  private final int chunkCount;
+  private final int totalBytes;
+
+  @JsonCreator
+  public BaragonGlobalStateManifest(@JsonProperty("generation") long generation,
+                                    @JsonProperty("chunkCount") int chunkCount,
+                                    @JsonProperty("totalBytes") int totalBytes) {
+    this.generation = generation;
+    this.chunkCount = chunkCount;
+    this.totalBytes = totalBytes;
+  }
+
+  // the manifest is a json object, while the unchunked state is a json array
+  public static boolean isManifest(byte[] data) {
+    for (byte b : data) {
+      if (!Character.isWhitespace(b)) {
+        return b == '{';
+      }
+    }
+    return false;
+  }
+
+  public long getGeneration() {
+    return generation;
+  }
+
+  public int getChunkCount() {
+    return chunkCount;
+  }
+
+  public int getTotalBytes() {
+    return totalBytes;
+  }
+
+  public String getChunkPath(int index) {
+    return String.format(STATE_CHUNK_FORMAT, generation, index);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    BaragonGlobalStateManifest that = (BaragonGlobalStateManifest) o;
+
+    if (generation != that.generation) {
+      return false;
+    }
+    if (chunkCount != that.chunkCount) {
+      return false;
+    }
+    if (totalBytes != that.totalBytes) {
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = (int) (generation ^ (generation >>> 32));
+    result = 31 * result + chunkCount;
+    result = 31 * result + totalBytes;
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "BaragonGlobalStateManifest [" +
+        "generation=" + generation +
+        ", chunkCount=" + chunkCount +
+        ", totalBytes=" + totalBytes +
+        ']';
+  }
+}
@@ -0,0 +1,63 @@
+package com.hubspot.baragon.models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+@JsonIgnoreProperties( ignoreUnknown = true )
+public class BaragonRequestBatchItem {
+  private final String requestId;
+  private final AgentRequestType requestType;
+
+  @JsonCreator
+  public BaragonRequestBatchItem(@JsonProperty("requestId") String requestId,
+                                 @JsonProperty("requestType") AgentRequestType requestType) {
+    this.requestId = requestId;
+    this.requestType = requestType;
+  }
+
+  public String getRequestId() {
+    return requestId;
+  }
+
+  public AgentRequestType getRequestType() {
+    return requestType;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    BaragonRequestBatchItem that = (BaragonRequestBatchItem) o;
+
+    if (!requestId.equals(that.requestId)) {
+      return false;
+    }
+    if (requestType != that.requestType) {
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = requestId.hashCode();
+    result = 31 * result + requestType.hashCode();
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("requestId", requestId)
+        .add("requestType", requestType)
+        .toString();
+  }
+}
@@ -0,0 +1,76 @@
+package com.hubspot.baragon.models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+
+@JsonIgnoreProperties( ignoreUnknown = true )
+public class BaragonRequestBatchResult {
+  private final String requestId;
+  private final int statusCode;
+  private final Optional<String> message;
+
+  @JsonCreator
+  public BaragonRequestBatchResult(@JsonProperty("requestId") String requestId,
+                                   @JsonProperty("statusCode") int statusCode,
+                                   @JsonProperty("message") Optional<String> message) {
+    this.requestId = requestId;
+    this.statusCode = statusCode;
+    this.message = message;
+  }
+
+  public String getRequestId() {
+    return requestId;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public Optional<String> getMessage() {
+    return message;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    BaragonRequestBatchResult that = (BaragonRequestBatchResult) o;
+
+    if (statusCode != that.statusCode) {
+      return false;
+    }
+    if (!message.equals(that.message)) {
+      return false;
+    }
+    if (!requestId.equals(that.requestId)) {
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = requestId.hashCode();
+    result = 31 * result + statusCode;
+    result = 31 * result + message.hashCode();
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("requestId", requestId)
+        .add("statusCode", statusCode)
+        .add("message", message)
+        .toString();
+  }
+}
@@ -0,0 +1,87 @@
+package com.hubspot.baragon.models;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.io.ByteStreams;
+
+// Encodings for the serialized global state. Every format except plain JSON prefixes its payload with a header byte,
+// none of which can start a JSON document, so data written before formats existed still decodes as JSON.
+public enum BaragonStateFormat {
+  JSON((byte) 0) {
+    @Override
+    protected byte[] compress(byte[] data) {
+      return data;
+    }
+
+    @Override
+    protected byte[] decompress(byte[] data) {
+      return data;
+    }
+  },
+  GZIP((byte) 1) {
+    @Override
+    protected byte[] compress(byte[] data) throws IOException {
+      final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length / 4 + 16);
+      try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+        gzipOutputStream.write(data);
+      }
+      return outputStream.toByteArray();
+    }
+
+    @Override
+    protected byte[] decompress(byte[] data) throws IOException {
+      try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(data))) {
+        return ByteStreams.toByteArray(gzipInputStream);
+      }
+    }
+  };
+
+  private final byte header;
+
+  BaragonStateFormat(byte header) {
+    this.header = header;
+  }
+
+  protected abstract byte[] compress(byte[] data) throws IOException;
+
+  protected abstract byte[] decompress(byte[] data) throws IOException;
+
+  public byte[] encode(byte[] json) throws IOException {
+    if (this == JSON) {
+      return json;
+    }
+
+    final byte[] compressed = compress(json);
+    final byte[] encoded = new byte[compressed.length + 1];
+    encoded[0] = header;
+    System.arraycopy(compressed, 0, encoded, 1, compressed.length);
+    return encoded;
+  }
+
+  public static BaragonStateFormat detect(byte[] data) {
+    if (data != null && data.length > 0) {
+      for (BaragonStateFormat format : values()) {
+        if (format != JSON && format.header == data[0]) {
+          return format;
+        }
+      }
+    }
+    return JSON;
+  }
+
+  // returns the json for data written in any format, including plain json
+  public static byte[] decode(byte[] data) throws IOException {
+    final BaragonStateFormat format = detect(data);
+
+    if (format == JSON) {
+      return data;
+    }
+
+    return format.decompress(Arrays.copyOfRange(data, 1, data.length));
+  }
+}
@@ -34,6 +34,7 @@ import com.ning.http.client.AsyncHttpClientConfig;
 
 public class BaragonDataModule extends AbstractModule {
   public static final String BARAGON_AGENT_REQUEST_URI_FORMAT = "baragon.agent.request.uri.format";
+  public static final String BARAGON_AGENT_BATCH_REQUEST_URI_FORMAT = "baragon.agent.batchRequest.uri.format";
   public static final String BARAGON_AGENT_MAX_ATTEMPTS = "baragon.agent.maxAttempts";
   public static final String BARAGON_AGENT_REQUEST_TIMEOUT_MS = "baragon.agent.requestTimeoutMs";
 
@@ -42,6 +43,8 @@ public class BaragonDataModule extends AbstractModule {
 
   public static final String BARAGON_SERVICE_WORKER_LAST_START = "baragon.service.worker.lastStartedAt";
   public static final String BARAGON_ELB_WORKER_LAST_START = "baragon.service.elb.lastStartedAt";
+  public static final String BARAGON_SERVICE_WORKER_EXECUTOR = "baragon.service.worker.executor";
+  public static final String BARAGON_SERVICE_WORKER_COALESCE_UPDATES = "baragon.service.worker.coalesceUpdates";
 
   public static final String BARAGON_AUTH_KEY_MAP = "baragon.auth.keyMap";
 
@@ -49,6 +52,13 @@ public class BaragonDataModule extends AbstractModule {
   public static final String BARAGON_AUTH_PATH_CACHE = "baragon.auth.pathCache";
 
   public static final String BARAGON_ZK_CONNECTION_STATE = "baragon.zk.connectionState";
+  public static final String BARAGON_ZK_READ_CACHE_ENABLED = "baragon.zk.readCacheEnabled";
+  public static final String BARAGON_ZK_FETCH_MAX_IN_FLIGHT = "baragon.zk.fetchMaxInFlight";
+  public static final String BARAGON_ZK_FETCH_TIMEOUT_MS = "baragon.zk.fetchTimeoutMs";
+
+  public static final String BARAGON_STATE_INCREMENTAL_UPDATES = "baragon.state.incrementalUpdates";
+  public static final String BARAGON_STATE_MAX_CHUNK_BYTES = "baragon.state.maxChunkBytes";
+  public static final String BARAGON_STATE_FORMAT = "baragon.state.format";
 
   public static final String BARAGON_SERVICE_LEADER_LATCH = "baragon.service.leaderLatch";
 
@@ -128,6 +138,24 @@ public class BaragonDataModule extends AbstractModule {
     return new AtomicReference<>();
   }
 
+  @Provides
+  @Named(BARAGON_ZK_READ_CACHE_ENABLED)
+  public boolean providesZkReadCacheEnabled(ZooKeeperConfiguration config) {
+    return config.isReadCacheEnabled();
+  }
+
+  @Provides
+  @Named(BARAGON_ZK_FETCH_MAX_IN_FLIGHT)
+  public int providesZkFetchMaxInFlight(ZooKeeperConfiguration config) {
+    return config.getParallelFetchMaxInFlight();
+  }
+
+  @Provides
+  @Named(BARAGON_ZK_FETCH_TIMEOUT_MS)
+  public long providesZkFetchTimeoutMs(ZooKeeperConfiguration config) {
+    return config.getParallelFetchTimeoutMillis();
+  }
+
   @Provides
   @Singleton
   @Named(BARAGON_AUTH_KEY_MAP)
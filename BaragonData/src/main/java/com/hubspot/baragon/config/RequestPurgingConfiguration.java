@@ -0,0 +1,88 @@
+package com.hubspot.baragon.config;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class RequestPurgingConfiguration {
+  @JsonProperty("enabled")
+  private boolean enabled = false;
+
+  @Min(60)
+  private int intervalSeconds = 600;
+
+  @Min(0)
+  private int initialDelaySeconds = 300;
+
+  // finished requests are purged once they are older than this, or once there are more than maxRetainedRequests newer ones
+  @Min(0)
+  private int retentionHours = 168;
+
+  @Min(0)
+  private int maxRetainedRequests = 10000;
+
+  // keep the final response of purged requests, so they can still be looked up
+  @JsonProperty("archiveEnabled")
+  private boolean archiveEnabled = true;
+
+  @Min(0)
+  private int archiveRetentionHours = 720;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public int getIntervalSeconds() {
+    return intervalSeconds;
+  }
+
+  public void setIntervalSeconds(int intervalSeconds) {
+    this.intervalSeconds = intervalSeconds;
+  }
+
+  public int getInitialDelaySeconds() {
+    return initialDelaySeconds;
+  }
+
+  public void setInitialDelaySeconds(int initialDelaySeconds) {
+    this.initialDelaySeconds = initialDelaySeconds;
+  }
+
+  public int getRetentionHours() {
+    return retentionHours;
+  }
+
+  public void setRetentionHours(int retentionHours) {
+    this.retentionHours = retentionHours;
+  }
+
+  public int getMaxRetainedRequests() {
+    return maxRetainedRequests;
+  }
+
+  public void setMaxRetainedRequests(int maxRetainedRequests) {
+    this.maxRetainedRequests = maxRetainedRequests;
+  }
+
+  public boolean isArchiveEnabled() {
+    return archiveEnabled;
+  }
+
+  public void setArchiveEnabled(boolean archiveEnabled) {
+    this.archiveEnabled = archiveEnabled;
+  }
+
+  public int getArchiveRetentionHours() {
+    return archiveRetentionHours;
+  }
+
+  public void setArchiveRetentionHours(int archiveRetentionHours) {
+    this.archiveRetentionHours = archiveRetentionHours;
+  }
+}
@@ -6,16 +6,18 @@ import java.util.Comparator;
 import java.util.List;
 
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.api.PathAndBytesable;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.io.BaseEncoding;
+import com.hubspot.baragon.utils.ZkReadCache;
 
 // because curator is a piece of shit
 public abstract class AbstractDataStore {
@@ -63,19 +65,138 @@ public abstract class AbstractDataStore {
     }
   }
 
+  public ZkTransaction startTransaction() {
+    return new ZkTransaction(curatorFramework, Optional.<ZkReadCache>absent());
+  }
+
+  protected <T> byte[] serialize(T data) {
+    try {
+      return objectMapper.writeValueAsBytes(data);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  protected <T> void writeToZk(ZkTransaction transaction, String path, T data) {
+    transaction.write(path, nodeExists(path), serialize(data));
+  }
+
+  protected void deleteNode(ZkTransaction transaction, String path) {
+    transaction.delete(path, nodeExists(path));
+  }
+
+  // which operation a write tries first. The other one is only attempted if the first finds the node isn't in the
+  // state it expected, so a correct hint costs a single round trip and a wrong one costs two.
+  protected enum WriteHint {
+    EXISTS, NEW
+  }
+
+  private static final int MAX_WRITE_ATTEMPTS = 5;
+  private static final int MAX_COMPARE_AND_SET_ATTEMPTS = 10;
+
   protected <T> void writeToZk(String path, T data) {
+    writeToZk(path, data, WriteHint.EXISTS);
+  }
+
+  protected <T> void writeToZk(String path, T data, WriteHint hint) {
+    final byte[] serializedInfo = serialize(data);
+
     try {
-      final byte[] serializedInfo = objectMapper.writeValueAsBytes(data);
+      boolean create = hint == WriteHint.NEW;
+
+      for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS; attempt++) {
+        try {
+          if (create) {
+            curatorFramework.create().creatingParentsIfNeeded().forPath(path, serializedInfo);
+          } else {
+            curatorFramework.setData().forPath(path, serializedInfo);
+          }
+          return;
+        } catch (KeeperException.NodeExistsException nee) {
+          create = false;
+        } catch (KeeperException.NoNodeException nne) {
+          create = true;
+        }
+      }
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+
+    throw new IllegalStateException(String.format("Gave up writing %s after %d attempts, it kept being created and deleted concurrently", path, MAX_WRITE_ATTEMPTS));
+  }
+
+  // only writes if the node is still at expectedVersion, returns false if it has been changed or deleted since
+  protected <T> boolean writeToZkIfVersion(String path, T data, int expectedVersion) {
+    try {
+      curatorFramework.setData().withVersion(expectedVersion).forPath(path, serialize(data));
+      return true;
+    } catch (KeeperException.BadVersionException | KeeperException.NoNodeException e) {
+      return false;
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  // returns false if someone else created the node first
+  protected <T> boolean createInZkIfAbsent(String path, T data) {
+    try {
+      curatorFramework.create().creatingParentsIfNeeded().forPath(path, serialize(data));
+      return true;
+    } catch (KeeperException.NodeExistsException e) {
+      return false;
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  // Read-modify-write that doesn't lose concurrent updates: the function is handed the current value (absent if there's
+  // no node, or only an empty one) and returns the value to store, or absent to leave the node alone. It is applied
+  // again to the fresh value whenever someone else wrote in between, so it must not have side effects. Returns what was stored.
+  protected <T> Optional<T> compareAndSetInZk(String path, final Class<T> klass, Function<Optional<T>, Optional<T>> update) {
+    return compareAndSetInZk(path, new Function<byte[], T>() {
+      @Override
+      public T apply(byte[] data) {
+        return deserialize(data, klass);
+      }
+    }, update);
+  }
+
+  protected <T> Optional<T> compareAndSetInZk(String path, final TypeReference<T> typeReference, Function<Optional<T>, Optional<T>> update) {
+    return compareAndSetInZk(path, new Function<byte[], T>() {
+      @Override
+      public T apply(byte[] data) {
+        return deserialize(data, typeReference);
+      }
+    }, update);
+  }
 
-      final PathAndBytesable<?> builder;
+  private <T> Optional<T> compareAndSetInZk(String path, Function<byte[], T> deserializer, Function<Optional<T>, Optional<T>> update) {
+    for (int attempt = 0; attempt < MAX_COMPARE_AND_SET_ATTEMPTS; attempt++) {
+      final Stat stat = new Stat();
+      final Optional<byte[]> data = readRawFromZk(path, stat);
+      final Optional<T> current = data.isPresent() && data.get().length > 0 ? Optional.of(deserializer.apply(data.get())) : Optional.<T>absent();
+      final Optional<T> updated = update.apply(current);
 
-      if (curatorFramework.checkExists().forPath(path) != null) {
-        builder = curatorFramework.setData();
-      } else {
-        builder = curatorFramework.create().creatingParentsIfNeeded();
+      if (!updated.isPresent()) {
+        return updated;
       }
 
-      builder.forPath(path, serializedInfo);
+      final boolean written = data.isPresent() ? writeToZkIfVersion(path, updated.get(), stat.getVersion()) : createInZkIfAbsent(path, updated.get());
+
+      if (written) {
+        return updated;
+      }
+    }
+
+    throw new IllegalStateException(String.format("Gave up updating %s after %d attempts, it is changing too often", path, MAX_COMPARE_AND_SET_ATTEMPTS));
+  }
+
+  private Optional<byte[]> readRawFromZk(String path, Stat stat) {
+    try {
+      final byte[] data = curatorFramework.getData().storingStatIn(stat).forPath(path);
+      return Optional.of(data != null ? data : new byte[0]);
+    } catch (KeeperException.NoNodeException nne) {
+      return Optional.absent();
     } catch (Exception e) {
       throw Throwables.propagate(e);
     }
@@ -101,6 +222,24 @@ public abstract class AbstractDataStore {
     }
   }
 
+  protected <T> Optional<T> readFromZk(ZkReadCache readCache, String path, Class<T> klass) {
+    try {
+      final Optional<byte[]> data = readCache.getData(path);
+      return data.isPresent() ? Optional.of(deserialize(data.get(), klass)) : Optional.<T>absent();
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  protected <T> Optional<T> readFromZk(ZkReadCache readCache, String path, TypeReference<T> typeReference) {
+    try {
+      final Optional<byte[]> data = readCache.getData(path);
+      return data.isPresent() ? Optional.of(deserialize(data.get(), typeReference)) : Optional.<T>absent();
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
   protected <T> T deserialize(byte[] data, Class<T> klass) {
     try {
       return objectMapper.readValue(data, klass);
@@ -155,6 +294,14 @@ public abstract class AbstractDataStore {
     }
   }
 
+  protected List<String> getChildren(ZkReadCache readCache, String path) {
+    try {
+      return readCache.getChildren(path);
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
   protected List<String> getChildren(String path) {
     try {
       return curatorFramework.getChildren().forPath(path);
@@ -0,0 +1,256 @@
+package com.hubspot.baragon.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.utils.ZKPaths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.hubspot.baragon.BaragonDataModule;
+import com.hubspot.baragon.models.BaragonAgentMetadata;
+import com.hubspot.baragon.utils.ZkParallelFetcher;
+
+// Agent metadata of each load balancer group, as stored in the group's leader latch nodes. With the read cache enabled,
+// an existing group is backed by a PathChildrenCache from its first lookup on, which parses nodes as they come and go, so
+// lookups are served from memory once it has loaded. Unknown groups are answered as empty without being cached. Otherwise
+// every lookup reads the nodes of all requested groups in parallel.
+@Singleton
+public class BaragonAgentMetadataCache {
+  private static final Logger LOG = LoggerFactory.getLogger(BaragonAgentMetadataCache.class);
+
+  private final CuratorFramework curatorFramework;
+  private final ObjectMapper objectMapper;
+  private final ZkParallelFetcher zkFetcher;
+  private final boolean enabled;
+
+  private final ConcurrentMap<String, GroupAgents> groups = new ConcurrentHashMap<>();
+  private volatile boolean closed = false;
+
+  @Inject
+  public BaragonAgentMetadataCache(CuratorFramework curatorFramework,
+                                   ObjectMapper objectMapper,
+                                   ZkParallelFetcher zkFetcher,
+                                   @Named(BaragonDataModule.BARAGON_ZK_READ_CACHE_ENABLED) boolean enabled) {
+    this.curatorFramework = curatorFramework;
+    this.objectMapper = objectMapper;
+    this.zkFetcher = zkFetcher;
+    this.enabled = enabled;
+  }
+
+  public Collection<BaragonAgentMetadata> getAgentMetadata(String clusterName) {
+    final Optional<Collection<BaragonAgentMetadata>> cached = getCached(clusterName);
+
+    if (cached.isPresent()) {
+      return new ArrayList<>(cached.get());
+    }
+
+    return readAgentMetadata(Collections.singleton(clusterName));
+  }
+
+  public Set<BaragonAgentMetadata> getAgentMetadata(Collection<String> clusterNames) {
+    final Set<BaragonAgentMetadata> metadata = Sets.newHashSet();
+    final List<String> uncached = new ArrayList<>();
+
+    for (String clusterName : clusterNames) {
+      final Optional<Collection<BaragonAgentMetadata>> cached = getCached(clusterName);
+
+      if (cached.isPresent()) {
+        metadata.addAll(cached.get());
+      } else {
+        uncached.add(clusterName);
+      }
+    }
+
+    if (!uncached.isEmpty()) {
+      metadata.addAll(readAgentMetadata(uncached));
+    }
+
+    return metadata;
+  }
+
+  public void close() {
+    closed = true;
+
+    for (GroupAgents group : groups.values()) {
+      try {
+        Closeables.close(group.cache, true);
+      } catch (IOException e) {
+        // swallowed by Closeables
+      }
+    }
+
+    groups.clear();
+  }
+
+  private Optional<Collection<BaragonAgentMetadata>> getCached(String clusterName) {
+    if (!enabled || closed) {
+      return Optional.absent();
+    }
+
+    GroupAgents group = groups.get(clusterName);
+
+    if (group == null) {
+      final String hostsPath = String.format(BaragonLoadBalancerDatastore.LOAD_BALANCER_GROUP_HOSTS_FORMAT, clusterName);
+
+      // the PathChildrenCache would create the hosts node of an unknown group, which would then show up as a group of its own
+      try {
+        if (curatorFramework.checkExists().forPath(hostsPath) == null) {
+          return Optional.<Collection<BaragonAgentMetadata>>of(Collections.<BaragonAgentMetadata>emptyList());
+        }
+      } catch (Exception e) {
+        LOG.warn(String.format("Could not check agent hosts of %s", clusterName), e);
+        return Optional.absent();
+      }
+
+      final GroupAgents newGroup = new GroupAgents(hostsPath);
+      group = groups.putIfAbsent(clusterName, newGroup);
+
+      if (group == null) {
+        group = newGroup;
+
+        try {
+          newGroup.start();
+        } catch (Exception e) {
+          LOG.warn(String.format("Could not start agent cache for %s", clusterName), e);
+          groups.remove(clusterName, newGroup);
+          return Optional.absent();
+        }
+      }
+    }
+
+    // until the initial load is done, lookups read from zookeeper rather than wait for it
+    if (!group.isInitialized()) {
+      LOG.debug("Agent cache for {} isn't loaded yet, reading from zookeeper", clusterName);
+      return Optional.absent();
+    }
+
+    return Optional.<Collection<BaragonAgentMetadata>>of(group.agents.values());
+  }
+
+  private Collection<BaragonAgentMetadata> readAgentMetadata(Collection<String> clusterNames) {
+    final List<String> hostsPaths = new ArrayList<>(clusterNames.size());
+
+    for (String clusterName : clusterNames) {
+      hostsPaths.add(String.format(BaragonLoadBalancerDatastore.LOAD_BALANCER_GROUP_HOSTS_FORMAT, clusterName));
+    }
+
+    try {
+      // every group's hosts node has the same name, so child nodes are collected by full path instead of by group
+      final List<String> hostPaths = new ArrayList<>();
+
+      ZkParallelFetcher.throwFirstFailure(zkFetcher.streamChildrenInParallel(hostsPaths, new ZkParallelFetcher.ResultCallback<List<String>>() {
+        @Override
+        public void onResult(String path, List<String> children) {
+          for (String child : children) {
+            hostPaths.add(ZKPaths.makePath(path, child));
+          }
+        }
+      }));
+
+      if (hostPaths.isEmpty()) {
+        return new ArrayList<>();
+      }
+
+      final Map<String, BaragonAgentMetadata> metadata = zkFetcher.fetchDataByPathInParallel(hostPaths, new Function<byte[], BaragonAgentMetadata>() {
+        @Override
+        public BaragonAgentMetadata apply(byte[] data) {
+          return parse(data);
+        }
+      });
+
+      return new ArrayList<>(metadata.values());
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  // agents used to register their base uri as a plain string
+  private BaragonAgentMetadata parse(byte[] data) {
+    final String value = new String(data, Charsets.UTF_8);
+
+    if (value.startsWith("http://")) {
+      return BaragonAgentMetadata.fromString(value);
+    }
+
+    try {
+      return objectMapper.readValue(value, BaragonAgentMetadata.class);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private class GroupAgents implements PathChildrenCacheListener {
+    private final PathChildrenCache cache;
+    private final ConcurrentMap<String, BaragonAgentMetadata> agents = new ConcurrentHashMap<>();
+    private final CountDownLatch initialized = new CountDownLatch(1);
+
+    private GroupAgents(String hostsPath) {
+      this.cache = new PathChildrenCache(curatorFramework, hostsPath, true);
+    }
+
+    private void start() throws Exception {
+      // the initial children arrive as CHILD_ADDED events too, followed by INITIALIZED
+      cache.getListenable().addListener(this);
+      cache.start(PathChildrenCache.StartMode.POST_INITIALIZED_EVENT);
+    }
+
+    private boolean isInitialized() {
+      return initialized.getCount() == 0;
+    }
+
+    @Override
+    public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) {
+      switch (event.getType()) {
+        case CHILD_ADDED:
+        case CHILD_UPDATED:
+          update(event.getData());
+          break;
+        case CHILD_REMOVED:
+          agents.remove(event.getData().getPath());
+          break;
+        case INITIALIZED:
+          initialized.countDown();
+          break;
+        default:
+          break;
+      }
+    }
+
+    private void update(ChildData childData) {
+      if (childData.getData() == null) {
+        return;
+      }
+
+      try {
+        agents.put(childData.getPath(), parse(childData.getData()));
+      } catch (RuntimeException e) {
+        LOG.warn(String.format("Exception deserializing %s", childData.getPath()), e);
+        agents.remove(childData.getPath());
+      }
+    }
+  }
+}
@@ -2,24 +2,38 @@ package com.hubspot.baragon.data;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.utils.ZKPaths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.hubspot.baragon.models.AgentRequestId;
 import com.hubspot.baragon.models.AgentRequestType;
 import com.hubspot.baragon.models.AgentResponse;
 import com.hubspot.baragon.models.AgentResponseId;
+import com.hubspot.baragon.data.BaragonStateDatastore.BaragonDeserializer;
+import com.hubspot.baragon.utils.ZkParallelFetcher;
 
 @Singleton
 public class BaragonAgentResponseDatastore extends AbstractDataStore {
+  private static final Logger LOG = LoggerFactory.getLogger(BaragonAgentResponseDatastore.class);
+
   public static final String PENDING_REQUEST_FORMAT = "/request/%s/pendingRequests/%s";
 
   public static final String AGENT_REQUESTS_FORMAT = "/request/%s/agent";
@@ -27,9 +41,22 @@ public class BaragonAgentResponseDatastore extends AbstractDataStore {
   public static final String CREATE_AGENT_RESPONSE_FORMAT = AGENT_RESPONSES_FORMAT + "/%s-%s-";
   public static final String AGENT_RESPONSE_FORMAT = AGENT_RESPONSES_FORMAT + "/%s";
 
+  // latest response of every agent, keyed by request type and then base url
+  public static final String AGENT_RESPONSE_SUMMARY_FORMAT = "/request/%s/agentResponseSummary";
+
+  private static final TypeReference<Map<String, Map<String, AgentResponse>>> AGENT_RESPONSE_SUMMARY_TYPE = new TypeReference<Map<String, Map<String, AgentResponse>>>() {};
+  private static final int SUMMARY_LOCK_STRIPES = 64;
+
+  private final ZkParallelFetcher zkFetcher;
+
+  // responses to the same request mostly arrive at this instance together, taking turns here keeps them from
+  // failing each other's compare-and-set on the summary node
+  private final Striped<Lock> summaryLocks = Striped.lazyWeakLock(SUMMARY_LOCK_STRIPES);
+
   @Inject
-  public BaragonAgentResponseDatastore(CuratorFramework curatorFramework, ObjectMapper objectMapper) {
+  public BaragonAgentResponseDatastore(CuratorFramework curatorFramework, ObjectMapper objectMapper, ZkParallelFetcher zkFetcher) {
     super(curatorFramework, objectMapper);
+    this.zkFetcher = zkFetcher;
   }
 
   public AgentResponse addAgentResponse(String requestId, AgentRequestType requestType, String baseUrl, String url, Optional<Integer> statusCode, Optional<String> content, Optional<String> exception) {
@@ -39,10 +66,64 @@ public class BaragonAgentResponseDatastore extends AbstractDataStore {
     final AgentResponse agentResponse = new AgentResponse(url, attempt, statusCode, content, exception);
 
     writeToZk(path, agentResponse);
+    addToResponseSummary(requestId, requestType, baseUrl, agentResponse);
 
     return agentResponse;
   }
 
+  // Starts an empty summary for a new request. A summary is only ever updated, never created by a response, so one that
+  // exists is known to be complete. Requests without one (older ones, or after a failed update) are read the slow way.
+  public void createResponseSummary(String requestId) {
+    createInZkIfAbsent(String.format(AGENT_RESPONSE_SUMMARY_FORMAT, requestId), Collections.<String, Map<String, AgentResponse>>emptyMap());
+  }
+
+  private void addToResponseSummary(String requestId, final AgentRequestType requestType, final String baseUrl, final AgentResponse agentResponse) {
+    final String path = String.format(AGENT_RESPONSE_SUMMARY_FORMAT, requestId);
+    final Lock lock = summaryLocks.get(requestId);
+
+    lock.lock();
+    try {
+      compareAndSetInZk(path, AGENT_RESPONSE_SUMMARY_TYPE, new Function<Optional<Map<String, Map<String, AgentResponse>>>, Optional<Map<String, Map<String, AgentResponse>>>>() {
+        @Override
+        public Optional<Map<String, Map<String, AgentResponse>>> apply(Optional<Map<String, Map<String, AgentResponse>>> maybeSummary) {
+          if (!maybeSummary.isPresent()) {
+            return maybeSummary;
+          }
+
+          final Map<String, Map<String, AgentResponse>> summary = new HashMap<>(maybeSummary.get());
+          final Map<String, AgentResponse> responses = summary.containsKey(requestType.name()) ? new HashMap<>(summary.get(requestType.name())) : new HashMap<String, AgentResponse>();
+          final AgentResponse previous = responses.get(baseUrl);
+
+          // responses can be recorded out of order, keep the latest attempt
+          if (previous != null && previous.getAttempt() > agentResponse.getAttempt()) {
+            return Optional.absent();
+          }
+
+          responses.put(baseUrl, agentResponse);
+          summary.put(requestType.name(), responses);
+
+          return Optional.of(summary);
+        }
+      });
+    } catch (RuntimeException e) {
+      LOG.error(String.format("Failed to add response from %s to the summary of %s, dropping the summary", baseUrl, requestId), e);
+      deleteNode(path);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // keyed by base url, absent if the request has no summary
+  public Optional<Map<String, AgentResponse>> getLastAgentResponses(String requestId, AgentRequestType requestType) {
+    final Optional<Map<String, Map<String, AgentResponse>>> maybeSummary = readFromZk(String.format(AGENT_RESPONSE_SUMMARY_FORMAT, requestId), AGENT_RESPONSE_SUMMARY_TYPE);
+
+    if (!maybeSummary.isPresent()) {
+      return Optional.absent();
+    }
+
+    return Optional.of(Objects.firstNonNull(maybeSummary.get().get(requestType.name()), Collections.<String, AgentResponse>emptyMap()));
+  }
+
   public Collection<AgentRequestId> getAgentRequestIds(String requestId) {
     final Collection<String> nodes = getChildren(String.format(AGENT_REQUESTS_FORMAT, requestId));
 
@@ -61,16 +142,56 @@ public class BaragonAgentResponseDatastore extends AbstractDataStore {
 
   public void setPendingRequestStatus(String requestId, String baseUrl, boolean value) {
     if (value) {
-      writeToZk(String.format(PENDING_REQUEST_FORMAT, requestId, encodeUrl(baseUrl)), System.currentTimeMillis());
+      writeToZk(String.format(PENDING_REQUEST_FORMAT, requestId, encodeUrl(baseUrl)), System.currentTimeMillis(), WriteHint.NEW);
     } else {
       deleteNode(String.format(PENDING_REQUEST_FORMAT, requestId, encodeUrl(baseUrl)));
     }
   }
 
+  // writes all markers in one multi-op, currentlyPending must hold the agents whose marker node already exists
+  public void setPendingRequestStatuses(String requestId, Collection<String> baseUrls, Collection<String> currentlyPending) {
+    if (baseUrls.isEmpty()) {
+      return;
+    }
+
+    final Long now = System.currentTimeMillis();
+    final ZkTransaction transaction = startTransaction();
+
+    for (String baseUrl : baseUrls) {
+      transaction.write(String.format(PENDING_REQUEST_FORMAT, requestId, encodeUrl(baseUrl)), currentlyPending.contains(baseUrl), serialize(now));
+    }
+
+    try {
+      transaction.commit();
+    } catch (Exception e) {
+      // a late response may have removed a marker in the meantime, fall back to writing them one by one
+      LOG.warn(String.format("Failed to mark %d agents as pending for %s in one transaction (%s), retrying individually", baseUrls.size(), requestId, e));
+      for (String baseUrl : baseUrls) {
+        setPendingRequestStatus(requestId, baseUrl, true);
+      }
+    }
+  }
+
   public Optional<Long> getPendingRequest(String requestId, String baseUrl) {
     return readFromZk(String.format(PENDING_REQUEST_FORMAT, requestId, encodeUrl(baseUrl)), Long.class);
   }
 
+  // keyed by base url, agents without a pending request are left out
+  public Map<String, Long> getPendingRequests(String requestId, Collection<String> baseUrls) {
+    final Map<String, String> encodedToBaseUrl = encodeBaseUrls(baseUrls);
+    final Collection<String> paths = Lists.newArrayListWithCapacity(baseUrls.size());
+
+    for (String encodedUrl : encodedToBaseUrl.keySet()) {
+      paths.add(String.format(PENDING_REQUEST_FORMAT, requestId, encodedUrl));
+    }
+
+    try {
+      return decodeKeys(zkFetcher.fetchDataInParallel(paths, new BaragonDeserializer<>(objectMapper, Long.class)), encodedToBaseUrl);
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
   public Optional<AgentResponseId> getLastAgentResponseId(String requestId, AgentRequestType requestType, String baseUrl) {
     final List<String> agentResponseIds = getAgentResponseIds(requestId, requestType, baseUrl);
 
@@ -83,9 +204,95 @@ public class BaragonAgentResponseDatastore extends AbstractDataStore {
     return Optional.of(AgentResponseId.fromString(agentResponseIds.get(0)));
   }
 
+  // keyed by base url, agents that haven't responded yet are left out
+  public Map<String, AgentResponseId> getLastAgentResponseIds(String requestId, AgentRequestType requestType, Collection<String> baseUrls) {
+    final Map<String, String> nodeToBaseUrl = new HashMap<>(baseUrls.size());
+    final Collection<String> paths = Lists.newArrayListWithCapacity(baseUrls.size());
+
+    for (String baseUrl : baseUrls) {
+      final String path = String.format(AGENT_RESPONSES_FORMAT, requestId, requestType, encodeUrl(baseUrl));
+      nodeToBaseUrl.put(ZKPaths.getNodeFromPath(path), baseUrl);
+      paths.add(path);
+    }
+
+    final Map<String, Collection<String>> responseIds;
+
+    try {
+      responseIds = zkFetcher.fetchChildrenInParallel(paths);
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+
+    final Map<String, AgentResponseId> lastResponseIds = new HashMap<>(responseIds.size());
+
+    for (Map.Entry<String, Collection<String>> entry : responseIds.entrySet()) {
+      if (!entry.getValue().isEmpty()) {
+        lastResponseIds.put(nodeToBaseUrl.get(entry.getKey()), AgentResponseId.fromString(Collections.max(entry.getValue(), SEQUENCE_NODE_COMPARATOR_LOW_TO_HIGH)));
+      }
+    }
+
+    return lastResponseIds;
+  }
+
+  // keyed by base url, responses whose node is gone or still empty are left out
+  public Map<String, AgentResponse> getAgentResponses(String requestId, AgentRequestType requestType, Map<String, AgentResponseId> agentResponseIds) {
+    final Map<String, String> pathToBaseUrl = new HashMap<>(agentResponseIds.size());
+
+    for (Map.Entry<String, AgentResponseId> entry : agentResponseIds.entrySet()) {
+      pathToBaseUrl.put(String.format(AGENT_RESPONSE_FORMAT, requestId, requestType, encodeUrl(entry.getKey()), entry.getValue().getId()), entry.getKey());
+    }
+
+    final Map<String, AgentResponse> responses;
+
+    try {
+      responses = zkFetcher.fetchDataByPathInParallel(pathToBaseUrl.keySet(), new BaragonDeserializer<>(objectMapper, AgentResponse.class));
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+
+    final Map<String, AgentResponse> responsesByBaseUrl = new HashMap<>(responses.size());
+
+    for (Map.Entry<String, AgentResponse> entry : responses.entrySet()) {
+      if (entry.getValue() != null) {
+        responsesByBaseUrl.put(pathToBaseUrl.get(entry.getKey()), entry.getValue());
+      }
+    }
+
+    return responsesByBaseUrl;
+  }
+
+  private Map<String, String> encodeBaseUrls(Collection<String> baseUrls) {
+    final Map<String, String> encodedToBaseUrl = new HashMap<>(baseUrls.size());
+    for (String baseUrl : baseUrls) {
+      encodedToBaseUrl.put(encodeUrl(baseUrl), baseUrl);
+    }
+    return encodedToBaseUrl;
+  }
+
+  private static <T> Map<String, T> decodeKeys(Map<String, T> byEncodedUrl, Map<String, String> encodedToBaseUrl) {
+    final Map<String, T> byBaseUrl = new HashMap<>(byEncodedUrl.size());
+    for (Map.Entry<String, T> entry : byEncodedUrl.entrySet()) {
+      if (entry.getValue() != null) {
+        byBaseUrl.put(encodedToBaseUrl.get(entry.getKey()), entry.getValue());
+      }
+    }
+    return byBaseUrl;
+  }
+
   public Map<String, Collection<AgentResponse>> getLastResponses(String requestId) {
     final Map<String, Collection<AgentResponse>> responses = Maps.newHashMap();
 
+    final Optional<Map<String, Map<String, AgentResponse>>> maybeSummary = readFromZk(String.format(AGENT_RESPONSE_SUMMARY_FORMAT, requestId), AGENT_RESPONSE_SUMMARY_TYPE);
+
+    if (maybeSummary.isPresent()) {
+      for (Map.Entry<String, Map<String, AgentResponse>> entry : maybeSummary.get().entrySet()) {
+        if (!entry.getValue().isEmpty()) {
+          responses.put(entry.getKey(), Lists.newArrayList(entry.getValue().values()));
+        }
+      }
+      return responses;
+    }
+
     for (AgentRequestId agentRequestId : getAgentRequestIds(requestId)) {
       final Optional<AgentResponseId> maybeAgentResponseId = getLastAgentResponseId(requestId, agentRequestId.getType(), agentRequestId.getBaseUrl());
       if (maybeAgentResponseId.isPresent()) {
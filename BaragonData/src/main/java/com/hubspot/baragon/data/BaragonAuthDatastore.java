@@ -22,7 +22,7 @@ public class BaragonAuthDatastore extends AbstractDataStore {
   }
 
   public void addAuthKey(BaragonAuthKey authKey) {
-    writeToZk(String.format(AUTH_KEY_PATH, authKey.getValue()), authKey);
+    writeToZk(String.format(AUTH_KEY_PATH, authKey.getValue()), authKey, WriteHint.NEW);
   }
 
   public Optional<BaragonAuthKey> expireAuthKey(String key) {
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
@@ -13,7 +14,9 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.hubspot.baragon.exceptions.InvalidAgentMetadataStringException;
 import com.hubspot.baragon.models.BaragonAgentMetadata;
+import com.hubspot.baragon.data.BaragonStateDatastore.BaragonDeserializer;
 import com.hubspot.baragon.models.BaragonKnownAgentMetadata;
+import com.hubspot.baragon.utils.ZkParallelFetcher;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.recipes.leader.LeaderLatch;
@@ -21,8 +24,11 @@ import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 @Singleton
@@ -32,9 +38,12 @@ public class BaragonKnownAgentsDatastore extends AbstractDataStore {
   public static final String KNOWN_AGENTS_GROUP_HOSTS_FORMAT = "/load-balancer/%s/known-agents";
   public static final String KNOWN_AGENTS_GROUP_HOST_FORMAT = KNOWN_AGENTS_GROUP_HOSTS_FORMAT + "/%s";
 
+  private final ZkParallelFetcher zkFetcher;
+
   @Inject
-  public BaragonKnownAgentsDatastore(CuratorFramework curatorFramework, ObjectMapper objectMapper) {
+  public BaragonKnownAgentsDatastore(CuratorFramework curatorFramework, ObjectMapper objectMapper, ZkParallelFetcher zkFetcher) {
     super(curatorFramework, objectMapper);
+    this.zkFetcher = zkFetcher;
   }
 
   public Collection<BaragonKnownAgentMetadata> getKnownAgentsMetadata(String clusterName) {
@@ -44,13 +53,30 @@ public class BaragonKnownAgentsDatastore extends AbstractDataStore {
       return Collections.emptyList();
     }
 
-    final Collection<BaragonKnownAgentMetadata> metadata = Lists.newArrayListWithCapacity(nodes.size());
+    final Collection<String> paths = Lists.newArrayListWithCapacity(nodes.size());
 
     for (String node : nodes) {
-      metadata.addAll(readFromZk(String.format(KNOWN_AGENTS_GROUP_HOST_FORMAT, clusterName, node), BaragonKnownAgentMetadata.class).asSet());
+      paths.add(String.format(KNOWN_AGENTS_GROUP_HOST_FORMAT, clusterName, node));
+    }
+
+    try {
+      return new ArrayList<>(zkFetcher.fetchDataInParallel(paths, new BaragonDeserializer<>(objectMapper, BaragonKnownAgentMetadata.class)).values());
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  // agents without an instance id are left out
+  public Map<String, BaragonKnownAgentMetadata> getKnownAgentsByInstanceId(String clusterName) {
+    final Map<String, BaragonKnownAgentMetadata> agentsByInstanceId = new HashMap<>();
+
+    for (BaragonKnownAgentMetadata agent : getKnownAgentsMetadata(clusterName)) {
+      if (agent.getEc2().getInstanceId().isPresent()) {
+        agentsByInstanceId.put(agent.getEc2().getInstanceId().get(), agent);
+      }
     }
 
-    return metadata;
+    return agentsByInstanceId;
   }
 
   public Optional<BaragonKnownAgentMetadata> getKnownAgentMetadata(String clusterName, String agentId) {
@@ -65,12 +91,18 @@ public class BaragonKnownAgentsDatastore extends AbstractDataStore {
     deleteNode(String.format(KNOWN_AGENTS_GROUP_HOST_FORMAT, clusterName, agentId));
   }
 
-  public void updateKnownAgentLastSeenAt(String clusterName, String agentId, long time) {
-    Optional<BaragonKnownAgentMetadata> maybeAgent = getKnownAgentMetadata(clusterName, agentId);
-    if (maybeAgent.isPresent()) {
-      maybeAgent.get().setLastSeenAt(time);
-      writeToZk(String.format(KNOWN_AGENTS_GROUP_HOST_FORMAT, clusterName, maybeAgent.get().getAgentId()), maybeAgent.get());
-    } else {
+  public void updateKnownAgentLastSeenAt(String clusterName, String agentId, final long time) {
+    final Optional<BaragonKnownAgentMetadata> maybeAgent = compareAndSetInZk(String.format(KNOWN_AGENTS_GROUP_HOST_FORMAT, clusterName, agentId), BaragonKnownAgentMetadata.class, new Function<Optional<BaragonKnownAgentMetadata>, Optional<BaragonKnownAgentMetadata>>() {
+      @Override
+      public Optional<BaragonKnownAgentMetadata> apply(Optional<BaragonKnownAgentMetadata> maybeAgent) {
+        if (maybeAgent.isPresent()) {
+          maybeAgent.get().setLastSeenAt(time);
+        }
+        return maybeAgent;
+      }
+    });
+
+    if (!maybeAgent.isPresent()) {
       LOG.error("Could not fetch known agent metadata to update lastSeenAt time");
     }
   }
@@ -2,20 +2,18 @@ package com.hubspot.baragon.data;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
 import com.hubspot.baragon.models.BaragonGroup;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.recipes.leader.LeaderLatch;
-import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableSet;
@@ -24,6 +22,8 @@ import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.hubspot.baragon.models.BaragonAgentMetadata;
+import com.hubspot.baragon.utils.ZkParallelFetcher;
+import com.hubspot.baragon.utils.ZkReadCache;
 
 @Singleton
 public class BaragonLoadBalancerDatastore extends AbstractDataStore {
@@ -37,9 +37,21 @@ public class BaragonLoadBalancerDatastore extends AbstractDataStore {
   public static final String LOAD_BALANCER_BASE_PATHS_FORMAT = LOAD_BALANCER_GROUPS_FORMAT + "/%s/base-uris";
   public static final String LOAD_BALANCER_BASE_PATH_FORMAT = LOAD_BALANCER_BASE_PATHS_FORMAT + "/%s";
 
+  private final ZkReadCache readCache;
+  private final BaragonAgentMetadataCache agentMetadataCache;
+  private final ZkParallelFetcher zkFetcher;
+
   @Inject
-  public BaragonLoadBalancerDatastore(CuratorFramework curatorFramework, ObjectMapper objectMapper) {
+  public BaragonLoadBalancerDatastore(CuratorFramework curatorFramework, ObjectMapper objectMapper, ZkReadCache readCache, BaragonAgentMetadataCache agentMetadataCache, ZkParallelFetcher zkFetcher) {
     super(curatorFramework, objectMapper);
+    this.readCache = readCache;
+    this.agentMetadataCache = agentMetadataCache;
+    this.zkFetcher = zkFetcher;
+  }
+
+  @Override
+  public ZkTransaction startTransaction() {
+    return new ZkTransaction(curatorFramework, Optional.of(readCache));
   }
 
   public LeaderLatch createLeaderLatch(String clusterName, BaragonAgentMetadata agentMetadata) {
@@ -51,22 +63,33 @@ public class BaragonLoadBalancerDatastore extends AbstractDataStore {
   }
 
   public Collection<BaragonGroup> getLoadBalancerGroups() {
+    return getLoadBalancerGroupsByName().values();
+  }
+
+  // group nodes are also created empty as parents of their hosts and base paths, those are skipped
+  public Map<String, BaragonGroup> getLoadBalancerGroupsByName() {
     final Collection<String> nodes = getChildren(LOAD_BALANCER_GROUPS_FORMAT);
 
     if (nodes.isEmpty()) {
-      return Collections.emptyList();
+      return Collections.emptyMap();
     }
-    final Collection<BaragonGroup> groups = Lists.newArrayListWithCapacity(nodes.size());
+
+    final Collection<String> paths = Lists.newArrayListWithCapacity(nodes.size());
 
     for (String node : nodes) {
-      try {
-        groups.addAll(readFromZk(String.format(LOAD_BALANCER_GROUP_FORMAT, node), BaragonGroup.class).asSet());
-      } catch (Exception e) {
-        LOG.error(String.format("Could not fetch info for group %s due to error %s", node, e));
-      }
+      paths.add(String.format(LOAD_BALANCER_GROUP_FORMAT, node));
     }
 
-    return groups;
+    try {
+      return zkFetcher.fetchDataInParallel(paths, new Function<byte[], BaragonGroup>() {
+        @Override
+        public BaragonGroup apply(byte[] data) {
+          return data.length > 0 ? deserialize(data, BaragonGroup.class) : null;
+        }
+      });
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
   }
 
   public Optional<BaragonGroup> getLoadBalancerGroup(String name) {
@@ -80,40 +103,43 @@ public class BaragonLoadBalancerDatastore extends AbstractDataStore {
     }
   }
 
-  public BaragonGroup addSourceToGroup(String name, String source) {
-    Optional<BaragonGroup> maybeGroup = getLoadBalancerGroup(name);
-    BaragonGroup group;
-    if (maybeGroup.isPresent()) {
-      group = maybeGroup.get();
-      group.addSource(source);
-    } else {
-      group = new BaragonGroup(name, Optional.<String>absent(), Sets.newHashSet(source));
-    }
-    writeToZk(String.format(LOAD_BALANCER_GROUP_FORMAT, name), group);
-    return group;
-  }
-
-  public Optional<BaragonGroup> removeSourceFromGroup(String name, String source) {
-    Optional<BaragonGroup> maybeGroup = getLoadBalancerGroup(name);
-    if (maybeGroup.isPresent()) {
-      maybeGroup.get().removeSource(source);
-      writeToZk(String.format(LOAD_BALANCER_GROUP_FORMAT, name), maybeGroup.get());
-      return maybeGroup;
-    } else {
-      return Optional.absent();
-    }
+  // group updates can race with each other, e.g. two agents registering sources at once, so they're compare-and-set
+  public BaragonGroup addSourceToGroup(final String name, final String source) {
+    return compareAndSetInZk(String.format(LOAD_BALANCER_GROUP_FORMAT, name), BaragonGroup.class, new Function<Optional<BaragonGroup>, Optional<BaragonGroup>>() {
+      @Override
+      public Optional<BaragonGroup> apply(Optional<BaragonGroup> maybeGroup) {
+        if (maybeGroup.isPresent()) {
+          maybeGroup.get().addSource(source);
+          return maybeGroup;
+        }
+        return Optional.of(new BaragonGroup(name, Optional.<String>absent(), Sets.newHashSet(source)));
+      }
+    }).get();
   }
 
-  public void updateGroupInfo(String name, Optional<String> domain) {
-    Optional<BaragonGroup> maybeGroup = getLoadBalancerGroup(name);
-    BaragonGroup group;
-    if (maybeGroup.isPresent()) {
-      group = maybeGroup.get();
-      group.setDomain(domain);
-    } else {
-      group = new BaragonGroup(name, domain, Collections.<String>emptySet());
-    }
-    writeToZk(String.format(LOAD_BALANCER_GROUP_FORMAT, name), group);
+  public Optional<BaragonGroup> removeSourceFromGroup(String name, final String source) {
+    return compareAndSetInZk(String.format(LOAD_BALANCER_GROUP_FORMAT, name), BaragonGroup.class, new Function<Optional<BaragonGroup>, Optional<BaragonGroup>>() {
+      @Override
+      public Optional<BaragonGroup> apply(Optional<BaragonGroup> maybeGroup) {
+        if (maybeGroup.isPresent()) {
+          maybeGroup.get().removeSource(source);
+        }
+        return maybeGroup;
+      }
+    });
+  }
+
+  public void updateGroupInfo(final String name, final Optional<String> domain) {
+    compareAndSetInZk(String.format(LOAD_BALANCER_GROUP_FORMAT, name), BaragonGroup.class, new Function<Optional<BaragonGroup>, Optional<BaragonGroup>>() {
+      @Override
+      public Optional<BaragonGroup> apply(Optional<BaragonGroup> maybeGroup) {
+        if (maybeGroup.isPresent()) {
+          maybeGroup.get().setDomain(domain);
+          return maybeGroup;
+        }
+        return Optional.of(new BaragonGroup(name, domain, Collections.<String>emptySet()));
+      }
+    });
   }
 
   public Set<String> getLoadBalancerGroupNames() {
@@ -125,54 +151,31 @@ public class BaragonLoadBalancerDatastore extends AbstractDataStore {
   }
 
   public Collection<BaragonAgentMetadata> getAgentMetadata(String clusterName) {
-    final Collection<String> nodes = getChildren(String.format(LOAD_BALANCER_GROUP_HOSTS_FORMAT, clusterName));
-
-    if (nodes.isEmpty()) {
-      return Collections.emptyList();
-    }
-
-    final Collection<BaragonAgentMetadata> metadata = Lists.newArrayListWithCapacity(nodes.size());
-
-    for (String node : nodes) {
-      try {
-        final String value = new String(curatorFramework.getData().forPath(String.format(LOAD_BALANCER_GROUP_HOST_FORMAT, clusterName, node)), Charsets.UTF_8);
-        if (value.startsWith("http://")) {
-          metadata.add(BaragonAgentMetadata.fromString(value));
-        } else {
-          metadata.add(objectMapper.readValue(value, BaragonAgentMetadata.class));
-        }
-      } catch (KeeperException.NoNodeException nne) {
-        // uhh, didnt see that...
-      } catch (JsonParseException | JsonMappingException je) {
-        LOG.warn(String.format("Exception deserializing %s", String.format(LOAD_BALANCER_GROUP_HOST_FORMAT, clusterName, node)), je);
-      } catch (Exception e) {
-        throw Throwables.propagate(e);
-      }
-    }
-
-    return metadata;
+    return agentMetadataCache.getAgentMetadata(clusterName);
   }
 
   public Collection<BaragonAgentMetadata> getAgentMetadata(Collection<String> clusterNames) {
-    final Set<BaragonAgentMetadata> metadata = Sets.newHashSet();
-
-    for (String clusterName : clusterNames) {
-      metadata.addAll(getAgentMetadata(clusterName));
-    }
-
-    return metadata;
+    return agentMetadataCache.getAgentMetadata(clusterNames);
   }
 
   public Optional<String> getBasePathServiceId(String loadBalancerGroup, String basePath) {
-    return readFromZk(String.format(LOAD_BALANCER_BASE_PATH_FORMAT, loadBalancerGroup, encodeUrl(basePath)), String.class);
+    return readFromZk(readCache, String.format(LOAD_BALANCER_BASE_PATH_FORMAT, loadBalancerGroup, encodeUrl(basePath)), String.class);
   }
 
   public void clearBasePath(String loadBalancerGroup, String basePath) {
-    deleteNode(String.format(LOAD_BALANCER_BASE_PATH_FORMAT, loadBalancerGroup, encodeUrl(basePath)));
+    final String path = String.format(LOAD_BALANCER_BASE_PATH_FORMAT, loadBalancerGroup, encodeUrl(basePath));
+    deleteNode(path);
+    readCache.invalidate(path);
+  }
+
+  public void clearBasePath(ZkTransaction transaction, String loadBalancerGroup, String basePath) {
+    deleteNode(transaction, String.format(LOAD_BALANCER_BASE_PATH_FORMAT, loadBalancerGroup, encodeUrl(basePath)));
   }
 
   public void setBasePathServiceId(String loadBalancerGroup, String basePath, String serviceId) {
-    writeToZk(String.format(LOAD_BALANCER_BASE_PATH_FORMAT, loadBalancerGroup, encodeUrl(basePath)), serviceId);
+    final String path = String.format(LOAD_BALANCER_BASE_PATH_FORMAT, loadBalancerGroup, encodeUrl(basePath));
+    writeToZk(path, serviceId);
+    readCache.invalidate(path);
   }
 
   public Collection<String> getBasePaths(String loadBalancerGroup) {
@@ -1,18 +1,30 @@
 package com.hubspot.baragon.data;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.hubspot.baragon.data.BaragonStateDatastore.BaragonDeserializer;
 import com.hubspot.baragon.models.BaragonRequest;
+import com.hubspot.baragon.models.BaragonResponse;
 import com.hubspot.baragon.models.InternalRequestStates;
 import com.hubspot.baragon.models.QueuedRequestId;
+import com.hubspot.baragon.utils.ZkParallelFetcher;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
 import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Singleton
 public class BaragonRequestDatastore extends AbstractDataStore {
@@ -21,26 +33,81 @@ public class BaragonRequestDatastore extends AbstractDataStore {
   public static final String REQUEST_STATE_FORMAT = REQUEST_FORMAT + "/status";
   public static final String REQUEST_MESSAGE_FORMAT = REQUEST_FORMAT + "/message";
 
+  // a request that other requests were coalesced into keeps what was originally submitted next to the merged request
+  public static final String REQUEST_ORIGINAL_FORMAT = REQUEST_FORMAT + "/original";
+  public static final String REQUEST_COALESCED_FORMAT = REQUEST_FORMAT + "/coalesced";
+  public static final String REQUEST_COALESCED_INTO_FORMAT = REQUEST_FORMAT + "/coalescedInto";
+
+  // what's left of a request once its history has been purged
+  public static final String ARCHIVED_RESPONSES_FORMAT = "/request-archive";
+  public static final String ARCHIVED_RESPONSE_FORMAT = ARCHIVED_RESPONSES_FORMAT + "/%s";
+
   public static final String REQUEST_QUEUE_FORMAT = "/queue";
   public static final String REQUEST_ENQUEUE_FORMAT = REQUEST_QUEUE_FORMAT + "/%s|%s|";
   public static final String REQUEST_QUEUE_ITEM_FORMAT = REQUEST_QUEUE_FORMAT + "/%s";
 
+  private static final TypeReference<List<QueuedRequestId>> QUEUED_REQUEST_IDS = new TypeReference<List<QueuedRequestId>>() {};
+
+  private final ZkParallelFetcher zkFetcher;
+
   @Inject
-  public BaragonRequestDatastore(CuratorFramework curatorFramework, ObjectMapper objectMapper) {
+  public BaragonRequestDatastore(CuratorFramework curatorFramework, ObjectMapper objectMapper, ZkParallelFetcher zkFetcher) {
     super(curatorFramework, objectMapper);
+    this.zkFetcher = zkFetcher;
   }
 
   //
   // REQUEST DATA
   //
   public void addRequest(BaragonRequest request) {
-    writeToZk(String.format(REQUEST_FORMAT, request.getLoadBalancerRequestId()), request);
+    writeToZk(String.format(REQUEST_FORMAT, request.getLoadBalancerRequestId()), request, WriteHint.NEW);
   }
 
   public Optional<BaragonRequest> getRequest(String requestId) {
     return readFromZk(String.format(REQUEST_FORMAT, requestId), BaragonRequest.class);
   }
 
+  public List<String> getRequestIds() {
+    return getChildren(REQUESTS_FORMAT);
+  }
+
+  // replaces the stored request with one that has other requests merged into it, the first version is kept as the original
+  public void setCoalescedRequest(BaragonRequest original, BaragonRequest merged, List<QueuedRequestId> coalesced) {
+    createInZkIfAbsent(String.format(REQUEST_ORIGINAL_FORMAT, original.getLoadBalancerRequestId()), original);
+    writeToZk(String.format(REQUEST_FORMAT, merged.getLoadBalancerRequestId()), merged);
+    writeToZk(String.format(REQUEST_COALESCED_FORMAT, merged.getLoadBalancerRequestId()), coalesced);
+  }
+
+  // the request as it was submitted, which differs from getRequest for requests that others were coalesced into
+  public Optional<BaragonRequest> getOriginalRequest(String requestId) {
+    final Optional<BaragonRequest> maybeOriginal = readFromZk(String.format(REQUEST_ORIGINAL_FORMAT, requestId), BaragonRequest.class);
+
+    return maybeOriginal.isPresent() ? maybeOriginal : getRequest(requestId);
+  }
+
+  public List<QueuedRequestId> getCoalescedRequestIds(String requestId) {
+    return readFromZk(String.format(REQUEST_COALESCED_FORMAT, requestId), QUEUED_REQUEST_IDS).or(Collections.<QueuedRequestId>emptyList());
+  }
+
+  public void setCoalescedInto(String requestId, String intoRequestId) {
+    writeToZk(String.format(REQUEST_COALESCED_INTO_FORMAT, requestId), intoRequestId);
+  }
+
+  public Optional<String> getCoalescedInto(String requestId) {
+    return readFromZk(String.format(REQUEST_COALESCED_INTO_FORMAT, requestId), String.class);
+  }
+
+  // removes the request along with its state, message and agent responses
+  public void deleteRequestHistory(String requestId) {
+    try {
+      curatorFramework.delete().deletingChildrenIfNeeded().forPath(String.format(REQUEST_FORMAT, requestId));
+    } catch (KeeperException.NoNodeException nne) {
+      // already gone
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
   public Optional<BaragonRequest> deleteRequest(String requestId) {
     final Optional<BaragonRequest> maybeRequest = getRequest(requestId);
 
@@ -58,10 +125,60 @@ public class BaragonRequestDatastore extends AbstractDataStore {
     return readFromZk(String.format(REQUEST_STATE_FORMAT, requestId), InternalRequestStates.class);
   }
 
+  // keyed by request id, requests without a state are left out
+  public Map<String, InternalRequestStates> getRequestStates(Collection<String> requestIds) {
+    final Map<String, String> pathToRequestId = new HashMap<>(requestIds.size());
+
+    for (String requestId : requestIds) {
+      pathToRequestId.put(String.format(REQUEST_STATE_FORMAT, requestId), requestId);
+    }
+
+    final Map<String, InternalRequestStates> statesByPath;
+
+    try {
+      statesByPath = zkFetcher.fetchDataByPathInParallel(pathToRequestId.keySet(), new BaragonDeserializer<>(objectMapper, InternalRequestStates.class));
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+
+    final Map<String, InternalRequestStates> states = new HashMap<>(statesByPath.size());
+
+    for (Map.Entry<String, InternalRequestStates> entry : statesByPath.entrySet()) {
+      states.put(pathToRequestId.get(entry.getKey()), entry.getValue());
+    }
+
+    return states;
+  }
+
+  // when each request's state was last changed, keyed by request id
+  public Map<String, Long> getRequestStateUpdatedAt(Collection<String> requestIds) {
+    final Map<String, String> pathToRequestId = new HashMap<>(requestIds.size());
+
+    for (String requestId : requestIds) {
+      pathToRequestId.put(String.format(REQUEST_STATE_FORMAT, requestId), requestId);
+    }
+
+    return getModifiedAt(pathToRequestId);
+  }
+
   public void setRequestState(String requestId, InternalRequestStates state) {
     writeToZk(String.format(REQUEST_STATE_FORMAT, requestId), state);
   }
 
+  // for a request that was just added, whose state node doesn't exist yet
+  public void addRequestState(String requestId, InternalRequestStates state) {
+    writeToZk(String.format(REQUEST_STATE_FORMAT, requestId), state, WriteHint.NEW);
+  }
+
+  // one-shot watch, fires on the next change (or deletion) of the request's state node
+  public boolean watchRequestState(String requestId, Watcher watcher) {
+    try {
+      return curatorFramework.checkExists().usingWatcher(watcher).forPath(String.format(REQUEST_STATE_FORMAT, requestId)) != null;
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
   // REQUEST MESSAGE
   public Optional<String> getRequestMessage(String requestId) {
     return readFromZk(String.format(REQUEST_MESSAGE_FORMAT, requestId), String.class);
@@ -71,6 +188,57 @@ public class BaragonRequestDatastore extends AbstractDataStore {
     writeToZk(String.format(REQUEST_MESSAGE_FORMAT, requestId), message);
   }
 
+  public void addRequestMessage(String requestId, String message) {
+    writeToZk(String.format(REQUEST_MESSAGE_FORMAT, requestId), message, WriteHint.NEW);
+  }
+
+  //
+  // ARCHIVED RESPONSES
+  //
+  public void archiveResponse(BaragonResponse response) {
+    writeToZk(String.format(ARCHIVED_RESPONSE_FORMAT, response.getLoadBalancerRequestId()), response, WriteHint.NEW);
+  }
+
+  public Optional<BaragonResponse> getArchivedResponse(String requestId) {
+    return readFromZk(String.format(ARCHIVED_RESPONSE_FORMAT, requestId), BaragonResponse.class);
+  }
+
+  public List<String> getArchivedResponseIds() {
+    return getChildren(ARCHIVED_RESPONSES_FORMAT);
+  }
+
+  // when each response was archived, keyed by request id
+  public Map<String, Long> getArchivedAt(Collection<String> requestIds) {
+    final Map<String, String> pathToRequestId = new HashMap<>(requestIds.size());
+
+    for (String requestId : requestIds) {
+      pathToRequestId.put(String.format(ARCHIVED_RESPONSE_FORMAT, requestId), requestId);
+    }
+
+    return getModifiedAt(pathToRequestId);
+  }
+
+  public void deleteArchivedResponse(String requestId) {
+    deleteNode(String.format(ARCHIVED_RESPONSE_FORMAT, requestId));
+  }
+
+  private Map<String, Long> getModifiedAt(final Map<String, String> pathToRequestId) {
+    final Map<String, Long> modifiedAt = new HashMap<>(pathToRequestId.size());
+
+    try {
+      ZkParallelFetcher.throwFirstFailure(zkFetcher.streamStatInParallel(pathToRequestId.keySet(), new ZkParallelFetcher.ResultCallback<Stat>() {
+        @Override
+        public void onResult(String path, Stat stat) {
+          modifiedAt.put(pathToRequestId.get(path), stat.getMtime());
+        }
+      }));
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+
+    return modifiedAt;
+  }
+
   //
   // REQUEST QUEUING
   //
@@ -94,6 +262,10 @@ public class BaragonRequestDatastore extends AbstractDataStore {
     return queuedRequestIds;
   }
 
+  public PathChildrenCache createQueuePathCache() {
+    return new PathChildrenCache(curatorFramework, REQUEST_QUEUE_FORMAT, false);
+  }
+
   public int getQueuedRequestCount() {
     return getChildren(REQUEST_QUEUE_FORMAT).size();
   }
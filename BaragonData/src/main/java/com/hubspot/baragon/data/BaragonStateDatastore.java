@@ -1,12 +1,18 @@
 package com.hubspot.baragon.data;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.utils.ZKPaths;
@@ -26,10 +32,13 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.hubspot.baragon.models.BaragonGlobalStateManifest;
 import com.hubspot.baragon.models.BaragonService;
 import com.hubspot.baragon.models.BaragonServiceState;
+import com.hubspot.baragon.models.BaragonStateFormat;
 import com.hubspot.baragon.models.UpstreamInfo;
 import com.hubspot.baragon.utils.ZkParallelFetcher;
+import com.hubspot.baragon.utils.ZkReadCache;
 
 @Singleton
 public class BaragonStateDatastore extends AbstractDataStore {
@@ -39,34 +48,101 @@ public class BaragonStateDatastore extends AbstractDataStore {
   public static final String SERVICE_FORMAT = SERVICES_FORMAT + "/%s";
   public static final String UPSTREAM_FORMAT = SERVICE_FORMAT + "/%s";
 
+  private static final int MAX_GLOBAL_STATE_READ_ATTEMPTS = 3;
+
   private final ZkParallelFetcher zkFetcher;
+  private final ZkReadCache readCache;
+
+  // what this instance last wrote to the global state node, used to patch it without reading it back
+  private Map<String, BaragonServiceState> lastWrittenState = null;
+  private int lastWrittenStateVersion = -1;
+  private Optional<Long> lastWrittenGeneration = Optional.absent();
 
   @Inject
   public BaragonStateDatastore(CuratorFramework curatorFramework,
                                ObjectMapper objectMapper,
-                               ZkParallelFetcher zkFetcher) {
+                               ZkParallelFetcher zkFetcher,
+                               ZkReadCache readCache) {
     super(curatorFramework, objectMapper);
     this.zkFetcher = zkFetcher;
+    this.readCache = readCache;
+  }
+
+  @Override
+  public ZkTransaction startTransaction() {
+    return new ZkTransaction(curatorFramework, Optional.of(readCache));
   }
 
   public Collection<String> getServices() {
-    return getChildren(SERVICES_FORMAT);
+    return getChildren(readCache, SERVICES_FORMAT);
   }
 
   public void addService(BaragonService service) {
-    writeToZk(String.format(SERVICE_FORMAT, service.getServiceId()), service);
+    final String path = String.format(SERVICE_FORMAT, service.getServiceId());
+    writeToZk(path, service);
+    readCache.invalidate(path);
   }
 
   public Optional<BaragonService> getService(String serviceId) {
-    return readFromZk(String.format(SERVICE_FORMAT, serviceId), BaragonService.class);
+    return readFromZk(readCache, String.format(SERVICE_FORMAT, serviceId), BaragonService.class);
   }
 
   public void removeService(String serviceId) {
     for (String upstream : getUpstreamNodes(serviceId)) {
-      deleteNode(String.format(UPSTREAM_FORMAT, serviceId, upstream));
+      deleteUpstreamNode(serviceId, upstream);
+    }
+
+    final String path = String.format(SERVICE_FORMAT, serviceId);
+    deleteNode(path);
+    readCache.invalidate(path);
+  }
+
+  public void addService(ZkTransaction transaction, BaragonService service) {
+    writeToZk(transaction, String.format(SERVICE_FORMAT, service.getServiceId()), service);
+  }
+
+  public void removeService(ZkTransaction transaction, String serviceId) {
+    final String servicePath = String.format(SERVICE_FORMAT, serviceId);
+
+    for (String upstream : getUpstreamNodes(serviceId)) {
+      transaction.delete(String.format(UPSTREAM_FORMAT, serviceId, upstream), true);
     }
 
-    deleteNode(String.format(SERVICE_FORMAT, serviceId));
+    deleteNode(transaction, servicePath);
+  }
+
+  // stages the upstream changes for a service, returns true if the service will have no upstreams left once the transaction commits
+  public boolean updateUpstreams(ZkTransaction transaction, String serviceId, Collection<UpstreamInfo> replaceUpstreams, Collection<UpstreamInfo> removeUpstreams, Collection<UpstreamInfo> addUpstreams) {
+    final Set<String> upstreamNodes = new HashSet<>(getUpstreamNodes(serviceId));
+
+    if (!replaceUpstreams.isEmpty()) {
+      for (String upstreamNode : upstreamNodes) {
+        transaction.delete(String.format(UPSTREAM_FORMAT, serviceId, upstreamNode), true);
+      }
+      addUpstreams = replaceUpstreams;
+    } else {
+      for (UpstreamInfo upstreamInfo : removeUpstreams) {
+        final String upstreamNode = sanitizeNodeName(upstreamInfo.getUpstream());
+        transaction.delete(String.format(UPSTREAM_FORMAT, serviceId, upstreamNode), upstreamNodes.contains(upstreamNode));
+      }
+    }
+
+    for (UpstreamInfo upstreamInfo : addUpstreams) {
+      final String upstreamNode = sanitizeNodeName(upstreamInfo.getUpstream());
+      transaction.write(String.format(UPSTREAM_FORMAT, serviceId, upstreamNode), upstreamNodes.contains(upstreamNode), serialize(upstreamInfo));
+    }
+
+    if (!addUpstreams.isEmpty()) {
+      return false;
+    }
+
+    for (String upstreamNode : upstreamNodes) {
+      if (transaction.willExist(String.format(UPSTREAM_FORMAT, serviceId, upstreamNode), true)) {
+        return false;
+      }
+    }
+
+    return true;
   }
 
   private Collection<String> getUpstreamNodes(String serviceId) {
@@ -74,54 +150,253 @@ public class BaragonStateDatastore extends AbstractDataStore {
   }
 
   public Map<String, UpstreamInfo> getUpstreamsMap(String serviceId) throws Exception {
-    final Collection<String> upstreamNodes = getUpstreamNodes(serviceId);
+    final Collection<String> upstreamNodes = getChildren(readCache, String.format(SERVICE_FORMAT, serviceId));
     final Collection<String> upstreamPaths = new ArrayList<>(upstreamNodes.size());
     for (String upstreamNode : upstreamNodes) {
       upstreamPaths.add(String.format(UPSTREAM_FORMAT, serviceId, upstreamNode));
     }
 
-    return Maps.uniqueIndex(zkFetcher.fetchDataInParallel(upstreamPaths, new BaragonDeserializer<>(objectMapper, UpstreamInfo.class)).values(), new UpstreamKeyFunction());
+    return Maps.uniqueIndex(readCache.getDataInParallel(upstreamPaths, new BaragonDeserializer<>(objectMapper, UpstreamInfo.class)).values(), new UpstreamKeyFunction());
   }
 
   public void removeUpstreams(String serviceId, Collection<UpstreamInfo> upstreams) {
     for (UpstreamInfo upstreamInfo : upstreams) {
-      deleteNode(String.format(UPSTREAM_FORMAT, serviceId, sanitizeNodeName(upstreamInfo.getUpstream())));
+      deleteUpstreamNode(serviceId, sanitizeNodeName(upstreamInfo.getUpstream()));
     }
   }
 
   public void addUpstreams(String serviceId, Collection<UpstreamInfo> upstreams) {
     for (UpstreamInfo upstreamInfo : upstreams) {
-      writeToZk(String.format(UPSTREAM_FORMAT, serviceId, sanitizeNodeName(upstreamInfo.getUpstream())), upstreamInfo);
+      final String path = String.format(UPSTREAM_FORMAT, serviceId, sanitizeNodeName(upstreamInfo.getUpstream()));
+      writeToZk(path, upstreamInfo, WriteHint.NEW);
+      readCache.invalidate(path);
     }
   }
 
   public void setUpstreams(String serviceId, Collection<UpstreamInfo> upstreams) throws Exception {
-    for (UpstreamInfo upstreamInfo : getUpstreamsMap(serviceId).values()) {
-      deleteNode(String.format(UPSTREAM_FORMAT, serviceId, sanitizeNodeName(upstreamInfo.getUpstream())));
-    }
-    for (UpstreamInfo upstreamInfo : upstreams) {
-      writeToZk(String.format(UPSTREAM_FORMAT, serviceId, sanitizeNodeName(upstreamInfo.getUpstream())), upstreamInfo);
+    for (String upstreamNode : getUpstreamNodes(serviceId)) {
+      deleteUpstreamNode(serviceId, upstreamNode);
     }
+    addUpstreams(serviceId, upstreams);
+  }
+
+  private void deleteUpstreamNode(String serviceId, String upstreamNode) {
+    final String path = String.format(UPSTREAM_FORMAT, serviceId, upstreamNode);
+    deleteNode(path);
+    readCache.invalidate(path);
   }
 
   public void updateStateNode() {
+    updateStateNode(0, BaragonStateFormat.JSON);
+  }
+
+  // rebuilds the global state from every service, chunking it if it's bigger than maxChunkBytes (0 to never chunk)
+  public synchronized void updateStateNode(int maxChunkBytes, BaragonStateFormat format) {
     try {
       LOG.info("Starting state node update");
-      writeToZk(SERVICES_FORMAT, computeAllServiceStates());
+      final Map<String, BaragonServiceState> serviceStates = new LinkedHashMap<>();
+      for (BaragonServiceState serviceState : computeAllServiceStates()) {
+        serviceStates.put(serviceState.getService().getServiceId(), serviceState);
+      }
+      writeGlobalState(serviceStates, Optional.<Integer>absent(), maxChunkBytes, format);
+      LOG.info("Finished state node update");
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  // patches only the given services into the current global state, falls back to a full rebuild if that state can't be used
+  public synchronized void updateStateNode(Collection<String> changedServiceIds, int maxChunkBytes, BaragonStateFormat format) {
+    try {
+      final Stat stat = curatorFramework.checkExists().forPath(SERVICES_FORMAT);
+
+      Map<String, BaragonServiceState> serviceStates = null;
+
+      if (stat != null && lastWrittenState != null && lastWrittenStateVersion == stat.getVersion()) {
+        serviceStates = new LinkedHashMap<>(lastWrittenState);
+      } else if (stat != null) {
+        final Stat dataStat = new Stat();
+        final Optional<Collection<BaragonServiceState>> maybeCurrentState = readGlobalState(curatorFramework.getData().storingStatIn(dataStat).forPath(SERVICES_FORMAT), false);
+
+        if (maybeCurrentState.isPresent()) {
+          serviceStates = new LinkedHashMap<>();
+          for (BaragonServiceState serviceState : maybeCurrentState.get()) {
+            serviceStates.put(serviceState.getService().getServiceId(), serviceState);
+          }
+          stat.setVersion(dataStat.getVersion());
+        }
+      }
+
+      if (serviceStates == null) {
+        LOG.info("No usable global state, rebuilding it from scratch");
+        updateStateNode(maxChunkBytes, format);
+        return;
+      }
+
+      LOG.info("Starting state node update for {}", changedServiceIds);
+
+      for (String serviceId : changedServiceIds) {
+        final Optional<BaragonService> maybeService = readFromZk(String.format(SERVICE_FORMAT, serviceId), BaragonService.class);
+
+        if (maybeService.isPresent()) {
+          final Collection<String> upstreamPaths = new ArrayList<>();
+          for (String upstreamNode : getUpstreamNodes(serviceId)) {
+            upstreamPaths.add(String.format(UPSTREAM_FORMAT, serviceId, upstreamNode));
+          }
+          final Collection<UpstreamInfo> upstreams = zkFetcher.fetchDataInParallel(upstreamPaths, new BaragonDeserializer<>(objectMapper, UpstreamInfo.class)).values();
+
+          serviceStates.put(serviceId, new BaragonServiceState(maybeService.get(), new ArrayList<>(upstreams)));
+        } else {
+          serviceStates.remove(serviceId);
+        }
+      }
+
+      writeGlobalState(serviceStates, Optional.of(stat.getVersion()), maxChunkBytes, format);
       LOG.info("Finished state node update");
+    } catch (KeeperException.BadVersionException bve) {
+      LOG.warn("Global state changed while it was being patched, rebuilding it from scratch");
+      updateStateNode(maxChunkBytes, format);
     } catch (Exception e) {
       throw Throwables.propagate(e);
     }
   }
 
+  private void writeGlobalState(Map<String, BaragonServiceState> serviceStates, Optional<Integer> expectedVersion, int maxChunkBytes, BaragonStateFormat format) throws Exception {
+    final byte[] serializedState = format.encode(objectMapper.writeValueAsBytes(serviceStates.values()));
+
+    final byte[] stateNodeData;
+    Optional<Long> generation = Optional.absent();
+
+    if (maxChunkBytes <= 0 || serializedState.length <= maxChunkBytes) {
+      stateNodeData = serializedState;
+    } else {
+      generation = Optional.of(writeStateChunks(serializedState, maxChunkBytes));
+      stateNodeData = objectMapper.writeValueAsBytes(new BaragonGlobalStateManifest(generation.get(), (serializedState.length + maxChunkBytes - 1) / maxChunkBytes, serializedState.length));
+    }
+
+    final Stat stat;
+
+    if (expectedVersion.isPresent()) {
+      stat = curatorFramework.setData().withVersion(expectedVersion.get()).forPath(SERVICES_FORMAT, stateNodeData);
+    } else if (curatorFramework.checkExists().forPath(SERVICES_FORMAT) != null) {
+      stat = curatorFramework.setData().forPath(SERVICES_FORMAT, stateNodeData);
+    } else {
+      curatorFramework.create().creatingParentsIfNeeded().forPath(SERVICES_FORMAT, stateNodeData);
+      stat = curatorFramework.checkExists().forPath(SERVICES_FORMAT);
+    }
+
+    readCache.invalidate(SERVICES_FORMAT);
+
+    lastWrittenState = new LinkedHashMap<>(serviceStates);
+    lastWrittenStateVersion = stat.getVersion();
+
+    deleteOldStateChunks(generation);
+  }
+
+  private long writeStateChunks(byte[] serializedState, int maxChunkBytes) throws Exception {
+    long generation = System.currentTimeMillis();
+    while (nodeExists(String.format(BaragonGlobalStateManifest.STATE_CHUNK_GENERATION_FORMAT, generation))) {
+      generation++;
+    }
+
+    for (int offset = 0, index = 0; offset < serializedState.length; offset += maxChunkBytes, index++) {
+      final byte[] chunk = Arrays.copyOfRange(serializedState, offset, Math.min(serializedState.length, offset + maxChunkBytes));
+      curatorFramework.create().creatingParentsIfNeeded().forPath(String.format(BaragonGlobalStateManifest.STATE_CHUNK_FORMAT, generation, index), chunk);
+    }
+
+    return generation;
+  }
+
+  // keeps the current generation and the one before it around, so readers that just fetched the old manifest can finish
+  private void deleteOldStateChunks(Optional<Long> currentGeneration) {
+    final Set<String> keep = new HashSet<>();
+    if (currentGeneration.isPresent()) {
+      keep.add(Long.toString(currentGeneration.get()));
+    }
+    if (lastWrittenGeneration.isPresent()) {
+      keep.add(Long.toString(lastWrittenGeneration.get()));
+    }
+
+    for (String generation : getChildren(BaragonGlobalStateManifest.STATE_CHUNKS_PATH)) {
+      if (!keep.contains(generation)) {
+        try {
+          curatorFramework.delete().deletingChildrenIfNeeded().forPath(String.format(BaragonGlobalStateManifest.STATE_CHUNK_GENERATION_FORMAT, generation));
+        } catch (Exception e) {
+          LOG.warn(String.format("Failed to delete state chunks for generation %s", generation), e);
+        }
+      }
+    }
+
+    lastWrittenGeneration = currentGeneration;
+  }
+
   public Collection<BaragonServiceState> getGlobalState() {
-    return readFromZk(SERVICES_FORMAT, BARAGON_SERVICE_STATE_COLLECTION).or(Collections.<BaragonServiceState>emptyList());
+    try {
+      for (int attempt = 0; attempt < MAX_GLOBAL_STATE_READ_ATTEMPTS; attempt++) {
+        final Optional<byte[]> data = attempt == 0 ? readCache.getData(SERVICES_FORMAT) : readGlobalStateData();
+
+        if (!data.isPresent()) {
+          return Collections.emptyList();
+        }
+
+        final Optional<Collection<BaragonServiceState>> maybeState = readGlobalState(data.get(), true);
+
+        if (maybeState.isPresent()) {
+          return maybeState.get();
+        }
+
+        // chunks were replaced by a newer generation while we were reading, try again with the new manifest
+      }
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+
+    throw new IllegalStateException(String.format("Could not read a consistent global state after %s attempts", MAX_GLOBAL_STATE_READ_ATTEMPTS));
+  }
+
+  private Optional<byte[]> readGlobalStateData() throws Exception {
+    try {
+      return Optional.of(curatorFramework.getData().forPath(SERVICES_FORMAT));
+    } catch (KeeperException.NoNodeException nne) {
+      return Optional.absent();
+    }
+  }
+
+  // absent if the state is chunked and a chunk has gone missing, or if it is empty and emptyIsValid is false
+  private Optional<Collection<BaragonServiceState>> readGlobalState(byte[] data, boolean emptyIsValid) throws Exception {
+    if (data == null || data.length == 0) {
+      return emptyIsValid ? Optional.<Collection<BaragonServiceState>>of(Collections.<BaragonServiceState>emptyList()) : Optional.<Collection<BaragonServiceState>>absent();
+    }
+
+    if (!BaragonGlobalStateManifest.isManifest(data)) {
+      return Optional.of(deserialize(BaragonStateFormat.decode(data), BARAGON_SERVICE_STATE_COLLECTION));
+    }
+
+    final BaragonGlobalStateManifest manifest = deserialize(data, BaragonGlobalStateManifest.class);
+    final ByteArrayOutputStream serializedState = new ByteArrayOutputStream(manifest.getTotalBytes());
+
+    for (int i = 0; i < manifest.getChunkCount(); i++) {
+      final Optional<byte[]> chunk = readCache.getData(manifest.getChunkPath(i));
+
+      if (!chunk.isPresent()) {
+        return Optional.absent();
+      }
+
+      serializedState.write(chunk.get());
+    }
+
+    return Optional.of(deserialize(BaragonStateFormat.decode(serializedState.toByteArray()), BARAGON_SERVICE_STATE_COLLECTION));
   }
 
   public int getGlobalStateSize() {
     final Stat stat = new Stat();
     try {
-      curatorFramework.getData().storingStatIn(stat).forPath(SERVICES_FORMAT);
+      final byte[] data = curatorFramework.getData().storingStatIn(stat).forPath(SERVICES_FORMAT);
+
+      if (data != null && BaragonGlobalStateManifest.isManifest(data)) {
+        return deserialize(data, BaragonGlobalStateManifest.class).getTotalBytes();
+      }
+
       return stat.getDataLength();
     } catch (KeeperException.NoNodeException nne) {
       return 0;
@@ -130,10 +405,10 @@ public class BaragonStateDatastore extends AbstractDataStore {
     }
   }
 
-  private Collection<BaragonServiceState> computeAllServiceStates() throws Exception {
+  Collection<BaragonServiceState> computeAllServiceStates() throws Exception {
     Collection<String> services = new ArrayList<>();
 
-    for (String service : getServices()) {
+    for (String service : getChildren(SERVICES_FORMAT)) {
       services.add(ZKPaths.makePath(SERVICES_FORMAT, service));
     }
 
@@ -151,35 +426,45 @@ public class BaragonStateDatastore extends AbstractDataStore {
     return serviceStates;
   }
 
+  // upstreams are deserialized as they arrive, so only the finished map is ever held in memory
   private Map<String, Collection<UpstreamInfo>> fetchServiceToUpstreamInfoMap(Collection<String> services) throws Exception {
-    Map<String, Collection<String>> serviceToUpstreams = zkFetcher.fetchChildrenInParallel(services);
-    Map<String, UpstreamInfo> upstreamToInfo = zkFetcher.fetchDataInParallel(upstreamPaths(serviceToUpstreams), new BaragonDeserializer<>(objectMapper, UpstreamInfo.class));
+    final Collection<String> upstreamPaths = new ArrayList<>();
+
+    ZkParallelFetcher.throwFirstFailure(zkFetcher.streamChildrenInParallel(services, new ZkParallelFetcher.ResultCallback<List<String>>() {
+      @Override
+      public void onResult(String servicePath, List<String> upstreams) {
+        for (String upstream : upstreams) {
+          upstreamPaths.add(ZKPaths.makePath(servicePath, upstream));
+        }
+      }
+    }));
+
+    final Map<String, Collection<UpstreamInfo>> serviceToUpstreamInfo = new HashMap<>(services.size());
 
-    Map<String, Collection<UpstreamInfo>> serviceToUpstreamInfo = new HashMap<>(services.size());
+    ZkParallelFetcher.throwFirstFailure(zkFetcher.streamDataInParallel(upstreamPaths, null, new ZkParallelFetcher.ResultCallback<byte[]>() {
+      @Override
+      public void onResult(String upstreamPath, byte[] data) {
+        final String serviceId = ZKPaths.getNodeFromPath(ZKPaths.getPathAndNode(upstreamPath).getPath());
+        final UpstreamInfo upstreamInfo;
 
-    for (Entry<String, Collection<String>> entry : serviceToUpstreams.entrySet()) {
-      for (String upstream : entry.getValue()) {
-        if (!serviceToUpstreamInfo.containsKey(entry.getKey())) {
-          serviceToUpstreamInfo.put(entry.getKey(), Lists.<UpstreamInfo>newArrayList(upstreamToInfo.get(upstream)));
+        try {
+          upstreamInfo = objectMapper.readValue(data, UpstreamInfo.class);
+        } catch (IOException e) {
+          LOG.warn(String.format("Skipping unreadable upstream %s", upstreamPath), e);
+          return;
+        }
+
+        if (!serviceToUpstreamInfo.containsKey(serviceId)) {
+          serviceToUpstreamInfo.put(serviceId, Lists.newArrayList(upstreamInfo));
         } else {
-          serviceToUpstreamInfo.get(entry.getKey()).add(upstreamToInfo.get(upstream));
+          serviceToUpstreamInfo.get(serviceId).add(upstreamInfo);
         }
       }
-    }
+    }));
 
     return serviceToUpstreamInfo;
   }
 
-  private Collection<String> upstreamPaths(Map<String, Collection<String>> serviceToUpstreams) {
-    Collection<String> allUpstreamPaths = new ArrayList<>();
-    for (Entry<String, Collection<String>> entry : serviceToUpstreams.entrySet()) {
-      for (String upstream : entry.getValue()) {
-        allUpstreamPaths.add(String.format(UPSTREAM_FORMAT, entry.getKey(), upstream));
-      }
-    }
-    return allUpstreamPaths;
-  }
-
   public static class BaragonDeserializer<T> implements Function<byte[], T> {
     private final Class<T> clazz;
     private final ObjectMapper objectMapper;
@@ -0,0 +1,192 @@
+package com.hubspot.baragon.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.curator.utils.ZKPaths;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Iterables;
+import com.hubspot.baragon.utils.ZkReadCache;
+
+// stages the desired end state of a set of nodes and commits it as a single multi-op, so either all of it applies or none of it does.
+// ZooKeeper rejects any request larger than jute.maxbuffer, so a transaction that doesn't fit is committed as several
+// multi-ops in order instead, and is only all-or-nothing within each of them.
+public class ZkTransaction {
+  private static final Logger LOG = LoggerFactory.getLogger(ZkTransaction.class);
+
+  // leaves room for the request framing, which estimateSize only approximates
+  static final int DEFAULT_MAX_BYTES = Integer.getInteger("jute.maxbuffer", 0xfffff) * 3 / 4;
+  private static final int OP_OVERHEAD_BYTES = 64;
+
+  private final CuratorFramework curatorFramework;
+  private final Optional<ZkReadCache> readCache;
+  private final int maxBytes;
+  private final Map<String, Boolean> existedBefore = new LinkedHashMap<>();
+  private final Map<String, Optional<byte[]>> desiredData = new LinkedHashMap<>();
+
+  ZkTransaction(CuratorFramework curatorFramework, Optional<ZkReadCache> readCache) {
+    this(curatorFramework, readCache, DEFAULT_MAX_BYTES);
+  }
+
+  ZkTransaction(CuratorFramework curatorFramework, Optional<ZkReadCache> readCache, int maxBytes) {
+    this.curatorFramework = curatorFramework;
+    this.readCache = readCache;
+    this.maxBytes = maxBytes;
+  }
+
+  void write(String path, boolean exists, byte[] data) {
+    stage(path, exists, Optional.of(data));
+  }
+
+  void delete(String path, boolean exists) {
+    stage(path, exists, Optional.<byte[]>absent());
+  }
+
+  private void stage(String path, boolean exists, Optional<byte[]> data) {
+    if (!existedBefore.containsKey(path)) {
+      existedBefore.put(path, exists);
+    }
+    desiredData.put(path, data);
+  }
+
+  // true if the node will exist once the transaction commits, existsNow is used for nodes this transaction doesn't touch
+  public boolean willExist(String path, boolean existsNow) {
+    return desiredData.containsKey(path) ? desiredData.get(path).isPresent() : existsNow;
+  }
+
+  public boolean isEmpty() {
+    return desiredData.isEmpty();
+  }
+
+  public void commit() throws Exception {
+    final List<String> deletes = new ArrayList<>();
+    final List<String> creates = new ArrayList<>();
+    final List<String> updates = new ArrayList<>();
+
+    for (Map.Entry<String, Optional<byte[]>> entry : desiredData.entrySet()) {
+      final boolean existed = existedBefore.get(entry.getKey());
+
+      if (!entry.getValue().isPresent()) {
+        if (existed) {
+          deletes.add(entry.getKey());
+        }
+      } else if (existed) {
+        updates.add(entry.getKey());
+      } else {
+        creates.add(entry.getKey());
+      }
+    }
+
+    if (deletes.isEmpty() && creates.isEmpty() && updates.isEmpty()) {
+      return;
+    }
+
+    // children have to go before their parents, and parents have to be created before their children
+    Collections.sort(deletes, Collections.reverseOrder(PATH_DEPTH_COMPARATOR));
+    Collections.sort(creates, PATH_DEPTH_COMPARATOR);
+
+    ensureParentsExist(creates);
+
+    final List<List<String>> batches = new ArrayList<>();
+    List<String> batch = new ArrayList<>();
+    int batchBytes = 0;
+
+    // deletes, then creates, then updates, each batch keeps that order so parents and children still line up across batches
+    for (String path : Iterables.concat(deletes, creates, updates)) {
+      final int size = estimateSize(path);
+
+      if (!batch.isEmpty() && batchBytes + size > maxBytes) {
+        batches.add(batch);
+        batch = new ArrayList<>();
+        batchBytes = 0;
+      }
+
+      batch.add(path);
+      batchBytes += size;
+    }
+    batches.add(batch);
+
+    if (batches.size() > 1) {
+      LOG.warn(String.format("Transaction of %d operations is too large for a single request, committing it in %d parts", desiredData.size(), batches.size()));
+    }
+
+    try {
+      for (List<String> paths : batches) {
+        commitBatch(paths);
+      }
+    } finally {
+      if (readCache.isPresent()) {
+        for (String path : desiredData.keySet()) {
+          readCache.get().invalidate(path);
+        }
+      }
+    }
+  }
+
+  private void commitBatch(List<String> paths) throws Exception {
+    CuratorTransaction transaction = curatorFramework.inTransaction();
+
+    for (String path : paths) {
+      final Optional<byte[]> data = desiredData.get(path);
+
+      if (!data.isPresent()) {
+        transaction = transaction.delete().forPath(path).and();
+      } else if (existedBefore.get(path)) {
+        transaction = transaction.setData().forPath(path, data.get()).and();
+      } else {
+        transaction = transaction.create().forPath(path, data.get()).and();
+      }
+    }
+
+    ((CuratorTransactionFinal) transaction).commit();
+  }
+
+  private int estimateSize(String path) {
+    final Optional<byte[]> data = desiredData.get(path);
+
+    return OP_OVERHEAD_BYTES + path.length() * 3 + (data.isPresent() ? data.get().length : 0);
+  }
+
+  // multi-ops can't create parents, so make sure any parent that isn't part of this transaction is there beforehand
+  private void ensureParentsExist(List<String> creates) throws Exception {
+    final Set<String> ensured = new HashSet<>();
+
+    for (String path : creates) {
+      final String parent = ZKPaths.getPathAndNode(path).getPath();
+
+      if (!willExist(parent, false) && ensured.add(parent) && !parent.equals("/")) {
+        curatorFramework.newNamespaceAwareEnsurePath(parent).ensure(curatorFramework.getZookeeperClient());
+      }
+    }
+  }
+
+  private static int depth(String path) {
+    int depth = 0;
+    for (int i = 0; i < path.length(); i++) {
+      if (path.charAt(i) == '/') {
+        depth++;
+      }
+    }
+    return depth;
+  }
+
+  private static final Comparator<String> PATH_DEPTH_COMPARATOR = new Comparator<String>() {
+    @Override
+    public int compare(String o1, String o2) {
+      return Integer.compare(depth(o1), depth(o2));
+    }
+  };
+}
@@ -1,15 +1,24 @@
 package com.hubspot.baragon.managers;
 
+import java.io.IOException;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.hubspot.baragon.models.RequestAction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Strings;
 import com.google.common.collect.Sets;
@@ -26,6 +35,8 @@ import com.hubspot.baragon.models.AgentResponse;
 import com.hubspot.baragon.models.AgentResponseId;
 import com.hubspot.baragon.models.BaragonAgentMetadata;
 import com.hubspot.baragon.models.BaragonRequest;
+import com.hubspot.baragon.models.BaragonRequestBatchItem;
+import com.hubspot.baragon.models.BaragonRequestBatchResult;
 import com.hubspot.baragon.models.BaragonService;
 import com.ning.http.client.AsyncCompletionHandler;
 import com.ning.http.client.AsyncHttpClient;
@@ -35,6 +46,7 @@ import com.ning.http.client.Response;
 @Singleton
 public class AgentManager {
   private static final Logger LOG = LoggerFactory.getLogger(AgentManager.class);
+  private static final TypeReference<List<BaragonRequestBatchResult>> BATCH_RESULTS_TYPE = new TypeReference<List<BaragonRequestBatchResult>>() {};
 
   private final BaragonLoadBalancerDatastore loadBalancerDatastore;
   private final BaragonStateDatastore stateDatastore;
@@ -44,6 +56,10 @@ public class AgentManager {
   private final Integer baragonAgentMaxAttempts;
   private final Optional<String> baragonAuthKey;
   private final Long baragonAgentRequestTimeout;
+  private final Optional<String> baragonAgentBatchRequestUriFormat;
+  private final ObjectMapper objectMapper;
+  private final ConcurrentMap<String, AgentRequestTracker> trackers = new ConcurrentHashMap<>();
+  private final List<AgentResponsesListener> responsesListeners = new CopyOnWriteArrayList<>();
 
   @Inject
   public AgentManager(BaragonLoadBalancerDatastore loadBalancerDatastore,
@@ -53,7 +69,9 @@ public class AgentManager {
                       @Named(BaragonDataModule.BARAGON_AGENT_REQUEST_URI_FORMAT) String baragonAgentRequestUriFormat,
                       @Named(BaragonDataModule.BARAGON_AGENT_MAX_ATTEMPTS) Integer baragonAgentMaxAttempts,
                       @Named(BaragonDataModule.BARAGON_AUTH_KEY) Optional<String> baragonAuthKey,
-                      @Named(BaragonDataModule.BARAGON_AGENT_REQUEST_TIMEOUT_MS) Long baragonAgentRequestTimeout) {
+                      @Named(BaragonDataModule.BARAGON_AGENT_REQUEST_TIMEOUT_MS) Long baragonAgentRequestTimeout,
+                      @Named(BaragonDataModule.BARAGON_AGENT_BATCH_REQUEST_URI_FORMAT) Optional<String> baragonAgentBatchRequestUriFormat,
+                      ObjectMapper objectMapper) {
     this.loadBalancerDatastore = loadBalancerDatastore;
     this.stateDatastore = stateDatastore;
     this.agentResponseDatastore = agentResponseDatastore;
@@ -62,6 +80,8 @@ public class AgentManager {
     this.baragonAgentMaxAttempts = baragonAgentMaxAttempts;
     this.baragonAuthKey = baragonAuthKey;
     this.baragonAgentRequestTimeout = baragonAgentRequestTimeout;
+    this.baragonAgentBatchRequestUriFormat = baragonAgentBatchRequestUriFormat;
+    this.objectMapper = objectMapper;
   }
 
   private AsyncHttpClient.BoundRequestBuilder buildAgentRequest(String url, AgentRequestType requestType) {
@@ -85,7 +105,63 @@ public class AgentManager {
     return builder;
   }
 
+  private AsyncHttpClient.BoundRequestBuilder buildAgentBatchRequest(String url, List<BaragonRequestBatchItem> items) throws IOException {
+    final BoundRequestBuilder builder = asyncHttpClient.preparePost(url)
+        .addHeader("Content-Type", "application/json")
+        .setBody(objectMapper.writeValueAsBytes(items));
+
+    if (baragonAuthKey.isPresent()) {
+      builder.addQueryParameter("authkey", baragonAuthKey.get());
+    }
+
+    return builder;
+  }
+
+  public boolean isBatchingEnabled() {
+    return baragonAgentBatchRequestUriFormat.isPresent();
+  }
+
   public void sendRequests(final BaragonRequest request, final AgentRequestType requestType) {
+    final OutgoingRequests outgoing = prepareRequests(request, requestType);
+
+    for (String baseUrl : outgoing.baseUrls) {
+      sendRequest(outgoing, baseUrl);
+    }
+  }
+
+  // Sends requests that were already prepared, agents that are due more than one of them get all of them in a single
+  // batch call. Failures to reach an agent are recorded as its response, like for requests sent one by one.
+  public void sendRequests(Collection<OutgoingRequests> prepared) {
+    final Map<String, List<OutgoingRequests>> requestsPerAgent = new LinkedHashMap<>();
+
+    for (OutgoingRequests outgoing : prepared) {
+      for (String baseUrl : outgoing.baseUrls) {
+        if (!requestsPerAgent.containsKey(baseUrl)) {
+          requestsPerAgent.put(baseUrl, new ArrayList<OutgoingRequests>());
+        }
+        requestsPerAgent.get(baseUrl).add(outgoing);
+      }
+    }
+
+    for (Map.Entry<String, List<OutgoingRequests>> entry : requestsPerAgent.entrySet()) {
+      // an agent that can't even be dispatched to stays pending, and is retried once its request times out
+      try {
+        if (entry.getValue().size() == 1 || !isBatchingEnabled()) {
+          for (OutgoingRequests outgoing : entry.getValue()) {
+            sendRequest(outgoing, entry.getKey());
+          }
+        } else {
+          sendBatch(entry.getKey(), entry.getValue());
+        }
+      } catch (Exception e) {
+        LOG.warn(String.format("Failed to send %s requests to %s", entry.getValue().size(), entry.getKey()), e);
+      }
+    }
+  }
+
+  // Works out which agents need to be sent the request and marks them as pending, without sending anything yet. Once
+  // this returns, the request times out like any other if it's never sent.
+  public OutgoingRequests prepareRequests(BaragonRequest request, AgentRequestType requestType) {
     final Optional<BaragonService> maybeOriginalService = stateDatastore.getService(request.getLoadBalancerService().getServiceId());
 
     final Set<String> loadBalancerGroupsToUpdate = Sets.newHashSet(request.getLoadBalancerService().getLoadBalancerGroups());
@@ -95,63 +171,172 @@ public class AgentManager {
     }
 
     final String requestId = request.getLoadBalancerRequestId();
+    final Collection<BaragonAgentMetadata> agents = getAgents(loadBalancerGroupsToUpdate);
+    final AgentRequestTracker tracker = getTracker(requestId, requestType, agents);
 
-    for (final BaragonAgentMetadata agentMetadata : getAgents(loadBalancerGroupsToUpdate)) {
+    final List<String> baseUrlsToSend = new ArrayList<>();
+
+    for (final BaragonAgentMetadata agentMetadata : agents) {
       final String baseUrl = agentMetadata.getBaseAgentUri();
 
       // wait until pending request has completed.
-      Optional<Long> maybePendingRequest = agentResponseDatastore.getPendingRequest(requestId, baseUrl);
+      Optional<Long> maybePendingRequest = tracker.getPendingSince(baseUrl);
       if (maybePendingRequest.isPresent() && !((System.currentTimeMillis() - maybePendingRequest.get()) > baragonAgentRequestTimeout)) {
         LOG.info(String.format("Request has been processing for %s ms", (System.currentTimeMillis() - maybePendingRequest.get())));
         continue;
       }
 
-      final Optional<AgentResponseId> maybeLastResponseId = agentResponseDatastore.getLastAgentResponseId(requestId, requestType, baseUrl);
+      final Optional<AgentRequestTracker.LastResponse> maybeLastResponse = tracker.getLastResponse(baseUrl);
 
       // don't retry request if we've hit the max attempts, or the request was successful
-      if (maybeLastResponseId.isPresent() && (maybeLastResponseId.get().getAttempt() > baragonAgentMaxAttempts || maybeLastResponseId.get().isSuccess())) {
+      if (maybeLastResponse.isPresent() && (maybeLastResponse.get().getAttempt() > baragonAgentMaxAttempts || maybeLastResponse.get().isSuccess())) {
         continue;
       }
 
-      agentResponseDatastore.setPendingRequestStatus(requestId, baseUrl, true);
+      baseUrlsToSend.add(baseUrl);
+    }
 
-      final String url = String.format(baragonAgentRequestUriFormat, baseUrl, requestId);
+    agentResponseDatastore.setPendingRequestStatuses(requestId, baseUrlsToSend, tracker.getPendingBaseUrls());
 
-      try {
-        buildAgentRequest(url, requestType).execute(new AsyncCompletionHandler<Void>() {
-          @Override
-          public Void onCompleted(Response response) throws Exception {
-            LOG.info(String.format("Got HTTP %d from %s for %s", response.getStatusCode(), baseUrl, requestId));
-            final Optional<String> content = Strings.isNullOrEmpty(response.getResponseBody()) ? Optional.<String>absent() : Optional.of(response.getResponseBody());
-            agentResponseDatastore.addAgentResponse(requestId, requestType, baseUrl, url, Optional.of(response.getStatusCode()), content, Optional.<String>absent());
-            agentResponseDatastore.setPendingRequestStatus(requestId, baseUrl, false);
-            return null;
-          }
+    final long sentAt = System.currentTimeMillis();
 
-          @Override
-          public void onThrowable(Throwable t) {
-            LOG.info(String.format("Got exception %s when hitting %s for %s", t, baseUrl, requestId));
-            agentResponseDatastore.addAgentResponse(requestId, requestType, baseUrl, url, Optional.<Integer>absent(), Optional.<String>absent(), Optional.of(t.getMessage()));
-            agentResponseDatastore.setPendingRequestStatus(requestId, baseUrl, false);
-          }
-        });
-      } catch (Exception e) {
-        LOG.info(String.format("Got exception %s when hitting %s for %s", e, baseUrl, requestId));
-        agentResponseDatastore.addAgentResponse(requestId, requestType, baseUrl, url, Optional.<Integer>absent(), Optional.<String>absent(), Optional.of(e.getMessage()));
-        agentResponseDatastore.setPendingRequestStatus(requestId, baseUrl, false);
+    for (String baseUrl : baseUrlsToSend) {
+      tracker.setPending(baseUrl, sentAt);
+    }
+
+    return new OutgoingRequests(requestId, requestType, tracker, baseUrlsToSend);
+  }
+
+  private void sendRequest(final OutgoingRequests outgoing, final String baseUrl) {
+    final String requestId = outgoing.requestId;
+    final String url = String.format(baragonAgentRequestUriFormat, baseUrl, requestId);
+
+    try {
+      buildAgentRequest(url, outgoing.requestType).execute(new AsyncCompletionHandler<Void>() {
+        @Override
+        public Void onCompleted(Response response) throws Exception {
+          LOG.info(String.format("Got HTTP %d from %s for %s", response.getStatusCode(), baseUrl, requestId));
+          final Optional<String> content = Strings.isNullOrEmpty(response.getResponseBody()) ? Optional.<String>absent() : Optional.of(response.getResponseBody());
+          recordResponse(outgoing.tracker, requestId, outgoing.requestType, baseUrl, url, Optional.of(response.getStatusCode()), content, Optional.<String>absent());
+          return null;
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+          LOG.info(String.format("Got exception %s when hitting %s for %s", t, baseUrl, requestId));
+          recordResponse(outgoing.tracker, requestId, outgoing.requestType, baseUrl, url, Optional.<Integer>absent(), Optional.<String>absent(), Optional.of(t.getMessage()));
+        }
+      });
+    } catch (Exception e) {
+      LOG.info(String.format("Got exception %s when hitting %s for %s", e, baseUrl, requestId));
+      recordResponse(outgoing.tracker, requestId, outgoing.requestType, baseUrl, url, Optional.<Integer>absent(), Optional.<String>absent(), Optional.of(e.getMessage()));
+    }
+  }
+
+  private void sendBatch(final String baseUrl, final List<OutgoingRequests> batch) {
+    final String url = String.format(baragonAgentBatchRequestUriFormat.get(), baseUrl);
+    final List<BaragonRequestBatchItem> items = new ArrayList<>(batch.size());
+
+    for (OutgoingRequests outgoing : batch) {
+      items.add(new BaragonRequestBatchItem(outgoing.requestId, outgoing.requestType));
+    }
+
+    try {
+      buildAgentBatchRequest(url, items).execute(new AsyncCompletionHandler<Void>() {
+        @Override
+        public Void onCompleted(Response response) throws Exception {
+          LOG.info(String.format("Got HTTP %d from %s for a batch of %s requests", response.getStatusCode(), baseUrl, batch.size()));
+          recordBatchResponse(baseUrl, url, batch, response);
+          return null;
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+          LOG.info(String.format("Got exception %s when hitting %s for a batch of %s requests", t, baseUrl, batch.size()));
+          recordBatchFailure(baseUrl, url, batch, Optional.<Integer>absent(), Optional.<String>absent(), Optional.of(t.getMessage()));
+        }
+      });
+    } catch (Exception e) {
+      LOG.info(String.format("Got exception %s when hitting %s for a batch of %s requests", e, baseUrl, batch.size()));
+      recordBatchFailure(baseUrl, url, batch, Optional.<Integer>absent(), Optional.<String>absent(), Optional.of(e.getMessage()));
+    }
+  }
+
+  // a failed batch call counts as the same failure for every request in it
+  private void recordBatchResponse(String baseUrl, String url, List<OutgoingRequests> batch, Response response) throws IOException {
+    final String body = response.getResponseBody();
+
+    if (response.getStatusCode() < 200 || response.getStatusCode() >= 300) {
+      recordBatchFailure(baseUrl, url, batch, Optional.of(response.getStatusCode()), Optional.fromNullable(Strings.emptyToNull(body)), Optional.<String>absent());
+      return;
+    }
+
+    final Map<String, BaragonRequestBatchResult> results = new HashMap<>();
+
+    try {
+      final List<BaragonRequestBatchResult> parsed = objectMapper.readValue(body, BATCH_RESULTS_TYPE);
+      for (BaragonRequestBatchResult result : parsed) {
+        results.put(result.getRequestId(), result);
+      }
+    } catch (IOException e) {
+      LOG.warn(String.format("Could not parse batch response from %s", baseUrl), e);
+      recordBatchFailure(baseUrl, url, batch, Optional.<Integer>absent(), Optional.<String>absent(), Optional.of(String.format("Could not parse batch response: %s", e.getMessage())));
+      return;
+    }
+
+    for (OutgoingRequests outgoing : batch) {
+      final BaragonRequestBatchResult result = results.get(outgoing.requestId);
+
+      if (result != null) {
+        recordResponse(outgoing.tracker, outgoing.requestId, outgoing.requestType, baseUrl, url, Optional.of(result.getStatusCode()), result.getMessage(), Optional.<String>absent());
+      } else {
+        recordResponse(outgoing.tracker, outgoing.requestId, outgoing.requestType, baseUrl, url, Optional.<Integer>absent(), Optional.<String>absent(), Optional.of("No result for this request in the batch response"));
       }
     }
   }
 
+  private void recordBatchFailure(String baseUrl, String url, List<OutgoingRequests> batch, Optional<Integer> statusCode, Optional<String> content, Optional<String> exception) {
+    for (OutgoingRequests outgoing : batch) {
+      recordResponse(outgoing.tracker, outgoing.requestId, outgoing.requestType, baseUrl, url, statusCode, content, exception);
+    }
+  }
+
+  private void recordResponse(AgentRequestTracker tracker, String requestId, AgentRequestType requestType, String baseUrl, String url, Optional<Integer> statusCode, Optional<String> content, Optional<String> exception) {
+    final AgentResponse agentResponse = agentResponseDatastore.addAgentResponse(requestId, requestType, baseUrl, url, statusCode, content, exception);
+    final boolean decidable = tracker.recordResponse(baseUrl, agentResponse);
+    agentResponseDatastore.setPendingRequestStatus(requestId, baseUrl, false);
+
+    if (decidable) {
+      for (AgentResponsesListener listener : responsesListeners) {
+        try {
+          listener.responsesReceived(requestId, requestType);
+        } catch (Exception e) {
+          LOG.warn(String.format("Listener failed for responses to %s", requestId), e);
+        }
+      }
+    }
+  }
+
+  public void addResponsesListener(AgentResponsesListener listener) {
+    responsesListeners.add(listener);
+  }
+
+  public void removeResponsesListener(AgentResponsesListener listener) {
+    responsesListeners.remove(listener);
+  }
+
   public AgentRequestsStatus getRequestsStatus(BaragonRequest request, AgentRequestType requestType) {
     boolean success = true;
     RequestAction action = request.getAction().or(RequestAction.UPDATE);
     List<Boolean> missingTemplateExceptions = new ArrayList<>();
 
-    for (BaragonAgentMetadata agentMetadata : getAgents(request.getLoadBalancerService().getLoadBalancerGroups())) {
+    final Collection<BaragonAgentMetadata> agents = getAgents(request.getLoadBalancerService().getLoadBalancerGroups());
+    final AgentRequestTracker tracker = getTracker(request.getLoadBalancerRequestId(), requestType, agents);
+
+    for (BaragonAgentMetadata agentMetadata : agents) {
       final String baseUrl = agentMetadata.getBaseAgentUri();
 
-      Optional<Long> maybePendingRequestTime = agentResponseDatastore.getPendingRequest(request.getLoadBalancerRequestId(), baseUrl);
+      Optional<Long> maybePendingRequestTime = tracker.getPendingSince(baseUrl);
       if (maybePendingRequestTime.isPresent()) {
         if ((System.currentTimeMillis() - maybePendingRequestTime.get()) > baragonAgentRequestTimeout) {
           LOG.info(String.format("Request %s reached maximum pending request time", request.getLoadBalancerRequestId()));
@@ -161,23 +346,22 @@ public class AgentManager {
         }
       }
 
-      final Optional<AgentResponseId> maybeAgentResponseId = agentResponseDatastore.getLastAgentResponseId(request.getLoadBalancerRequestId(), requestType, baseUrl);
+      final Optional<AgentRequestTracker.LastResponse> maybeLastResponse = tracker.getLastResponse(baseUrl);
 
-      if (!maybeAgentResponseId.isPresent()) {
+      if (!maybeLastResponse.isPresent()) {
         return AgentRequestsStatus.WAITING;
       }
 
-      Optional<AgentResponse> maybeLastResponse = agentResponseDatastore.getAgentResponse(request.getLoadBalancerRequestId(), requestType, maybeAgentResponseId.get(), baseUrl);
-      boolean missingTemplate = hasMissingTemplate(maybeLastResponse);
+      boolean missingTemplate = hasMissingTemplate(maybeLastResponse.get().getAgentResponse());
       missingTemplateExceptions.add(missingTemplate);
 
       if (!missingTemplate) {
-        final AgentResponseId agentResponseId = maybeAgentResponseId.get();
+        final AgentRequestTracker.LastResponse lastResponse = maybeLastResponse.get();
 
-        if ((agentResponseId.getAttempt() < baragonAgentMaxAttempts - 1) && !agentResponseId.isSuccess()) {
+        if ((lastResponse.getAttempt() < baragonAgentMaxAttempts - 1) && !lastResponse.isSuccess()) {
           return AgentRequestsStatus.RETRY;
         } else {
-          success = success && agentResponseId.isSuccess();
+          success = success && lastResponse.isSuccess();
         }
       }
     }
@@ -191,6 +375,54 @@ public class AgentManager {
     }
   }
 
+  // agents this instance hasn't seen for the request yet are read from zookeeper in one parallel batch
+  private AgentRequestTracker getTracker(String requestId, AgentRequestType requestType, Collection<BaragonAgentMetadata> agents) {
+    final String key = String.format("%s-%s", requestId, requestType);
+
+    AgentRequestTracker tracker = trackers.get(key);
+
+    if (tracker == null) {
+      final AgentRequestTracker newTracker = new AgentRequestTracker();
+      tracker = Objects.firstNonNull(trackers.putIfAbsent(key, newTracker), newTracker);
+    }
+
+    final List<String> unloadedBaseUrls = new ArrayList<>();
+
+    for (BaragonAgentMetadata agentMetadata : agents) {
+      if (!tracker.isLoaded(agentMetadata.getBaseAgentUri())) {
+        unloadedBaseUrls.add(agentMetadata.getBaseAgentUri());
+      }
+    }
+
+    if (!unloadedBaseUrls.isEmpty()) {
+      final Map<String, Long> pendingRequests = agentResponseDatastore.getPendingRequests(requestId, unloadedBaseUrls);
+      final Optional<Map<String, AgentResponse>> maybeLastResponses = agentResponseDatastore.getLastAgentResponses(requestId, requestType);
+
+      if (maybeLastResponses.isPresent()) {
+        tracker.load(unloadedBaseUrls, pendingRequests, maybeLastResponses.get());
+      } else {
+        final Map<String, AgentResponseId> lastResponseIds = agentResponseDatastore.getLastAgentResponseIds(requestId, requestType, unloadedBaseUrls);
+        final Map<String, AgentResponse> agentResponses = agentResponseDatastore.getAgentResponses(requestId, requestType, lastResponseIds);
+
+        tracker.load(unloadedBaseUrls, pendingRequests, lastResponseIds, agentResponses);
+      }
+    }
+
+    return tracker;
+  }
+
+  // called once a request has left the queue
+  public void forgetRequest(String requestId) {
+    for (AgentRequestType requestType : AgentRequestType.values()) {
+      trackers.remove(String.format("%s-%s", requestId, requestType));
+    }
+  }
+
+  // another instance may have worked on any request in the meantime, e.g. after a change of leadership
+  public void forgetAllRequests() {
+    trackers.clear();
+  }
+
   public Map<String, Collection<AgentResponse>> getAgentResponses(String requestId) {
     return agentResponseDatastore.getLastResponses(requestId);
   }
@@ -215,4 +447,18 @@ public class AgentManager {
     }
     return true;
   }
+
+  public static class OutgoingRequests {
+    private final String requestId;
+    private final AgentRequestType requestType;
+    private final AgentRequestTracker tracker;
+    private final List<String> baseUrls;
+
+    private OutgoingRequests(String requestId, AgentRequestType requestType, AgentRequestTracker tracker, List<String> baseUrls) {
+      this.requestId = requestId;
+      this.requestType = requestType;
+      this.tracker = tracker;
+      this.baseUrls = baseUrls;
+    }
+  }
 }
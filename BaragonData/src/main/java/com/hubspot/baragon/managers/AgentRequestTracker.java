@@ -0,0 +1,109 @@
+package com.hubspot.baragon.managers;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Optional;
+import com.hubspot.baragon.models.AgentRequestsStatus;
+import com.hubspot.baragon.models.AgentResponse;
+import com.hubspot.baragon.models.AgentResponseId;
+
+// What this instance knows about the agents of a single request and request type. Agents are loaded from
+// zookeeper once, after that the tracker is kept up to date by the requests this instance sends and their responses.
+class AgentRequestTracker {
+  private final Set<String> loadedBaseUrls = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final ConcurrentMap<String, Long> pendingSince = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LastResponse> lastResponses = new ConcurrentHashMap<>();
+
+  public boolean isLoaded(String baseUrl) {
+    return loadedBaseUrls.contains(baseUrl);
+  }
+
+  public void load(Collection<String> baseUrls, Map<String, Long> pendingRequests, Map<String, AgentResponseId> lastResponseIds, Map<String, AgentResponse> agentResponses) {
+    for (String baseUrl : baseUrls) {
+      if (pendingRequests.containsKey(baseUrl)) {
+        pendingSince.put(baseUrl, pendingRequests.get(baseUrl));
+      }
+
+      final AgentResponseId lastResponseId = lastResponseIds.get(baseUrl);
+
+      if (lastResponseId != null) {
+        lastResponses.put(baseUrl, new LastResponse(lastResponseId.getAttempt(), lastResponseId.isSuccess(), Optional.fromNullable(agentResponses.get(baseUrl))));
+      }
+
+      loadedBaseUrls.add(baseUrl);
+    }
+  }
+
+  // same as above, for requests whose latest responses are kept in a summary
+  public void load(Collection<String> baseUrls, Map<String, Long> pendingRequests, Map<String, AgentResponse> lastResponses) {
+    for (String baseUrl : baseUrls) {
+      if (pendingRequests.containsKey(baseUrl)) {
+        pendingSince.put(baseUrl, pendingRequests.get(baseUrl));
+      }
+
+      final AgentResponse agentResponse = lastResponses.get(baseUrl);
+
+      if (agentResponse != null) {
+        this.lastResponses.put(baseUrl, new LastResponse(agentResponse.getAttempt(), agentResponse.toRequestStatus() == AgentRequestsStatus.SUCCESS, Optional.of(agentResponse)));
+      }
+
+      loadedBaseUrls.add(baseUrl);
+    }
+  }
+
+  public Optional<Long> getPendingSince(String baseUrl) {
+    return Optional.fromNullable(pendingSince.get(baseUrl));
+  }
+
+  public Set<String> getPendingBaseUrls() {
+    return pendingSince.keySet();
+  }
+
+  public void setPending(String baseUrl, long timestamp) {
+    pendingSince.put(baseUrl, timestamp);
+  }
+
+  // the response has to be recorded before the pending marker is cleared, otherwise the agent briefly looks like it was never asked.
+  // returns true if the outcome can be decided now, i.e. this was a failure or the last outstanding response
+  public boolean recordResponse(String baseUrl, AgentResponse agentResponse) {
+    final boolean success = agentResponse.toRequestStatus() == AgentRequestsStatus.SUCCESS;
+
+    lastResponses.put(baseUrl, new LastResponse(agentResponse.getAttempt(), success, Optional.of(agentResponse)));
+    pendingSince.remove(baseUrl);
+
+    return !success || pendingSince.isEmpty();
+  }
+
+  public Optional<LastResponse> getLastResponse(String baseUrl) {
+    return Optional.fromNullable(lastResponses.get(baseUrl));
+  }
+
+  static class LastResponse {
+    private final int attempt;
+    private final boolean success;
+    private final Optional<AgentResponse> agentResponse;
+
+    LastResponse(int attempt, boolean success, Optional<AgentResponse> agentResponse) {
+      this.attempt = attempt;
+      this.success = success;
+      this.agentResponse = agentResponse;
+    }
+
+    public int getAttempt() {
+      return attempt;
+    }
+
+    public boolean isSuccess() {
+      return success;
+    }
+
+    public Optional<AgentResponse> getAgentResponse() {
+      return agentResponse;
+    }
+  }
+}
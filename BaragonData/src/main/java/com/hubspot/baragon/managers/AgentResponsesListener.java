@@ -0,0 +1,8 @@
+package com.hubspot.baragon.managers;
+
+import com.hubspot.baragon.models.AgentRequestType;
+
+// notified from the http client's threads when a failure arrives or the last outstanding agent has responded
+public interface AgentResponsesListener {
+  void responsesReceived(String requestId, AgentRequestType requestType);
+}
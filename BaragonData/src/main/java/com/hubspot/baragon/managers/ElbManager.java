@@ -4,7 +4,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.elasticloadbalancing.AmazonElasticLoadBalancingClient;
@@ -169,11 +173,12 @@ public class ElbManager {
 
   private List<RegisterInstancesWithLoadBalancerRequest> registerRequests(BaragonGroup group, Collection<BaragonAgentMetadata> agents, List<LoadBalancerDescription> elbs) {
     List<RegisterInstancesWithLoadBalancerRequest> requests = new ArrayList<>();
+    Map<String, Set<String>> registeredInstances = registeredInstanceIds(elbs);
     for (BaragonAgentMetadata agent : agents) {
       try {
         for (String elbName : group.getSources()) {
           if (agent.getEc2().getInstanceId().isPresent()) {
-            if (!isRegistered(agent.getEc2().getInstanceId().get(), elbName, elbs)) {
+            if (!isRegistered(agent.getEc2().getInstanceId().get(), elbName, registeredInstances)) {
               Instance instance = new Instance(agent.getEc2().getInstanceId().get());
               requests.add(new RegisterInstancesWithLoadBalancerRequest(elbName, Arrays.asList(instance)));
               checkAZEnabled(agent, elbName, elbs);
@@ -237,15 +242,21 @@ public class ElbManager {
     elbClient.enableAvailabilityZonesForLoadBalancer(request);
   }
 
-  private boolean isRegistered(String instanceId, String elbName, List<LoadBalancerDescription> elbs) {
+  private Map<String, Set<String>> registeredInstanceIds(List<LoadBalancerDescription> elbs) {
+    Map<String, Set<String>> instanceIds = new HashMap<>();
     for (LoadBalancerDescription elb : elbs) {
+      if (!instanceIds.containsKey(elb.getLoadBalancerName())) {
+        instanceIds.put(elb.getLoadBalancerName(), new HashSet<String>());
+      }
       for (Instance instance : elb.getInstances()) {
-        if (instanceId.equals(instance.getInstanceId()) && elbName.equals(elb.getLoadBalancerName())) {
-          return true;
-        }
+        instanceIds.get(elb.getLoadBalancerName()).add(instance.getInstanceId());
       }
     }
-    return false;
+    return instanceIds;
+  }
+
+  private boolean isRegistered(String instanceId, String elbName, Map<String, Set<String>> registeredInstances) {
+    return registeredInstances.containsKey(elbName) && registeredInstances.get(elbName).contains(instanceId);
   }
 
   private void deregisterOldInstances(List<LoadBalancerDescription> elbs, BaragonGroup group) {
@@ -270,12 +281,20 @@ public class ElbManager {
   }
 
   private List<DeregisterInstancesFromLoadBalancerRequest> deregisterRequests(BaragonGroup group, Collection<BaragonAgentMetadata> agents, List<LoadBalancerDescription> elbs) {
-    List<String> agentInstances = agentInstanceIds(agents);
+    Set<String> agentInstances = agentInstanceIds(agents);
+    Map<String, BaragonKnownAgentMetadata> knownAgents = null;
     List<DeregisterInstancesFromLoadBalancerRequest> requests = new ArrayList<>();
     for (LoadBalancerDescription elb : elbs) {
       if (group.getSources().contains(elb.getLoadBalancerName())) {
         for (Instance instance : elb.getInstances()) {
-          if (!agentInstances.contains(instance.getInstanceId()) && canDeregisterAgent(group, instance)) {
+          if (agentInstances.contains(instance.getInstanceId())) {
+            continue;
+          }
+          if (knownAgents == null) {
+            // read once per group rather than once per instance
+            knownAgents = knownAgentsDatastore.getKnownAgentsByInstanceId(group.getName());
+          }
+          if (canDeregisterAgent(knownAgents, instance)) {
             List<Instance> instanceList = new ArrayList<>(1);
             instanceList.add(instance);
             requests.add(new DeregisterInstancesFromLoadBalancerRequest(elb.getLoadBalancerName(), instanceList));
@@ -287,8 +306,8 @@ public class ElbManager {
     return requests;
   }
 
-  private boolean canDeregisterAgent(BaragonGroup group, Instance instance) {
-    Optional<BaragonKnownAgentMetadata>  agent = knownAgent(group, instance);
+  private boolean canDeregisterAgent(Map<String, BaragonKnownAgentMetadata> knownAgents, Instance instance) {
+    Optional<BaragonKnownAgentMetadata> agent = Optional.fromNullable(knownAgents.get(instance.getInstanceId()));
     if (!agent.isPresent()) {
       return true;
     } else {
@@ -302,8 +321,8 @@ public class ElbManager {
     }
   }
 
-  private List<String> agentInstanceIds(Collection<BaragonAgentMetadata> agents) {
-    List<String> instanceIds = new ArrayList<>();
+  private Set<String> agentInstanceIds(Collection<BaragonAgentMetadata> agents) {
+    Set<String> instanceIds = new HashSet<>();
     for (BaragonAgentMetadata agent : agents) {
       if (agent.getEc2().getInstanceId().isPresent()) {
         instanceIds.add(agent.getEc2().getInstanceId().get());
@@ -329,14 +348,4 @@ public class ElbManager {
     }
     return (instanceIsHealthy && healthyCount == 1);
   }
-
-  private Optional<BaragonKnownAgentMetadata> knownAgent(BaragonGroup group, Instance instance) {
-    Collection<BaragonKnownAgentMetadata> knownAgents = knownAgentsDatastore.getKnownAgentsMetadata(group.getName());
-    for (BaragonKnownAgentMetadata agent : knownAgents) {
-      if (agent.getEc2().getInstanceId().isPresent() && agent.getEc2().getInstanceId().get().equals(instance.getInstanceId())) {
-        return Optional.of(agent);
-      }
-    }
-    return Optional.absent();
-  }
 }
@@ -1,6 +1,9 @@
 package com.hubspot.baragon.managers;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -10,20 +13,26 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.hubspot.baragon.BaragonDataModule;
 import com.hubspot.baragon.data.BaragonAgentResponseDatastore;
 import com.hubspot.baragon.data.BaragonLoadBalancerDatastore;
 import com.hubspot.baragon.data.BaragonRequestDatastore;
 import com.hubspot.baragon.data.BaragonStateDatastore;
+import com.hubspot.baragon.data.ZkTransaction;
 import com.hubspot.baragon.exceptions.InvalidRequestActionException;
 import com.hubspot.baragon.exceptions.InvalidUpstreamsException;
 import com.hubspot.baragon.exceptions.RequestAlreadyEnqueuedException;
+import com.hubspot.baragon.exceptions.RequestNotCancelableException;
 import com.hubspot.baragon.models.BaragonRequest;
 import com.hubspot.baragon.models.BaragonResponse;
 import com.hubspot.baragon.models.BaragonService;
+import com.hubspot.baragon.models.BaragonStateFormat;
 import com.hubspot.baragon.models.InternalRequestStates;
 import com.hubspot.baragon.models.InternalStatesMap;
 import com.hubspot.baragon.models.QueuedRequestId;
 import com.hubspot.baragon.models.RequestAction;
+import com.hubspot.baragon.models.UpstreamInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,14 +43,23 @@ public class RequestManager {
   private final BaragonLoadBalancerDatastore loadBalancerDatastore;
   private final BaragonStateDatastore stateDatastore;
   private final BaragonAgentResponseDatastore agentResponseDatastore;
+  private final boolean incrementalStateUpdates;
+  private final int stateNodeMaxChunkBytes;
+  private final BaragonStateFormat stateNodeFormat;
 
   @Inject
   public RequestManager(BaragonRequestDatastore requestDatastore, BaragonLoadBalancerDatastore loadBalancerDatastore,
-                        BaragonStateDatastore stateDatastore, BaragonAgentResponseDatastore agentResponseDatastore) {
+                        BaragonStateDatastore stateDatastore, BaragonAgentResponseDatastore agentResponseDatastore,
+                        @Named(BaragonDataModule.BARAGON_STATE_INCREMENTAL_UPDATES) boolean incrementalStateUpdates,
+                        @Named(BaragonDataModule.BARAGON_STATE_MAX_CHUNK_BYTES) int stateNodeMaxChunkBytes,
+                        @Named(BaragonDataModule.BARAGON_STATE_FORMAT) BaragonStateFormat stateNodeFormat) {
     this.requestDatastore = requestDatastore;
     this.loadBalancerDatastore = loadBalancerDatastore;
     this.stateDatastore = stateDatastore;
     this.agentResponseDatastore = agentResponseDatastore;
+    this.incrementalStateUpdates = incrementalStateUpdates;
+    this.stateNodeMaxChunkBytes = stateNodeMaxChunkBytes;
+    this.stateNodeFormat = stateNodeFormat;
   }
 
   public Optional<BaragonRequest> getRequest(String requestId) {
@@ -72,12 +90,25 @@ public class RequestManager {
     final Optional<InternalRequestStates> maybeStatus = requestDatastore.getRequestState(requestId);
 
     if (!maybeStatus.isPresent()) {
-      return Optional.absent();
+      return requestDatastore.getArchivedResponse(requestId);
     }
 
     return Optional.of(new BaragonResponse(requestId, InternalStatesMap.getRequestState(maybeStatus.get()), requestDatastore.getRequestMessage(requestId), Optional.of(agentResponseDatastore.getLastResponses(requestId))));
   }
 
+  // drops everything stored for a finished request, optionally keeping its final response around
+  public void purgeRequest(String requestId, boolean archive) {
+    if (archive) {
+      final Optional<BaragonResponse> maybeResponse = getResponse(requestId);
+
+      if (maybeResponse.isPresent()) {
+        requestDatastore.archiveResponse(maybeResponse.get());
+      }
+    }
+
+    requestDatastore.deleteRequestHistory(requestId);
+  }
+
   public Map<String, String> getBasePathConflicts(BaragonRequest request) {
     final BaragonService service = request.getLoadBalancerService();
     final Map<String, String> loadBalancerServiceIds = Maps.newHashMap();
@@ -137,7 +168,7 @@ public class RequestManager {
     final Optional<BaragonResponse> maybePreexistingResponse = getResponse(request.getLoadBalancerRequestId());
 
     if (maybePreexistingResponse.isPresent()) {
-      Optional<BaragonRequest> maybePreexistingRequest = requestDatastore.getRequest(request.getLoadBalancerRequestId());
+      Optional<BaragonRequest> maybePreexistingRequest = requestDatastore.getOriginalRequest(request.getLoadBalancerRequestId());
       if (maybePreexistingRequest.isPresent() && !maybePreexistingRequest.get().equals(request)) {
         throw new RequestAlreadyEnqueuedException(request.getLoadBalancerRequestId(), maybePreexistingResponse.get(), String.format("Request %s is already enqueued with different parameters", request.getLoadBalancerRequestId()));
       } else {
@@ -154,49 +185,176 @@ public class RequestManager {
     }
 
     requestDatastore.addRequest(request);
-    requestDatastore.setRequestState(request.getLoadBalancerRequestId(), InternalRequestStates.PENDING);
+    agentResponseDatastore.createResponseSummary(request.getLoadBalancerRequestId());
+    requestDatastore.addRequestState(request.getLoadBalancerRequestId(), InternalRequestStates.PENDING);
 
     final QueuedRequestId queuedRequestId = requestDatastore.enqueueRequest(request);
 
-    requestDatastore.setRequestMessage(request.getLoadBalancerRequestId(), String.format("Queued as %s", queuedRequestId));
+    requestDatastore.addRequestMessage(request.getLoadBalancerRequestId(), String.format("Queued as %s", queuedRequestId));
 
     return getResponse(request.getLoadBalancerRequestId()).get();
   }
 
-  public Optional<InternalRequestStates> cancelRequest(String requestId) {
+  public Optional<InternalRequestStates> cancelRequest(String requestId) throws RequestNotCancelableException {
     final Optional<InternalRequestStates> maybeState = getRequestState(requestId);
 
     if (!maybeState.isPresent() || !InternalStatesMap.isCancelable(maybeState.get())) {
       return maybeState;
     }
 
+    // its changes are being applied as part of another request now, so it shares that request's outcome
+    final Optional<String> maybeCoalescedInto = requestDatastore.getCoalescedInto(requestId);
+    if (maybeCoalescedInto.isPresent()) {
+      final String message = String.format("Request %s can't be cancelled on its own, it was coalesced into %s", requestId, maybeCoalescedInto.get());
+      final BaragonResponse response = new BaragonResponse(requestId, InternalStatesMap.getRequestState(maybeState.get()), Optional.of(message), Optional.of(agentResponseDatastore.getLastResponses(requestId)));
+      throw new RequestNotCancelableException(requestId, response, message);
+    }
+
     requestDatastore.setRequestState(requestId, InternalRequestStates.CANCELLED_SEND_REVERT_REQUESTS);
 
     return Optional.of(InternalRequestStates.CANCELLED_SEND_REVERT_REQUESTS);
   }
 
-  public synchronized void commitRequest(BaragonRequest request) {
+  // merges the pending UPDATE requests queued right behind a pending request into it, stopping at the first one that
+  // can't be merged. Returns the request that should be applied in place of the given one.
+  public BaragonRequest coalesceRequests(BaragonRequest request, List<QueuedRequestId> following) {
+    final String requestId = request.getLoadBalancerRequestId();
+    final BaragonRequest original = requestDatastore.getOriginalRequest(requestId).or(request);
+
+    if (!isCoalescable(original) || following.isEmpty()) {
+      return request;
+    }
+
+    final List<String> followingRequestIds = new ArrayList<>(following.size());
+    for (QueuedRequestId queuedRequestId : following) {
+      followingRequestIds.add(queuedRequestId.getRequestId());
+    }
+
+    final Map<String, InternalRequestStates> states = requestDatastore.getRequestStates(followingRequestIds);
+    final List<QueuedRequestId> coalesced = new ArrayList<>();
+    final List<BaragonRequest> toMerge = new ArrayList<>();
+
+    for (QueuedRequestId queuedRequestId : following) {
+      if (states.get(queuedRequestId.getRequestId()) != InternalRequestStates.PENDING) {
+        break;
+      }
+
+      final Optional<BaragonRequest> maybeRequest = requestDatastore.getRequest(queuedRequestId.getRequestId());
+      if (!maybeRequest.isPresent() || !isCoalescable(maybeRequest.get()) || !maybeRequest.get().getLoadBalancerService().equals(original.getLoadBalancerService())) {
+        break;
+      }
+
+      final Optional<String> maybeCoalescedInto = requestDatastore.getCoalescedInto(queuedRequestId.getRequestId());
+      if (maybeCoalescedInto.isPresent() && !maybeCoalescedInto.get().equals(requestId)) {
+        break;
+      }
+
+      coalesced.add(queuedRequestId);
+      toMerge.add(maybeRequest.get());
+    }
+
+    if (coalesced.isEmpty()) {
+      return request;
+    }
+
+    // keyed by upstream, so whichever request touched an upstream last decides whether it's added or removed
+    final Map<String, UpstreamInfo> addUpstreams = new LinkedHashMap<>();
+    final Map<String, UpstreamInfo> removeUpstreams = new LinkedHashMap<>();
+
+    toMerge.add(0, original);
+    for (BaragonRequest current : toMerge) {
+      // within a single request adds win over removes, the same order agents apply them in
+      for (UpstreamInfo upstreamInfo : current.getRemoveUpstreams()) {
+        addUpstreams.remove(upstreamInfo.getUpstream());
+        removeUpstreams.put(upstreamInfo.getUpstream(), upstreamInfo);
+      }
+      for (UpstreamInfo upstreamInfo : current.getAddUpstreams()) {
+        removeUpstreams.remove(upstreamInfo.getUpstream());
+        addUpstreams.put(upstreamInfo.getUpstream(), upstreamInfo);
+      }
+    }
+
+    final BaragonRequest merged = new BaragonRequest(requestId, original.getLoadBalancerService(), new ArrayList<>(addUpstreams.values()), new ArrayList<>(removeUpstreams.values()),
+        Collections.<UpstreamInfo>emptyList(), Optional.<String>absent(), original.getAction());
+
+    requestDatastore.setCoalescedRequest(original, merged, coalesced);
+
+    for (QueuedRequestId queuedRequestId : coalesced) {
+      requestDatastore.setCoalescedInto(queuedRequestId.getRequestId(), requestId);
+      requestDatastore.setRequestMessage(queuedRequestId.getRequestId(), String.format("Coalesced into %s", requestId));
+    }
+
+    requestDatastore.setRequestMessage(requestId, String.format("Coalesced with %s", followingRequestIds.subList(0, coalesced.size())));
+
+    LOG.info(String.format("Coalesced %d queued requests into %s", coalesced.size(), requestId));
+
+    return merged;
+  }
+
+  // gives every request that was coalesced into this one the same final state, and takes them off the queue
+  public void finishCoalescedRequests(String requestId, InternalRequestStates state) {
+    final List<QueuedRequestId> coalesced = requestDatastore.getCoalescedRequestIds(requestId);
+
+    if (coalesced.isEmpty()) {
+      return;
+    }
+
+    final String message = requestDatastore.getRequestMessage(requestId).or(state.name());
+
+    for (QueuedRequestId queuedRequestId : coalesced) {
+      requestDatastore.setRequestMessage(queuedRequestId.getRequestId(), String.format("Coalesced into %s: %s", requestId, message));
+      requestDatastore.setRequestState(queuedRequestId.getRequestId(), state);
+      requestDatastore.removeQueuedRequest(queuedRequestId);
+    }
+  }
+
+  private static boolean isCoalescable(BaragonRequest request) {
+    return request.getAction().or(RequestAction.UPDATE) == RequestAction.UPDATE
+        && !request.getReplaceServiceId().isPresent()
+        && request.getReplaceUpstreams().isEmpty();
+  }
+
+  public synchronized void commitRequest(BaragonRequest request) throws Exception {
     RequestAction action = request.getAction().or(RequestAction.UPDATE);
     Optional<BaragonService> maybeOriginalService = getOriginalService(request);
 
+    // all of the service, upstream and base path changes are committed atomically
+    final ZkTransaction transaction = stateDatastore.startTransaction();
+
     switch(action) {
       case UPDATE:
       case REVERT:
-        clearChangedBasePaths(request, maybeOriginalService);
-        clearBasePathsFromUnusedLbs(request, maybeOriginalService);
-        removeOldService(request, maybeOriginalService);
-        updateStateDatastore(request);
-        clearBasePathsWithNoUpstreams(request);
+        clearChangedBasePaths(transaction, request, maybeOriginalService);
+        clearBasePathsFromUnusedLbs(transaction, request, maybeOriginalService);
+        removeOldService(transaction, request, maybeOriginalService);
+        if (updateStateDatastore(transaction, request)) {
+          clearBasePaths(transaction, request);
+        }
         break;
       case DELETE:
-        clearChangedBasePaths(request, maybeOriginalService);
-        clearBasePathsFromUnusedLbs(request, maybeOriginalService);
-        deleteRemovedServices(request);
-        clearBasePathsWithNoUpstreams(request);
+        clearChangedBasePaths(transaction, request, maybeOriginalService);
+        clearBasePathsFromUnusedLbs(transaction, request, maybeOriginalService);
+        deleteRemovedServices(transaction, request);
+        clearBasePaths(transaction, request);
         break;
       default:
         LOG.debug(String.format("No updates to commit for request action %s", action));
-        break;
+        return;
+    }
+
+    transaction.commit();
+
+    if (incrementalStateUpdates) {
+      final Set<String> changedServiceIds = Sets.newHashSet(request.getLoadBalancerService().getServiceId());
+      if (request.getReplaceServiceId().isPresent()) {
+        changedServiceIds.add(request.getReplaceServiceId().get());
+      }
+      if (maybeOriginalService.isPresent()) {
+        changedServiceIds.add(maybeOriginalService.get().getServiceId());
+      }
+      stateDatastore.updateStateNode(changedServiceIds, stateNodeMaxChunkBytes, stateNodeFormat);
+    } else {
+      stateDatastore.updateStateNode(stateNodeMaxChunkBytes, stateNodeFormat);
     }
   }
 
@@ -211,67 +369,45 @@ public class RequestManager {
     return maybeOriginalService;
   }
 
-  private void deleteRemovedServices(BaragonRequest request) {
-    stateDatastore.removeService(request.getLoadBalancerService().getServiceId());
-    if (request.getReplaceServiceId().isPresent() && stateDatastore.getService(request.getReplaceServiceId().get()).isPresent()) {
-      stateDatastore.removeService(request.getReplaceServiceId().get());
+  private void deleteRemovedServices(ZkTransaction transaction, BaragonRequest request) {
+    stateDatastore.removeService(transaction, request.getLoadBalancerService().getServiceId());
+    if (request.getReplaceServiceId().isPresent()) {
+      stateDatastore.removeService(transaction, request.getReplaceServiceId().get());
     }
-    stateDatastore.updateStateNode();
   }
 
-  private void updateStateDatastore(BaragonRequest request) {
-    try {
-      stateDatastore.addService(request.getLoadBalancerService());
-      if (!request.getReplaceUpstreams().isEmpty()) {
-        stateDatastore.setUpstreams(request.getLoadBalancerService().getServiceId(), request.getReplaceUpstreams());
-      } else {
-        stateDatastore.removeUpstreams(request.getLoadBalancerService().getServiceId(), request.getRemoveUpstreams());
-        stateDatastore.addUpstreams(request.getLoadBalancerService().getServiceId(), request.getAddUpstreams());
-      }
-      stateDatastore.updateStateNode();
-    } catch (Exception e) {
-      LOG.error(String.format("Error updating state datastore %s", e));
-    }
+  // returns true if the service is left without any upstreams
+  private boolean updateStateDatastore(ZkTransaction transaction, BaragonRequest request) {
+    stateDatastore.addService(transaction, request.getLoadBalancerService());
+    return stateDatastore.updateUpstreams(transaction, request.getLoadBalancerService().getServiceId(), request.getReplaceUpstreams(), request.getRemoveUpstreams(), request.getAddUpstreams());
   }
 
-  private void removeOldService(BaragonRequest request, Optional<BaragonService> maybeOriginalService) {
+  private void removeOldService(ZkTransaction transaction, BaragonRequest request, Optional<BaragonService> maybeOriginalService) {
     if (maybeOriginalService.isPresent() && !maybeOriginalService.get().getServiceId().equals(request.getLoadBalancerService().getServiceId())) {
-      stateDatastore.removeService(maybeOriginalService.get().getServiceId());
+      stateDatastore.removeService(transaction, maybeOriginalService.get().getServiceId());
     }
   }
 
-  private void clearBasePathsWithNoUpstreams(BaragonRequest request) {
-    try {
-      if (stateDatastore.getUpstreamsMap(request.getLoadBalancerService().getServiceId()).isEmpty()) {
-        for (String loadbalancerGroup : request.getLoadBalancerService().getLoadBalancerGroups()) {
-          loadBalancerDatastore.clearBasePath(loadbalancerGroup, request.getLoadBalancerService().getServiceBasePath());
-        }
-      }
-    } catch (Exception e) {
-      LOG.info(String.format("Error clearing base path %s", e));
+  private void clearBasePaths(ZkTransaction transaction, BaragonRequest request) {
+    for (String loadbalancerGroup : request.getLoadBalancerService().getLoadBalancerGroups()) {
+      loadBalancerDatastore.clearBasePath(transaction, loadbalancerGroup, request.getLoadBalancerService().getServiceBasePath());
     }
   }
 
-  private void clearChangedBasePaths(BaragonRequest request, Optional<BaragonService> maybeOriginalService) {
+  private void clearChangedBasePaths(ZkTransaction transaction, BaragonRequest request, Optional<BaragonService> maybeOriginalService) {
     if (maybeOriginalService.isPresent() && !maybeOriginalService.get().getServiceBasePath().equals(request.getLoadBalancerService().getServiceBasePath())) {
       for (String loadBalancerGroup : maybeOriginalService.get().getLoadBalancerGroups()) {
-        loadBalancerDatastore.clearBasePath(loadBalancerGroup, maybeOriginalService.get().getServiceBasePath());
+        loadBalancerDatastore.clearBasePath(transaction, loadBalancerGroup, maybeOriginalService.get().getServiceBasePath());
       }
     }
   }
 
-  private void clearBasePathsFromUnusedLbs(BaragonRequest request, Optional<BaragonService> maybeOriginalService) {
+  private void clearBasePathsFromUnusedLbs(ZkTransaction transaction, BaragonRequest request, Optional<BaragonService> maybeOriginalService) {
     if (maybeOriginalService.isPresent()) {
-      Set<String> removedLbGroups = maybeOriginalService.get().getLoadBalancerGroups();
+      Set<String> removedLbGroups = new HashSet<>(maybeOriginalService.get().getLoadBalancerGroups());
       removedLbGroups.removeAll(request.getLoadBalancerService().getLoadBalancerGroups());
-      if (!removedLbGroups.isEmpty()) {
-        try {
-          for (String loadbalancerGroup : removedLbGroups) {
-            loadBalancerDatastore.clearBasePath(loadbalancerGroup, maybeOriginalService.get().getServiceBasePath());
-          }
-        } catch (Exception e) {
-          LOG.info(String.format("Error clearing base path %s", e));
-        }
+      for (String loadbalancerGroup : removedLbGroups) {
+        loadBalancerDatastore.clearBasePath(transaction, loadbalancerGroup, maybeOriginalService.get().getServiceBasePath());
       }
     }
   }
@@ -2,146 +2,251 @@ package com.hubspot.baragon.utils;
 
 import com.google.common.base.Function;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.hubspot.baragon.BaragonDataModule;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.api.BackgroundCallback;
 import org.apache.curator.framework.api.CuratorEvent;
 import org.apache.curator.utils.ZKPaths;
 import org.apache.log4j.Logger;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CountDownLatch;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 public class ZkParallelFetcher {
   private static final Logger LOG = Logger.getLogger(ZkParallelFetcher.class);
-  private static final int TIMEOUT_SECONDS = 10;
 
   private final CuratorFramework curatorFramework;
+  private final int maxInFlight;
+  private final long timeoutMillis;
 
   @Inject
-  public ZkParallelFetcher(CuratorFramework framework) {
+  public ZkParallelFetcher(CuratorFramework framework,
+                           @Named(BaragonDataModule.BARAGON_ZK_FETCH_MAX_IN_FLIGHT) int maxInFlight,
+                           @Named(BaragonDataModule.BARAGON_ZK_FETCH_TIMEOUT_MS) long timeoutMillis) {
     this.curatorFramework = framework;
+    this.maxInFlight = maxInFlight;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  // handed each result as it arrives, always on the thread that started the fetch
+  public interface ResultCallback<T> {
+    void onResult(String path, T result) throws Exception;
   }
 
   public <T> Map<String, T> fetchDataInParallel(Collection<String> paths, Function<byte[], T> transformFunction) throws Exception {
-    Map<String, T> dataMap = new ConcurrentHashMap<>();
-    CountDownLatch countDownLatch = new CountDownLatch(paths.size());
-    Queue<KeeperException> exceptions = new ConcurrentLinkedQueue<>();
-    BackgroundCallback callback = new GetDataCallback<>(dataMap, transformFunction, countDownLatch, exceptions);
+    return fetchDataInParallel(paths, transformFunction, null);
+  }
 
-    for (String path : paths) {
-      curatorFramework.getData().inBackground(callback).forPath(path);
-    }
+  // leaves the given watcher on every node that was read
+  public <T> Map<String, T> fetchDataInParallel(Collection<String> paths, Function<byte[], T> transformFunction, Watcher watcher) throws Exception {
+    return fetchDataInParallel(paths, transformFunction, watcher, false);
+  }
+
+  // for nodes whose names aren't unique across the given paths, results are keyed by full path
+  public <T> Map<String, T> fetchDataByPathInParallel(Collection<String> paths, Function<byte[], T> transformFunction) throws Exception {
+    return fetchDataInParallel(paths, transformFunction, null, true);
+  }
+
+  private <T> Map<String, T> fetchDataInParallel(Collection<String> paths, final Function<byte[], T> transformFunction, Watcher watcher, final boolean keyByPath) throws Exception {
+    final Map<String, T> dataMap = new HashMap<>();
+
+    throwFirstFailure(streamDataInParallel(paths, watcher, new ResultCallback<byte[]>() {
+      @Override
+      public void onResult(String path, byte[] data) {
+        if (data == null) {
+          return;
+        }
+
+        final T value;
+
+        try {
+          value = transformFunction.apply(data);
+        } catch (RuntimeException e) {
+          LOG.warn(String.format("Skipping %s, failed to transform its data", path), e);
+          return;
+        }
+
+        if (value != null) {
+          dataMap.put(keyByPath ? path : ZKPaths.getNodeFromPath(path), value);
+        }
+      }
+    }));
 
-    waitAndThrowExceptions(countDownLatch, exceptions);
     return dataMap;
   }
 
   public Map<String, Collection<String>> fetchChildrenInParallel(Collection<String> paths) throws Exception {
-    // Didn't use Guava Multimap because we need thread-safety
-    Map<String, Collection<String>> childMap = new ConcurrentHashMap<>();
-    CountDownLatch countDownLatch = new CountDownLatch(paths.size());
-    Queue<KeeperException> exceptions = new ConcurrentLinkedQueue<>();
-    BackgroundCallback callback = new GetChildrenCallback(childMap, countDownLatch, exceptions);
-
-    for (String path : paths) {
-      curatorFramework.getChildren().inBackground(callback).forPath(path);
-    }
+    final Map<String, Collection<String>> childMap = new HashMap<>();
+
+    throwFirstFailure(streamChildrenInParallel(paths, new ResultCallback<List<String>>() {
+      @Override
+      public void onResult(String path, List<String> children) {
+        childMap.put(ZKPaths.getNodeFromPath(path), new HashSet<>(children));
+      }
+    }));
 
-    waitAndThrowExceptions(countDownLatch, exceptions);
     return childMap;
   }
 
-  private void waitAndThrowExceptions(CountDownLatch countDownLatch, Queue<KeeperException> exceptions) throws Exception {
-    if (!countDownLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
-      throw new TimeoutException("ZkChildrenFetcher timed out waiting for data");
-    }
+  // Nodes that don't exist are skipped. Returns the paths that couldn't be read along with why, including a
+  // TimeoutException for every path that hadn't been answered in time and a callback's exception for its path.
+  public Map<String, Exception> streamDataInParallel(Collection<String> paths, final Watcher watcher, ResultCallback<byte[]> callback) throws InterruptedException {
+    return streamInParallel(paths, new BackgroundOperation<byte[]>() {
+      @Override
+      public void start(String path, BackgroundCallback backgroundCallback) throws Exception {
+        if (watcher != null) {
+          curatorFramework.getData().usingWatcher(watcher).inBackground(backgroundCallback).forPath(path);
+        } else {
+          curatorFramework.getData().inBackground(backgroundCallback).forPath(path);
+        }
+      }
+
+      @Override
+      public byte[] getResult(CuratorEvent event) {
+        return event.getData();
+      }
+    }, callback);
+  }
+
+  // same contract as streamDataInParallel
+  public Map<String, Exception> streamChildrenInParallel(Collection<String> paths, ResultCallback<List<String>> callback) throws InterruptedException {
+    return streamInParallel(paths, new BackgroundOperation<List<String>>() {
+      @Override
+      public void start(String path, BackgroundCallback backgroundCallback) throws Exception {
+        curatorFramework.getChildren().inBackground(backgroundCallback).forPath(path);
+      }
 
-    for (KeeperException exception : exceptions) {
-      LOG.error(exception);
+      @Override
+      public List<String> getResult(CuratorEvent event) {
+        return event.getChildren();
+      }
+    }, callback);
+  }
+
+  // same contract as streamDataInParallel
+  public Map<String, Exception> streamStatInParallel(Collection<String> paths, ResultCallback<Stat> callback) throws InterruptedException {
+    return streamInParallel(paths, new BackgroundOperation<Stat>() {
+      @Override
+      public void start(String path, BackgroundCallback backgroundCallback) throws Exception {
+        curatorFramework.checkExists().inBackground(backgroundCallback).forPath(path);
+      }
+
+      @Override
+      public Stat getResult(CuratorEvent event) {
+        return event.getStat();
+      }
+    }, callback);
+  }
+
+  public static void throwFirstFailure(Map<String, Exception> failures) throws Exception {
+    if (failures.isEmpty()) {
+      return;
     }
 
-    if (!exceptions.isEmpty()) {
-      throw exceptions.peek();
+    for (Map.Entry<String, Exception> failure : failures.entrySet()) {
+      LOG.error(String.format("Failed to read %s", failure.getKey()), failure.getValue());
     }
+
+    throw failures.values().iterator().next();
   }
 
-  private static class GetDataCallback<T> implements BackgroundCallback {
-    private final Map<String, T> dataMap;
-    private final Function<byte[], T> transformFunction;
-    private final CountDownLatch countDownLatch;
-    private final Queue<KeeperException> exceptions;
-
-    private GetDataCallback(Map<String, T> dataMap,
-                            Function<byte[], T> transformFunction,
-                            CountDownLatch countDownLatch,
-                            Queue<KeeperException> exceptions) {
-      this.dataMap = dataMap;
-      this.transformFunction = transformFunction;
-      this.countDownLatch = countDownLatch;
-      this.exceptions = exceptions;
-    }
+  private <T> Map<String, Exception> streamInParallel(Collection<String> paths, BackgroundOperation<T> operation, ResultCallback<T> callback) throws InterruptedException {
+    final Map<String, Exception> failures = new LinkedHashMap<>();
+    final BlockingQueue<Completion> completed = new LinkedBlockingQueue<>();
+    final Set<String> outstanding = new HashSet<>();
+    final Iterator<String> remaining = new LinkedHashSet<>(paths).iterator();
+    final long deadline = System.currentTimeMillis() + timeoutMillis;
+
+    while (remaining.hasNext() || !outstanding.isEmpty()) {
+      // keep at most maxInFlight requests outstanding, the rest are sent as results come back
+      while (remaining.hasNext() && outstanding.size() < maxInFlight) {
+        final String path = remaining.next();
+
+        try {
+          operation.start(path, new BackgroundCallback() {
+            @Override
+            public void processResult(CuratorFramework client, CuratorEvent event) {
+              completed.add(new Completion(path, event));
+            }
+          });
+          outstanding.add(path);
+        } catch (Exception e) {
+          failures.put(path, e);
+        }
+      }
+
+      if (outstanding.isEmpty()) {
+        continue;
+      }
 
-    @Override
-    public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
-      try {
-        KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
-
-        switch (code) {
-          case OK:
-            T data = event.getData() == null ? null : transformFunction.apply(event.getData());
-            dataMap.put(ZKPaths.getNodeFromPath(event.getPath()), data);
-            break;
-          case NONODE:
-            // In this case there was a race condition in which the child node was deleted before we asked for data.
-            break;
-          default:
-            exceptions.add(KeeperException.create(code, event.getPath()));
+      final long remainingMillis = deadline - System.currentTimeMillis();
+      final Completion completion = remainingMillis > 0 ? completed.poll(remainingMillis, TimeUnit.MILLISECONDS) : null;
+
+      if (completion == null) {
+        final TimeoutException timeout = new TimeoutException(String.format("ZkParallelFetcher timed out after %sms waiting for data", timeoutMillis));
+
+        for (String path : outstanding) {
+          failures.put(path, timeout);
         }
-      } finally {
-        countDownLatch.countDown();
+        while (remaining.hasNext()) {
+          failures.put(remaining.next(), timeout);
+        }
+
+        break;
+      }
+
+      final String path = completion.path;
+      outstanding.remove(path);
+
+      final KeeperException.Code code = KeeperException.Code.get(completion.event.getResultCode());
+
+      switch (code) {
+        case OK:
+          try {
+            callback.onResult(path, operation.getResult(completion.event));
+          } catch (Exception e) {
+            failures.put(path, e);
+          }
+          break;
+        case NONODE:
+          // In this case there was a race condition in which the node was deleted before we asked for it.
+          break;
+        default:
+          failures.put(path, KeeperException.create(code, path));
       }
     }
+
+    return failures;
   }
 
-  private static class GetChildrenCallback implements BackgroundCallback {
-    private final Map<String, Collection<String>> childMap;
-    private final CountDownLatch countDownLatch;
-    private final Queue<KeeperException> exceptions;
-
-    private GetChildrenCallback(Map<String, Collection<String>> childMap,
-                                CountDownLatch countDownLatch,
-                                Queue<KeeperException> exceptions) {
-      this.childMap = childMap;
-      this.countDownLatch = countDownLatch;
-      this.exceptions = exceptions;
-    }
+  private static class Completion {
+    private final String path;
+    private final CuratorEvent event;
 
-    @Override
-    public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
-      try {
-        KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
-
-        switch (code) {
-          case OK:
-            childMap.put(ZKPaths.getNodeFromPath(event.getPath()), new HashSet<>(event.getChildren()));
-            break;
-          case NONODE:
-            // In this case there was a race condition in which the child node was deleted before we asked for data.
-            break;
-          default:
-            exceptions.add(KeeperException.create(code, event.getPath()));
-        }
-      } finally {
-        countDownLatch.countDown();
-      }
+    private Completion(String path, CuratorEvent event) {
+      this.path = path;
+      this.event = event;
     }
   }
+
+  private interface BackgroundOperation<T> {
+    void start(String path, BackgroundCallback backgroundCallback) throws Exception;
+
+    T getResult(CuratorEvent event);
+  }
 }
@@ -0,0 +1,264 @@
+package com.hubspot.baragon.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.hubspot.baragon.BaragonDataModule;
+
+// Serves node data and child lists from memory. Every cached entry is backed by a zookeeper watch and dropped as
+// soon as the watch fires; local writes should also call invalidate() so they are visible to this process right away.
+// Both caches are bounded, an evicted entry is simply read again and its leftover watch removes nothing when it fires.
+@Singleton
+public class ZkReadCache {
+  private static final Logger LOG = LoggerFactory.getLogger(ZkReadCache.class);
+
+  public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+  private final CuratorFramework curatorFramework;
+  private final ZkParallelFetcher zkFetcher;
+  private final boolean enabled;
+
+  private final ConcurrentMap<String, Optional<byte[]>> dataCache;
+  private final ConcurrentMap<String, List<String>> childrenCache;
+
+  // bumped on every invalidation, a read that raced with one is returned but not cached
+  private final AtomicLong generation = new AtomicLong();
+
+  @Inject
+  public ZkReadCache(CuratorFramework curatorFramework,
+                     ZkParallelFetcher zkFetcher,
+                     @Named(BaragonDataModule.BARAGON_ZK_READ_CACHE_ENABLED) boolean enabled) {
+    this(curatorFramework, zkFetcher, enabled, DEFAULT_MAX_ENTRIES);
+  }
+
+  public ZkReadCache(CuratorFramework curatorFramework, ZkParallelFetcher zkFetcher, boolean enabled, int maxEntries) {
+    this.curatorFramework = curatorFramework;
+    this.zkFetcher = zkFetcher;
+    this.enabled = enabled;
+    this.dataCache = CacheBuilder.newBuilder().maximumSize(maxEntries).<String, Optional<byte[]>>build().asMap();
+    this.childrenCache = CacheBuilder.newBuilder().maximumSize(maxEntries).<String, List<String>>build().asMap();
+
+    if (enabled) {
+      curatorFramework.getConnectionStateListenable().addListener(new ConnectionStateListener() {
+        @Override
+        public void stateChanged(CuratorFramework client, ConnectionState newState) {
+          // watches may have been lost or may fire late, start over
+          invalidateAll();
+        }
+      });
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public Optional<byte[]> getData(String path) throws Exception {
+    if (!enabled) {
+      return readData(path);
+    }
+
+    final Optional<byte[]> cached = dataCache.get(path);
+
+    if (cached != null) {
+      return cached;
+    }
+
+    final long startGeneration = generation.get();
+
+    Optional<byte[]> data;
+
+    try {
+      data = Optional.of(curatorFramework.getData().usingWatcher(watcher).forPath(path));
+    } catch (KeeperException.NoNodeException nne) {
+      if (curatorFramework.checkExists().usingWatcher(watcher).forPath(path) != null) {
+        // created in the meantime, the exists watch will fire on the next change
+        return readData(path);
+      }
+      data = Optional.absent();
+    }
+
+    cacheIfCurrent(dataCache, path, data, startGeneration);
+
+    return data;
+  }
+
+  public List<String> getChildren(String path) throws Exception {
+    if (!enabled) {
+      return readChildren(path);
+    }
+
+    final List<String> cached = childrenCache.get(path);
+
+    if (cached != null) {
+      return cached;
+    }
+
+    final long startGeneration = generation.get();
+
+    List<String> children;
+
+    try {
+      children = Collections.unmodifiableList(new ArrayList<>(curatorFramework.getChildren().usingWatcher(watcher).forPath(path)));
+    } catch (KeeperException.NoNodeException nne) {
+      if (curatorFramework.checkExists().usingWatcher(watcher).forPath(path) != null) {
+        return readChildren(path);
+      }
+      children = Collections.emptyList();
+    }
+
+    cacheIfCurrent(childrenCache, path, children, startGeneration);
+
+    return children;
+  }
+
+  // same contract as ZkParallelFetcher.fetchDataInParallel, results are keyed by node name
+  public <T> Map<String, T> getDataInParallel(Collection<String> paths, Function<byte[], T> transformFunction) throws Exception {
+    if (!enabled) {
+      return zkFetcher.fetchDataInParallel(paths, transformFunction);
+    }
+
+    final Map<String, T> result = new HashMap<>(paths.size());
+    final Map<String, String> missingNodeToPath = new HashMap<>();
+
+    for (String path : paths) {
+      final Optional<byte[]> cached = dataCache.get(path);
+
+      if (cached == null) {
+        missingNodeToPath.put(ZKPaths.getNodeFromPath(path), path);
+      } else if (cached.isPresent()) {
+        result.put(ZKPaths.getNodeFromPath(path), transformFunction.apply(cached.get()));
+      }
+    }
+
+    if (!missingNodeToPath.isEmpty()) {
+      final long startGeneration = generation.get();
+      final Map<String, byte[]> fetched = zkFetcher.fetchDataInParallel(missingNodeToPath.values(), Functions.<byte[]>identity(), watcher);
+
+      for (Map.Entry<String, byte[]> entry : fetched.entrySet()) {
+        cacheIfCurrent(dataCache, missingNodeToPath.get(entry.getKey()), Optional.of(entry.getValue()), startGeneration);
+        result.put(entry.getKey(), transformFunction.apply(entry.getValue()));
+      }
+    }
+
+    return result;
+  }
+
+  public void invalidate(String path) {
+    if (!enabled) {
+      return;
+    }
+
+    synchronized (generation) {
+      generation.incrementAndGet();
+      dataCache.remove(path);
+      childrenCache.remove(path);
+      childrenCache.remove(ZKPaths.getPathAndNode(path).getPath());
+    }
+  }
+
+  public void invalidateAll() {
+    synchronized (generation) {
+      generation.incrementAndGet();
+      dataCache.clear();
+      childrenCache.clear();
+    }
+  }
+
+  // number of cached data and children entries
+  long size() {
+    return dataCache.size() + childrenCache.size();
+  }
+
+  boolean isCached(String path) {
+    return dataCache.containsKey(path) || childrenCache.containsKey(path);
+  }
+
+  private <T> void cacheIfCurrent(ConcurrentMap<String, T> cache, String path, T value, long startGeneration) {
+    synchronized (generation) {
+      if (generation.get() == startGeneration) {
+        cache.put(path, value);
+      }
+    }
+  }
+
+  private Optional<byte[]> readData(String path) throws Exception {
+    try {
+      return Optional.of(curatorFramework.getData().forPath(path));
+    } catch (KeeperException.NoNodeException nne) {
+      return Optional.absent();
+    }
+  }
+
+  private List<String> readChildren(String path) throws Exception {
+    try {
+      return curatorFramework.getChildren().forPath(path);
+    } catch (KeeperException.NoNodeException nne) {
+      return Collections.emptyList();
+    }
+  }
+
+  // events for a namespaced client may carry the full path
+  private String stripNamespace(String path) {
+    final String namespace = curatorFramework.getNamespace();
+
+    if (Strings.isNullOrEmpty(namespace)) {
+      return path;
+    }
+
+    final String prefix = ZKPaths.makePath("/", namespace);
+
+    if (path.equals(prefix)) {
+      return "/";
+    } else if (path.startsWith(prefix + "/")) {
+      return path.substring(prefix.length());
+    } else {
+      return path;
+    }
+  }
+
+  private final Watcher watcher = new Watcher() {
+    @Override
+    public void process(WatchedEvent event) {
+      if (event.getType() == Event.EventType.None) {
+        if (event.getState() != Event.KeeperState.SyncConnected) {
+          invalidateAll();
+        }
+        return;
+      }
+
+      final String path = stripNamespace(event.getPath());
+      LOG.trace("{} for {}, invalidating", event.getType(), path);
+
+      synchronized (generation) {
+        generation.incrementAndGet();
+        dataCache.remove(path);
+        childrenCache.remove(path);
+      }
+    }
+  };
+}
@@ -0,0 +1,119 @@
+package com.hubspot.baragon.worker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.hubspot.baragon.config.RequestPurgingConfiguration;
+import com.hubspot.baragon.data.BaragonRequestDatastore;
+import com.hubspot.baragon.managers.RequestManager;
+import com.hubspot.baragon.models.InternalRequestStates;
+import com.hubspot.baragon.models.InternalStatesMap;
+import com.hubspot.baragon.models.QueuedRequestId;
+
+// Deletes the history of finished requests that fall outside the configured retention, and archived responses
+// that have outlived theirs. Requests that are still queued are never touched.
+@Singleton
+public class BaragonRequestPurgerWorker implements Runnable {
+  private static final Logger LOG = LoggerFactory.getLogger(BaragonRequestPurgerWorker.class);
+
+  private final RequestManager requestManager;
+  private final BaragonRequestDatastore requestDatastore;
+  private final RequestPurgingConfiguration configuration;
+
+  @Inject
+  public BaragonRequestPurgerWorker(RequestManager requestManager,
+                                    BaragonRequestDatastore requestDatastore,
+                                    RequestPurgingConfiguration configuration) {
+    this.requestManager = requestManager;
+    this.requestDatastore = requestDatastore;
+    this.configuration = configuration;
+  }
+
+  @Override
+  public void run() {
+    try {
+      purgeRequests();
+      purgeArchivedResponses();
+    } catch (Exception e) {
+      LOG.error("Caught exception while purging request history", e);
+    }
+  }
+
+  private void purgeRequests() {
+    final Set<String> queuedRequestIds = new HashSet<>();
+
+    for (QueuedRequestId queuedRequestId : requestManager.getQueuedRequestIds()) {
+      queuedRequestIds.add(queuedRequestId.getRequestId());
+    }
+
+    final List<String> finishedRequestIds = new ArrayList<>();
+
+    for (Map.Entry<String, InternalRequestStates> entry : requestDatastore.getRequestStates(requestDatastore.getRequestIds()).entrySet()) {
+      if (InternalStatesMap.isRemovable(entry.getValue()) && !queuedRequestIds.contains(entry.getKey())) {
+        finishedRequestIds.add(entry.getKey());
+      }
+    }
+
+    final List<String> expired = expired(requestDatastore.getRequestStateUpdatedAt(finishedRequestIds), configuration.getRetentionHours(), configuration.getMaxRetainedRequests());
+
+    for (String requestId : expired) {
+      try {
+        requestManager.purgeRequest(requestId, configuration.isArchiveEnabled());
+      } catch (Exception e) {
+        LOG.warn(String.format("Failed to purge request %s", requestId), e);
+      }
+    }
+
+    if (!expired.isEmpty()) {
+      LOG.info("Purged {} of {} finished requests", expired.size(), finishedRequestIds.size());
+    }
+  }
+
+  private void purgeArchivedResponses() {
+    final List<String> expired = expired(requestDatastore.getArchivedAt(requestDatastore.getArchivedResponseIds()), configuration.getArchiveRetentionHours(), Integer.MAX_VALUE);
+
+    for (String requestId : expired) {
+      requestDatastore.deleteArchivedResponse(requestId);
+    }
+
+    if (!expired.isEmpty()) {
+      LOG.info("Purged {} archived responses", expired.size());
+    }
+  }
+
+  // everything older than the retention period, plus whatever is left beyond the newest maxRetained
+  private static List<String> expired(final Map<String, Long> updatedAt, int retentionHours, int maxRetained) {
+    final List<String> newestFirst = new ArrayList<>(updatedAt.keySet());
+
+    Collections.sort(newestFirst, new Comparator<String>() {
+      @Override
+      public int compare(String o1, String o2) {
+        return Long.compare(updatedAt.get(o2), updatedAt.get(o1));
+      }
+    });
+
+    final long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHours);
+    final List<String> expired = new ArrayList<>();
+
+    for (int i = 0; i < newestFirst.size(); i++) {
+      final String id = newestFirst.get(i);
+
+      if (i >= maxRetained || updatedAt.get(id) < cutoff) {
+        expired.add(id);
+      }
+    }
+
+    return expired;
+  }
+}
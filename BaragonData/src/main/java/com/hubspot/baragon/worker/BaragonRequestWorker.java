@@ -1,24 +1,31 @@
 package com.hubspot.baragon.worker;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
-import com.hubspot.baragon.models.BaragonAgentMetadata;
 import com.hubspot.baragon.models.RequestAction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
-import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import com.hubspot.baragon.BaragonDataModule;
 import com.hubspot.baragon.managers.AgentManager;
+import com.hubspot.baragon.managers.AgentManager.OutgoingRequests;
 import com.hubspot.baragon.managers.RequestManager;
 import com.hubspot.baragon.models.AgentRequestType;
 import com.hubspot.baragon.models.AgentResponse;
@@ -28,20 +35,36 @@ import com.hubspot.baragon.models.InternalStatesMap;
 import com.hubspot.baragon.models.QueuedRequestId;
 import com.hubspot.baragon.utils.JavaUtils;
 
+@Singleton
 public class BaragonRequestWorker implements Runnable {
   private static final Logger LOG = LoggerFactory.getLogger(BaragonRequestWorker.class);
 
+  private static final int SERVICE_LOCK_STRIPES = 1024;
+
   private final AgentManager agentManager;
   private final RequestManager requestManager;
   private final AtomicLong workerLastStartAt;
+  private final ExecutorService executorService;
+  private final boolean coalesceUpdates;
+  private final Striped<Lock> serviceLocks = Striped.lazyWeakLock(SERVICE_LOCK_STRIPES);
+  private final Object basePathLock = new Object();
 
   @Inject
   public BaragonRequestWorker(AgentManager agentManager,
                               RequestManager requestManager,
-                              @Named(BaragonDataModule.BARAGON_SERVICE_WORKER_LAST_START) AtomicLong workerLastStartAt) {
+                              @Named(BaragonDataModule.BARAGON_SERVICE_WORKER_LAST_START) AtomicLong workerLastStartAt,
+                              @Named(BaragonDataModule.BARAGON_SERVICE_WORKER_EXECUTOR) ExecutorService executorService,
+                              @Named(BaragonDataModule.BARAGON_SERVICE_WORKER_COALESCE_UPDATES) boolean coalesceUpdates) {
     this.agentManager = agentManager;
     this.requestManager = requestManager;
     this.workerLastStartAt = workerLastStartAt;
+    this.executorService = executorService;
+    this.coalesceUpdates = coalesceUpdates;
+  }
+
+  // held while a request for this service is being handled, so that state transitions for a service never interleave
+  public Lock getServiceLock(String serviceId) {
+    return serviceLocks.get(serviceId);
   }
 
   private String buildResponseString(Map<String, Collection<AgentResponse>> agentResponses, AgentRequestType requestType) {
@@ -72,33 +95,42 @@ public class BaragonRequestWorker implements Runnable {
     }
   }
 
-  private InternalRequestStates handleState(InternalRequestStates currentState, BaragonRequest request) {
-    switch (currentState) {
-      case PENDING:
-        final Map<String, String> conflicts = requestManager.getBasePathConflicts(request);
+  private InternalRequestStates handlePending(BaragonRequest request) {
+    final Map<String, String> conflicts = requestManager.getBasePathConflicts(request);
 
-        if (!conflicts.isEmpty()) {
-          requestManager.setRequestMessage(request.getLoadBalancerRequestId(), String.format("Invalid request due to base path conflicts: %s", conflicts));
-          return InternalRequestStates.INVALID_REQUEST_NOOP;
-        }
+    if (!conflicts.isEmpty()) {
+      requestManager.setRequestMessage(request.getLoadBalancerRequestId(), String.format("Invalid request due to base path conflicts: %s", conflicts));
+      return InternalRequestStates.INVALID_REQUEST_NOOP;
+    }
 
-        final Set<String> missingGroups = requestManager.getMissingLoadBalancerGroups(request);
+    final Set<String> missingGroups = requestManager.getMissingLoadBalancerGroups(request);
 
-        if (!missingGroups.isEmpty()) {
-          requestManager.setRequestMessage(request.getLoadBalancerRequestId(), String.format("Invalid request due to non-existent load balancer groups: %s", missingGroups));
-          return InternalRequestStates.INVALID_REQUEST_NOOP;
-        }
+    if (!missingGroups.isEmpty()) {
+      requestManager.setRequestMessage(request.getLoadBalancerRequestId(), String.format("Invalid request due to non-existent load balancer groups: %s", missingGroups));
+      return InternalRequestStates.INVALID_REQUEST_NOOP;
+    }
 
-//        for (String loadBalancerGroup : request.getLoadBalancerService().getLoadBalancerGroups()) {
-//          if (agentManager.hasNoAgents(loadBalancerGroup)) {
-//            requestManager.setRequestMessage(request.getLoadBalancerRequestId(), String.format("Invalid request due to no agents present for group: %s", loadBalancerGroup));
-//            return InternalRequestStates.INVALID_REQUEST_NOOP;
-//          }
-//        }
+//    for (String loadBalancerGroup : request.getLoadBalancerService().getLoadBalancerGroups()) {
+//      if (agentManager.hasNoAgents(loadBalancerGroup)) {
+//        requestManager.setRequestMessage(request.getLoadBalancerRequestId(), String.format("Invalid request due to no agents present for group: %s", loadBalancerGroup));
+//        return InternalRequestStates.INVALID_REQUEST_NOOP;
+//      }
+//    }
 
-        requestManager.lockBasePaths(request);
+    requestManager.lockBasePaths(request);
 
-        return InternalRequestStates.SEND_APPLY_REQUESTS;
+    return InternalRequestStates.SEND_APPLY_REQUESTS;
+  }
+
+  // If toSend is present, agent requests are only prepared, i.e. marked pending, here and collected in it instead of
+  // being sent right away. A failure to prepare them escapes before the waiting state is written, so it's retried.
+  private InternalRequestStates handleState(InternalRequestStates currentState, BaragonRequest request, Optional<List<OutgoingRequests>> toSend) {
+    switch (currentState) {
+      case PENDING:
+        // base paths are shared between services, so the conflict check and the lock need to happen atomically
+        synchronized (basePathLock) {
+          return handlePending(request);
+        }
 
       case CHECK_APPLY_RESPONSES:
         switch (agentManager.getRequestsStatus(request, InternalStatesMap.getRequestType(currentState))) {
@@ -127,7 +159,11 @@ public class BaragonRequestWorker implements Runnable {
       case SEND_APPLY_REQUESTS:
       case FAILED_SEND_REVERT_REQUESTS:
       case CANCELLED_SEND_REVERT_REQUESTS:
-        agentManager.sendRequests(request, InternalStatesMap.getRequestType(currentState));
+        if (toSend.isPresent()) {
+          toSend.get().add(agentManager.prepareRequests(request, InternalStatesMap.getRequestType(currentState)));
+        } else {
+          agentManager.sendRequests(request, InternalStatesMap.getRequestType(currentState));
+        }
         return InternalStatesMap.getWaitingState(currentState);
 
       case FAILED_CHECK_REVERT_RESPONSES:
@@ -139,14 +175,20 @@ public class BaragonRequestWorker implements Runnable {
     }
   }
 
-  public void handleQueuedRequest(QueuedRequestId queuedRequestId) {
+  // returns true if the request moved to a new state or left the queue
+  public boolean handleQueuedRequest(QueuedRequestId queuedRequestId) {
+    return handleQueuedRequest(queuedRequestId, Collections.<QueuedRequestId>emptyList(), Optional.<List<OutgoingRequests>>absent());
+  }
+
+  // following holds the requests queued behind this one for the same service, which may be coalesced into it
+  private boolean handleQueuedRequest(QueuedRequestId queuedRequestId, List<QueuedRequestId> following, Optional<List<OutgoingRequests>> toSend) {
     final String requestId = queuedRequestId.getRequestId();
 
     final Optional<InternalRequestStates> maybeState = requestManager.getRequestState(requestId);
 
     if (!maybeState.isPresent()) {
       LOG.warn(String.format("%s does not have a request status!", requestId));
-      return;
+      return false;
     }
 
     final InternalRequestStates currentState = maybeState.get();
@@ -155,10 +197,16 @@ public class BaragonRequestWorker implements Runnable {
 
     if (!maybeRequest.isPresent()) {
       LOG.warn(String.format("%s does not have a request object!", requestId));
-      return;
+      return false;
+    }
+
+    BaragonRequest request = maybeRequest.get();
+
+    if (currentState == InternalRequestStates.PENDING && !following.isEmpty()) {
+      request = requestManager.coalesceRequests(request, following);
     }
 
-    final InternalRequestStates newState = handleState(currentState, maybeRequest.get());
+    final InternalRequestStates newState = handleState(currentState, request, toSend);
 
     if (newState != currentState) {
       LOG.info(String.format("%s: %s --> %s", requestId, currentState, newState));
@@ -166,32 +214,88 @@ public class BaragonRequestWorker implements Runnable {
     }
 
     if (InternalStatesMap.isRemovable(newState)) {
+      // before this request leaves the queue, so that nothing queued behind it can start while they're unfinished
+      requestManager.finishCoalescedRequests(requestId, newState);
       requestManager.removeQueuedRequest(queuedRequestId);
+      agentManager.forgetRequest(requestId);
+      return true;
     }
+
+    return newState != currentState;
   }
 
   @Override
   public void run() {
+    processQueuedRequests();
+  }
+
+  // returns true if any request moved to a new state, i.e. there may be more work to do right away
+  public boolean processQueuedRequests() {
     workerLastStartAt.set(System.currentTimeMillis());
 
-    try {
+    boolean transitioned = false;
 
+    try {
       final List<QueuedRequestId> queuedRequestIds = requestManager.getQueuedRequestIds();
 
       if (!queuedRequestIds.isEmpty()) {
-        final Set<String> handledServices = Sets.newHashSet();  // only handle one request per service at a time
+        final Map<String, List<QueuedRequestId>> queuedRequestsPerService = new LinkedHashMap<>();  // only handle one request per service at a time
 
         for (QueuedRequestId queuedRequestId : queuedRequestIds) {
-          if (!handledServices.contains(queuedRequestId.getServiceId())) {
-            synchronized (BaragonRequestWorker.class) {
-              handleQueuedRequest(queuedRequestId);
+          if (!queuedRequestsPerService.containsKey(queuedRequestId.getServiceId())) {
+            queuedRequestsPerService.put(queuedRequestId.getServiceId(), new ArrayList<QueuedRequestId>());
+          }
+          queuedRequestsPerService.get(queuedRequestId.getServiceId()).add(queuedRequestId);
+        }
+
+        final List<QueuedRequestId> toHandle = new ArrayList<>(queuedRequestsPerService.size());
+        for (List<QueuedRequestId> queuedForService : queuedRequestsPerService.values()) {
+          toHandle.add(queuedForService.get(0));
+        }
+
+        // with batching, the agent requests of this run are sent together once every request has been handled
+        final Optional<List<OutgoingRequests>> toSend = agentManager.isBatchingEnabled() ?
+            Optional.of(Collections.synchronizedList(new ArrayList<OutgoingRequests>())) :
+            Optional.<List<OutgoingRequests>>absent();
+
+        final List<Callable<Boolean>> tasks = new ArrayList<>(toHandle.size());
+
+        for (final QueuedRequestId queuedRequestId : toHandle) {
+          final List<QueuedRequestId> queuedForService = queuedRequestsPerService.get(queuedRequestId.getServiceId());
+          final List<QueuedRequestId> following = coalesceUpdates ? queuedForService.subList(1, queuedForService.size()) : Collections.<QueuedRequestId>emptyList();
+
+          tasks.add(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+              final Lock serviceLock = getServiceLock(queuedRequestId.getServiceId());
+              serviceLock.lock();
+              try {
+                return handleQueuedRequest(queuedRequestId, following, toSend);
+              } finally {
+                serviceLock.unlock();
+              }
             }
-            handledServices.add(queuedRequestId.getServiceId());
+          });
+        }
+
+        final List<Future<Boolean>> futures = executorService.invokeAll(tasks);
+
+        for (int i = 0; i < futures.size(); i++) {
+          try {
+            transitioned |= futures.get(i).get();
+          } catch (ExecutionException e) {
+            LOG.warn(String.format("Caught exception handling %s", toHandle.get(i)), e.getCause());
           }
         }
+
+        if (toSend.isPresent() && !toSend.get().isEmpty()) {
+          agentManager.sendRequests(toSend.get());
+        }
       }
     } catch (Exception e) {
       LOG.warn("Caught exception", e);
     }
+
+    return transitioned;
   }
 }
@@ -0,0 +1,57 @@
+package com.hubspot.baragon;
+
+import org.jukito.JukitoModule;
+import org.jukito.JukitoRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import com.google.common.base.Optional;
+import com.hubspot.baragon.data.BaragonAgentResponseDatastore;
+import com.hubspot.baragon.models.AgentRequestType;
+import com.hubspot.baragon.models.AgentResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+@RunWith(JukitoRunner.class)
+public class AgentResponseTests {
+  public static final String REQUEST_ID = "test-request";
+  public static final String BASE_URL = "http://123.123.123.123:8080/baragon-agent/v2";
+  public static final String URL = BASE_URL + "/request/" + REQUEST_ID;
+
+  public static class Module extends JukitoModule {
+
+    @Override
+    protected void configureTest() {
+      install(new BaragonDataTestModule());
+    }
+  }
+
+  @Test
+  public void testResponseSummary(BaragonAgentResponseDatastore datastore) {
+    datastore.createResponseSummary(REQUEST_ID);
+
+    datastore.addAgentResponse(REQUEST_ID, AgentRequestType.APPLY, BASE_URL, URL, Optional.of(500), Optional.<String>absent(), Optional.<String>absent());
+    final AgentResponse lastResponse = datastore.addAgentResponse(REQUEST_ID, AgentRequestType.APPLY, BASE_URL, URL, Optional.of(200), Optional.<String>absent(), Optional.<String>absent());
+
+    assertEquals(Optional.of(Collections.singletonMap(BASE_URL, lastResponse)), datastore.getLastAgentResponses(REQUEST_ID, AgentRequestType.APPLY));
+    assertEquals(Collections.<String, AgentResponse>emptyMap(), datastore.getLastAgentResponses(REQUEST_ID, AgentRequestType.REVERT).get());
+
+    final Map<String, Collection<AgentResponse>> responses = datastore.getLastResponses(REQUEST_ID);
+    assertEquals(1, responses.size());
+    assertEquals(Collections.singletonList(lastResponse), responses.get(AgentRequestType.APPLY.name()));
+  }
+
+  @Test
+  public void testResponsesWithoutSummary(BaragonAgentResponseDatastore datastore) {
+    datastore.addAgentResponse(REQUEST_ID, AgentRequestType.APPLY, BASE_URL, URL, Optional.of(500), Optional.<String>absent(), Optional.<String>absent());
+    final AgentResponse lastResponse = datastore.addAgentResponse(REQUEST_ID, AgentRequestType.APPLY, BASE_URL, URL, Optional.of(200), Optional.<String>absent(), Optional.<String>absent());
+
+    assertFalse(datastore.getLastAgentResponses(REQUEST_ID, AgentRequestType.APPLY).isPresent());
+    assertEquals(Collections.singletonList(lastResponse), datastore.getLastResponses(REQUEST_ID).get(AgentRequestType.APPLY.name()));
+  }
+}
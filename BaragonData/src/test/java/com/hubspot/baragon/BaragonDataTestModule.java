@@ -1,5 +1,6 @@
 package com.hubspot.baragon;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.curator.framework.CuratorFramework;
@@ -9,6 +10,7 @@ import org.apache.curator.test.TestingServer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Scopes;
@@ -16,6 +18,7 @@ import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import com.hubspot.baragon.config.HttpClientConfiguration;
 import com.hubspot.baragon.data.BaragonLoadBalancerDatastore;
+import com.hubspot.baragon.models.BaragonStateFormat;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.AsyncHttpClientConfig;
 
@@ -41,6 +44,55 @@ public class BaragonDataTestModule extends AbstractModule {
     return new AtomicLong();
   }
 
+  @Provides
+  @Named(BaragonDataModule.BARAGON_ZK_READ_CACHE_ENABLED)
+  public boolean providesZkReadCacheEnabled() {
+    return false;
+  }
+
+  @Provides
+  @Named(BaragonDataModule.BARAGON_ZK_FETCH_MAX_IN_FLIGHT)
+  public int providesZkFetchMaxInFlight() {
+    return 1000;
+  }
+
+  @Provides
+  @Named(BaragonDataModule.BARAGON_ZK_FETCH_TIMEOUT_MS)
+  public long providesZkFetchTimeoutMs() {
+    return 10000;
+  }
+
+  @Provides
+  @Named(BaragonDataModule.BARAGON_SERVICE_WORKER_COALESCE_UPDATES)
+  public boolean providesWorkerCoalesceUpdates() {
+    return false;
+  }
+
+  @Provides
+  @Named(BaragonDataModule.BARAGON_STATE_INCREMENTAL_UPDATES)
+  public boolean providesIncrementalStateUpdates() {
+    return false;
+  }
+
+  @Provides
+  @Named(BaragonDataModule.BARAGON_STATE_MAX_CHUNK_BYTES)
+  public int providesStateMaxChunkBytes() {
+    return 0;
+  }
+
+  @Provides
+  @Named(BaragonDataModule.BARAGON_STATE_FORMAT)
+  public BaragonStateFormat providesStateFormat() {
+    return BaragonStateFormat.JSON;
+  }
+
+  @Singleton
+  @Provides
+  @Named(BaragonDataModule.BARAGON_SERVICE_WORKER_EXECUTOR)
+  public ExecutorService providesWorkerExecutor() {
+    return MoreExecutors.sameThreadExecutor();
+  }
+
   @Provides
   @Singleton
   @Named(BaragonDataModule.BARAGON_SERVICE_HTTP_CLIENT)
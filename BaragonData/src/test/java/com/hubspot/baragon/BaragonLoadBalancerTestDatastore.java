@@ -2,6 +2,7 @@ package com.hubspot.baragon;
 
 import com.hubspot.baragon.models.BaragonAgentMetadata;
 import com.hubspot.baragon.utils.ZkParallelFetcher;
+import com.hubspot.baragon.utils.ZkReadCache;
 import org.apache.curator.framework.CuratorFramework;
 
 import java.util.Collection;
@@ -10,6 +11,7 @@ import java.util.Set;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Optional;
 import com.google.inject.Inject;
+import com.hubspot.baragon.data.BaragonAgentMetadataCache;
 import com.hubspot.baragon.data.BaragonLoadBalancerDatastore;
 
 public class BaragonLoadBalancerTestDatastore extends BaragonLoadBalancerDatastore {
@@ -17,8 +19,8 @@ public class BaragonLoadBalancerTestDatastore extends BaragonLoadBalancerDatasto
   private Optional<Collection<BaragonAgentMetadata>> loadBalancerAgentsOverride = Optional.absent();
 
   @Inject
-  public BaragonLoadBalancerTestDatastore(CuratorFramework curatorFramework, ObjectMapper objectMapper) {
-    super(curatorFramework, objectMapper);
+  public BaragonLoadBalancerTestDatastore(CuratorFramework curatorFramework, ObjectMapper objectMapper, ZkReadCache readCache, BaragonAgentMetadataCache agentMetadataCache, ZkParallelFetcher zkFetcher) {
+    super(curatorFramework, objectMapper, readCache, agentMetadataCache, zkFetcher);
   }
 
   public void setLoadBalancerGroupsOverride(Optional<Set<String>> loadBalancerGroupsOverride) {
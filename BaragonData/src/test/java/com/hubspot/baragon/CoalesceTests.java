@@ -0,0 +1,226 @@
+package com.hubspot.baragon;
+
+import org.jukito.JukitoModule;
+import org.jukito.JukitoRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.hubspot.baragon.data.BaragonRequestDatastore;
+import com.hubspot.baragon.exceptions.RequestAlreadyEnqueuedException;
+import com.hubspot.baragon.exceptions.RequestNotCancelableException;
+import com.hubspot.baragon.managers.RequestManager;
+import com.hubspot.baragon.models.BaragonRequest;
+import com.hubspot.baragon.models.BaragonRequestState;
+import com.hubspot.baragon.models.BaragonService;
+import com.hubspot.baragon.models.InternalRequestStates;
+import com.hubspot.baragon.models.QueuedRequestId;
+import com.hubspot.baragon.models.RequestAction;
+import com.hubspot.baragon.models.UpstreamInfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JukitoRunner.class)
+public class CoalesceTests {
+  public static final String LB_GROUP = "real";
+
+  public static class Module extends JukitoModule {
+    @Override
+    protected void configureTest() {
+      install(new BaragonDataTestModule());
+    }
+  }
+
+  private static BaragonService service(String serviceId) {
+    return new BaragonService(serviceId, Collections.<String>emptyList(), "/" + serviceId, ImmutableSet.of(LB_GROUP), Collections.<String, Object>emptyMap());
+  }
+
+  private static List<UpstreamInfo> upstreams(String... upstreams) {
+    final List<UpstreamInfo> upstreamInfos = new ArrayList<>(upstreams.length);
+    for (String upstream : upstreams) {
+      upstreamInfos.add(new UpstreamInfo(upstream, Optional.<String>absent(), Optional.<String>absent()));
+    }
+    return upstreamInfos;
+  }
+
+  private static Set<String> upstreamNames(Collection<UpstreamInfo> upstreamInfos) {
+    final Set<String> names = new HashSet<>();
+    for (UpstreamInfo upstreamInfo : upstreamInfos) {
+      names.add(upstreamInfo.getUpstream());
+    }
+    return names;
+  }
+
+  private static List<QueuedRequestId> queued(RequestManager requestManager, String serviceId) {
+    final List<QueuedRequestId> queued = new ArrayList<>();
+    for (QueuedRequestId queuedRequestId : requestManager.getQueuedRequestIds()) {
+      if (queuedRequestId.getServiceId().equals(serviceId)) {
+        queued.add(queuedRequestId);
+      }
+    }
+    return queued;
+  }
+
+  private static List<String> requestIds(List<QueuedRequestId> queued) {
+    final List<String> requestIds = new ArrayList<>(queued.size());
+    for (QueuedRequestId queuedRequestId : queued) {
+      requestIds.add(queuedRequestId.getRequestId());
+    }
+    return requestIds;
+  }
+
+  // enqueues three updates of the same service, returning the queued ids with the head first
+  private static List<QueuedRequestId> enqueueUpdates(RequestManager requestManager, String serviceId) throws Exception {
+    final BaragonService service = service(serviceId);
+
+    requestManager.enqueueRequest(new BaragonRequest(serviceId + "-1", service, upstreams("a:80", "b:80"), upstreams()));
+    requestManager.enqueueRequest(new BaragonRequest(serviceId + "-2", service, upstreams("c:80"), upstreams("b:80")));
+    requestManager.enqueueRequest(new BaragonRequest(serviceId + "-3", service, upstreams("b:80"), upstreams("c:80")));
+
+    final List<QueuedRequestId> queued = queued(requestManager, serviceId);
+    assertEquals(3, queued.size());
+    return queued;
+  }
+
+  @Test
+  public void testLastRequestToTouchAnUpstreamWins(RequestManager requestManager) throws Exception {
+    final List<QueuedRequestId> queued = enqueueUpdates(requestManager, "coalesce-merge");
+    final BaragonRequest head = requestManager.getRequest(queued.get(0).getRequestId()).get();
+
+    final BaragonRequest merged = requestManager.coalesceRequests(head, queued.subList(1, queued.size()));
+
+    assertEquals(head.getLoadBalancerRequestId(), merged.getLoadBalancerRequestId());
+    assertEquals(ImmutableSet.of("a:80", "b:80"), upstreamNames(merged.getAddUpstreams()));
+    assertEquals(ImmutableSet.of("c:80"), upstreamNames(merged.getRemoveUpstreams()));
+
+    // the merge replaces the head request, which is what gets sent to the agents
+    final BaragonRequest stored = requestManager.getRequest(head.getLoadBalancerRequestId()).get();
+    assertEquals(upstreamNames(merged.getAddUpstreams()), upstreamNames(stored.getAddUpstreams()));
+    assertEquals(upstreamNames(merged.getRemoveUpstreams()), upstreamNames(stored.getRemoveUpstreams()));
+  }
+
+  @Test
+  public void testMergeStopsAtOtherActions(RequestManager requestManager, BaragonRequestDatastore requestDatastore) throws Exception {
+    final String serviceId = "coalesce-stop";
+    final BaragonService service = service(serviceId);
+
+    requestManager.enqueueRequest(new BaragonRequest(serviceId + "-1", service, upstreams("a:80"), upstreams()));
+    requestManager.enqueueRequest(new BaragonRequest(serviceId + "-2", service, upstreams("b:80"), upstreams(), Collections.<UpstreamInfo>emptyList(), Optional.<String>absent(), Optional.of(RequestAction.DELETE)));
+    requestManager.enqueueRequest(new BaragonRequest(serviceId + "-3", service, upstreams("c:80"), upstreams()));
+
+    final List<QueuedRequestId> queued = queued(requestManager, serviceId);
+    final BaragonRequest head = requestManager.getRequest(queued.get(0).getRequestId()).get();
+
+    assertSame(head, requestManager.coalesceRequests(head, queued.subList(1, queued.size())));
+    assertFalse(requestDatastore.getCoalescedInto(queued.get(2).getRequestId()).isPresent());
+  }
+
+  @Test
+  public void testCoalescedRequestsGetTheirOwnTerminalState(RequestManager requestManager) throws Exception {
+    final List<QueuedRequestId> queued = enqueueUpdates(requestManager, "coalesce-finish");
+    final String headId = queued.get(0).getRequestId();
+
+    requestManager.coalesceRequests(requestManager.getRequest(headId).get(), queued.subList(1, queued.size()));
+
+    requestManager.setRequestMessage(headId, "Applied on every agent");
+    requestManager.setRequestState(headId, InternalRequestStates.COMPLETED);
+    requestManager.finishCoalescedRequests(headId, InternalRequestStates.COMPLETED);
+
+    for (QueuedRequestId queuedRequestId : queued.subList(1, queued.size())) {
+      assertEquals(Optional.of(InternalRequestStates.COMPLETED), requestManager.getRequestState(queuedRequestId.getRequestId()));
+      assertEquals(BaragonRequestState.SUCCESS, requestManager.getResponse(queuedRequestId.getRequestId()).get().getLoadBalancerState());
+      assertEquals(Optional.of(String.format("Coalesced into %s: Applied on every agent", headId)), requestManager.getResponse(queuedRequestId.getRequestId()).get().getMessage());
+    }
+  }
+
+  @Test
+  public void testCoalescedRequestsLeaveTheQueueFirst(RequestManager requestManager) throws Exception {
+    final String serviceId = "coalesce-queue";
+    final List<QueuedRequestId> queued = enqueueUpdates(requestManager, serviceId);
+    final String headId = queued.get(0).getRequestId();
+
+    requestManager.coalesceRequests(requestManager.getRequest(headId).get(), queued.subList(1, queued.size()));
+
+    // still queued until the head request is done
+    assertEquals(requestIds(queued), requestIds(queued(requestManager, serviceId)));
+
+    requestManager.finishCoalescedRequests(headId, InternalRequestStates.FAILED_REVERTED);
+
+    // the head is taken off the queue last, so a crash in between leaves nothing behind that was already answered
+    assertEquals(ImmutableList.of(headId), requestIds(queued(requestManager, serviceId)));
+
+    requestManager.removeQueuedRequest(queued.get(0));
+    assertTrue(queued(requestManager, serviceId).isEmpty());
+  }
+
+  private static boolean resubmitRejected(RequestManager requestManager, BaragonRequest request) throws Exception {
+    try {
+      requestManager.enqueueRequest(request);
+      return false;
+    } catch (RequestAlreadyEnqueuedException e) {
+      return true;
+    }
+  }
+
+  @Test
+  public void testResubmittingTheHeadIsIdempotent(RequestManager requestManager, BaragonRequestDatastore requestDatastore) throws Exception {
+    final String serviceId = "coalesce-resubmit";
+    final List<QueuedRequestId> queued = enqueueUpdates(requestManager, serviceId);
+    final String headId = queued.get(0).getRequestId();
+    final BaragonRequest submitted = requestManager.getRequest(headId).get();
+    final boolean rejectedBefore = resubmitRejected(requestManager, submitted);
+
+    final BaragonRequest merged = requestManager.coalesceRequests(submitted, queued.subList(1, queued.size()));
+
+    final BaragonRequest original = requestDatastore.getOriginalRequest(headId).get();
+    assertEquals(upstreamNames(submitted.getAddUpstreams()), upstreamNames(original.getAddUpstreams()));
+    assertEquals(upstreamNames(submitted.getRemoveUpstreams()), upstreamNames(original.getRemoveUpstreams()));
+
+    // a client retrying its request is compared against what it submitted, not against the merge
+    assertEquals(rejectedBefore, resubmitRejected(requestManager, submitted));
+    assertTrue(resubmitRejected(requestManager, merged));
+    assertEquals(requestIds(queued), requestIds(queued(requestManager, serviceId)));
+
+    // coalescing again, e.g. after the worker restarted, starts over from the submitted request
+    final BaragonRequest mergedAgain = requestManager.coalesceRequests(requestManager.getRequest(headId).get(), queued.subList(1, queued.size()));
+    assertEquals(upstreamNames(merged.getAddUpstreams()), upstreamNames(mergedAgain.getAddUpstreams()));
+    assertEquals(upstreamNames(merged.getRemoveUpstreams()), upstreamNames(mergedAgain.getRemoveUpstreams()));
+    assertEquals(upstreamNames(submitted.getAddUpstreams()), upstreamNames(requestDatastore.getOriginalRequest(headId).get().getAddUpstreams()));
+  }
+
+  @Test
+  public void testCoalescedRequestCannotBeCancelled(RequestManager requestManager) throws Exception {
+    final List<QueuedRequestId> queued = enqueueUpdates(requestManager, "coalesce-cancel");
+    final String headId = queued.get(0).getRequestId();
+    final String coalescedId = queued.get(1).getRequestId();
+
+    requestManager.coalesceRequests(requestManager.getRequest(headId).get(), queued.subList(1, queued.size()));
+
+    try {
+      requestManager.cancelRequest(coalescedId);
+      fail("Cancelling a coalesced request should have been refused");
+    } catch (RequestNotCancelableException e) {
+      assertEquals(coalescedId, e.getRequestId());
+      assertEquals(BaragonRequestState.WAITING, e.getResponse().getLoadBalancerState());
+      assertTrue(e.getResponse().getMessage().get().contains(headId));
+    }
+
+    assertEquals(Optional.of(InternalRequestStates.PENDING), requestManager.getRequestState(coalescedId));
+
+    // the head itself can still be cancelled, the requests coalesced into it then share that outcome
+    assertEquals(Optional.of(InternalRequestStates.CANCELLED_SEND_REVERT_REQUESTS), requestManager.cancelRequest(headId));
+  }
+}
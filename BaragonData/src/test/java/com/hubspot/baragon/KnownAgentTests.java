@@ -15,6 +15,7 @@ import com.hubspot.baragon.models.BaragonAgentMetadata;
 import com.hubspot.baragon.models.BaragonKnownAgentMetadata;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 @RunWith(JukitoRunner.class)
 public class KnownAgentTests {
@@ -40,6 +41,30 @@ public class KnownAgentTests {
     assertEquals(Collections.singletonList(metadata), datastore.getKnownAgentsMetadata(CLUSTER_NAME));
   }
 
+  @Test
+  public void testKnownAgentsByInstanceId(BaragonKnownAgentsDatastore datastore) {
+    final BaragonKnownAgentMetadata ec2Agent = new BaragonKnownAgentMetadata(BASE_URI, AGENT_ID, Optional.of(DOMAIN), new BaragonAgentEc2Metadata(Optional.of("i-12345"), Optional.<String>absent(), Optional.<String>absent()), System.currentTimeMillis());
+    final BaragonKnownAgentMetadata otherAgent = new BaragonKnownAgentMetadata("http://124.124.124.124:8080/baragon-agent/v2", "124.124.124.124:8080", Optional.of(DOMAIN), new BaragonAgentEc2Metadata(Optional.<String>absent(), Optional.<String>absent(), Optional.<String>absent()), System.currentTimeMillis());
+    datastore.addKnownAgent(CLUSTER_NAME, ec2Agent);
+    datastore.addKnownAgent(CLUSTER_NAME, otherAgent);
+
+    assertEquals(Collections.singletonMap("i-12345", ec2Agent), datastore.getKnownAgentsByInstanceId(CLUSTER_NAME));
+  }
+
+  @Test
+  public void testKnownAgentUpdates(BaragonKnownAgentsDatastore datastore) {
+    final BaragonKnownAgentMetadata metadata = new BaragonKnownAgentMetadata(BASE_URI, AGENT_ID, Optional.of(DOMAIN), new BaragonAgentEc2Metadata(Optional.<String>absent(), Optional.<String>absent(), Optional.<String>absent()), 1L);
+    datastore.addKnownAgent(CLUSTER_NAME, metadata);
+    datastore.addKnownAgent(CLUSTER_NAME, metadata);
+
+    datastore.updateKnownAgentLastSeenAt(CLUSTER_NAME, AGENT_ID, 2L);
+    assertEquals(2L, datastore.getKnownAgentMetadata(CLUSTER_NAME, AGENT_ID).get().getLastSeenAt());
+
+    datastore.removeKnownAgent(CLUSTER_NAME, AGENT_ID);
+    datastore.updateKnownAgentLastSeenAt(CLUSTER_NAME, AGENT_ID, 3L);
+    assertFalse(datastore.getKnownAgentMetadata(CLUSTER_NAME, AGENT_ID).isPresent());
+  }
+
   @Test
   public void testKnownAgentString() {
     assertEquals(new BaragonAgentMetadata(BASE_URI, AGENT_ID, Optional.<String>absent(), new BaragonAgentEc2Metadata(Optional.<String>absent(), Optional.<String>absent(), Optional.<String>absent())), BaragonAgentMetadata.fromString(BASE_URI));
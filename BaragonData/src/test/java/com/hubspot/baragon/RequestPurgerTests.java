@@ -0,0 +1,48 @@
+package com.hubspot.baragon;
+
+import org.jukito.JukitoModule;
+import org.jukito.JukitoRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+
+import com.google.common.collect.ImmutableSet;
+import com.hubspot.baragon.config.RequestPurgingConfiguration;
+import com.hubspot.baragon.data.BaragonRequestDatastore;
+import com.hubspot.baragon.managers.RequestManager;
+import com.hubspot.baragon.models.BaragonRequestState;
+import com.hubspot.baragon.models.InternalRequestStates;
+import com.hubspot.baragon.worker.BaragonRequestPurgerWorker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JukitoRunner.class)
+public class RequestPurgerTests {
+  public static class Module extends JukitoModule {
+    @Override
+    protected void configureTest() {
+      install(new BaragonDataTestModule());
+
+      final RequestPurgingConfiguration configuration = new RequestPurgingConfiguration();
+      configuration.setMaxRetainedRequests(1);
+      bind(RequestPurgingConfiguration.class).toInstance(configuration);
+    }
+  }
+
+  @Test
+  public void testPurgesFinishedRequestsBeyondRetention(BaragonRequestDatastore requestDatastore, RequestManager requestManager, BaragonRequestPurgerWorker purgerWorker) throws Exception {
+    requestDatastore.addRequestState("old-request", InternalRequestStates.COMPLETED);
+    Thread.sleep(10);
+    requestDatastore.addRequestState("new-request", InternalRequestStates.FAILED_REVERTED);
+    requestDatastore.addRequestState("pending-request", InternalRequestStates.PENDING);
+
+    purgerWorker.run();
+
+    assertEquals(ImmutableSet.of("new-request", "pending-request"), new HashSet<>(requestDatastore.getRequestIds()));
+
+    assertTrue(requestDatastore.getArchivedResponse("old-request").isPresent());
+    assertEquals(BaragonRequestState.SUCCESS, requestManager.getResponse("old-request").get().getLoadBalancerState());
+  }
+}
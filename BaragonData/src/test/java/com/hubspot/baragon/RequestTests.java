@@ -219,4 +219,29 @@ public class RequestTests {
       throw Throwables.propagate(e);
     }
   }
+
+  @Test
+  public void removingLastUpstreamClearsBasePath(RequestManager requestManager, BaragonRequestWorker requestWorker, BaragonStateDatastore stateDatastore, BaragonLoadBalancerDatastore loadBalancerDatastore) {
+    final String serviceId = "lastUpstreamService";
+    final String addRequestId = "test-last-upstream-add";
+    final String removeRequestId = "test-last-upstream-remove";
+    final BaragonService service = new BaragonService(serviceId, Collections.<String>emptyList(), "/last-upstream", ImmutableSet.of(REAL_LB_GROUP), Collections.<String, Object>emptyMap());
+    final UpstreamInfo upstream = new UpstreamInfo("testhost:8080", Optional.of(addRequestId), Optional.<String>absent());
+
+    try {
+      requestManager.enqueueRequest(new BaragonRequest(addRequestId, service, ImmutableList.of(upstream), Collections.<UpstreamInfo>emptyList(), Optional.<String>absent()));
+      assertSuccessfulRequestLifecycle(requestManager, requestWorker, addRequestId);
+
+      assertEquals(Optional.of(serviceId), loadBalancerDatastore.getBasePathServiceId(REAL_LB_GROUP, "/last-upstream"));
+
+      requestManager.enqueueRequest(new BaragonRequest(removeRequestId, service, Collections.<UpstreamInfo>emptyList(), ImmutableList.of(upstream), Optional.<String>absent()));
+      assertSuccessfulRequestLifecycle(requestManager, requestWorker, removeRequestId);
+
+      // the upstream removal and the base path release are committed together
+      assertTrue(stateDatastore.getUpstreamsMap(serviceId).isEmpty());
+      assertFalse(loadBalancerDatastore.getBasePathServiceId(REAL_LB_GROUP, "/last-upstream").isPresent());
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+  }
 }
@@ -0,0 +1,205 @@
+package com.hubspot.baragon;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.KeeperException;
+import org.jukito.JukitoModule;
+import org.jukito.JukitoRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.hubspot.baragon.data.BaragonStateDatastore;
+import com.hubspot.baragon.models.BaragonGlobalStateManifest;
+import com.hubspot.baragon.models.BaragonService;
+import com.hubspot.baragon.models.BaragonServiceState;
+import com.hubspot.baragon.models.BaragonStateFormat;
+import com.hubspot.baragon.models.UpstreamInfo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JukitoRunner.class)
+public class StateTests {
+  public static final int SERVICE_COUNT = 10;
+  public static final int UPSTREAMS_PER_SERVICE = 5;
+  // small enough that the state is split over several chunks
+  public static final int CHUNK_BYTES = 512;
+
+  public static class Module extends JukitoModule {
+    @Override
+    protected void configureTest() {
+      install(new BaragonDataTestModule());
+    }
+  }
+
+  @Before
+  public void clearState(CuratorFramework curatorFramework) throws Exception {
+    for (String path : ImmutableList.of(BaragonStateDatastore.SERVICES_FORMAT, BaragonGlobalStateManifest.STATE_CHUNKS_PATH)) {
+      try {
+        curatorFramework.delete().deletingChildrenIfNeeded().forPath(path);
+      } catch (KeeperException.NoNodeException nne) {
+        // nothing to clear
+      }
+    }
+  }
+
+  private static BaragonService service(String serviceId) {
+    return new BaragonService(serviceId, Collections.<String>emptyList(), "/" + serviceId, ImmutableSet.of("test"), Collections.<String, Object>emptyMap());
+  }
+
+  private static List<UpstreamInfo> upstreams(String serviceId, int count) {
+    final List<UpstreamInfo> upstreams = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      upstreams.add(new UpstreamInfo(String.format("%s-host%d:8080", serviceId, i), Optional.of("state-test"), Optional.<String>absent()));
+    }
+    return upstreams;
+  }
+
+  private static void addServices(BaragonStateDatastore stateDatastore) {
+    for (int i = 0; i < SERVICE_COUNT; i++) {
+      final String serviceId = "state-service-" + i;
+      stateDatastore.addService(service(serviceId));
+      stateDatastore.addUpstreams(serviceId, upstreams(serviceId, UPSTREAMS_PER_SERVICE));
+    }
+  }
+
+  // upstream order isn't part of the state, so compare upstreams as sets
+  private static Map<String, Set<UpstreamInfo>> index(Collection<BaragonServiceState> state) {
+    final Map<String, Set<UpstreamInfo>> index = new HashMap<>();
+    for (BaragonServiceState serviceState : state) {
+      index.put(serviceState.getService().getServiceId(), new HashSet<>(serviceState.getUpstreams()));
+    }
+    return index;
+  }
+
+  private static List<String> chunkGenerations(CuratorFramework curatorFramework) throws Exception {
+    try {
+      return curatorFramework.getChildren().forPath(BaragonGlobalStateManifest.STATE_CHUNKS_PATH);
+    } catch (KeeperException.NoNodeException nne) {
+      return Collections.emptyList();
+    }
+  }
+
+  // read service by service, independently of the global state node
+  private static List<BaragonServiceState> readServiceStates(BaragonStateDatastore stateDatastore) throws Exception {
+    final List<BaragonServiceState> serviceStates = new ArrayList<>();
+    for (String serviceId : stateDatastore.getServices()) {
+      serviceStates.add(new BaragonServiceState(stateDatastore.getService(serviceId).get(), new ArrayList<>(stateDatastore.getUpstreamsMap(serviceId).values())));
+    }
+    return serviceStates;
+  }
+
+  private static void assertStateMatchesServices(BaragonStateDatastore stateDatastore) throws Exception {
+    final Map<String, Set<UpstreamInfo>> expected = index(readServiceStates(stateDatastore));
+
+    assertEquals(SERVICE_COUNT, expected.size());
+    assertEquals(expected, index(stateDatastore.getGlobalState()));
+  }
+
+  @Test
+  public void testChunkedStateRoundTrip(BaragonStateDatastore stateDatastore, CuratorFramework curatorFramework, ObjectMapper objectMapper) throws Exception {
+    addServices(stateDatastore);
+
+    stateDatastore.updateStateNode(CHUNK_BYTES, BaragonStateFormat.JSON);
+
+    final byte[] stateNode = curatorFramework.getData().forPath(BaragonStateDatastore.SERVICES_FORMAT);
+    assertTrue(BaragonGlobalStateManifest.isManifest(stateNode));
+
+    final BaragonGlobalStateManifest manifest = objectMapper.readValue(stateNode, BaragonGlobalStateManifest.class);
+    assertTrue(manifest.getChunkCount() > 1);
+    assertEquals(manifest.getTotalBytes(), stateDatastore.getGlobalStateSize());
+
+    assertStateMatchesServices(stateDatastore);
+  }
+
+  @Test
+  public void testIncrementalUpdateOfChunkedState(BaragonStateDatastore stateDatastore) throws Exception {
+    addServices(stateDatastore);
+    stateDatastore.updateStateNode(CHUNK_BYTES, BaragonStateFormat.JSON);
+
+    stateDatastore.addUpstreams("state-service-3", upstreams("state-service-3-extra", 2));
+    stateDatastore.removeService("state-service-7");
+    stateDatastore.updateStateNode(ImmutableList.of("state-service-3", "state-service-7"), CHUNK_BYTES, BaragonStateFormat.JSON);
+
+    final Map<String, Set<UpstreamInfo>> state = index(stateDatastore.getGlobalState());
+
+    assertEquals(index(readServiceStates(stateDatastore)), state);
+    assertFalse(state.containsKey("state-service-7"));
+    assertEquals(UPSTREAMS_PER_SERVICE + 2, state.get("state-service-3").size());
+  }
+
+  @Test
+  public void testStaleChunksAreDeleted(BaragonStateDatastore stateDatastore, CuratorFramework curatorFramework) throws Exception {
+    addServices(stateDatastore);
+
+    for (int i = 0; i < 4; i++) {
+      stateDatastore.updateStateNode(CHUNK_BYTES, BaragonStateFormat.JSON);
+    }
+
+    // the current generation plus the one before it, for readers that were mid-read
+    assertEquals(2, chunkGenerations(curatorFramework).size());
+
+    stateDatastore.updateStateNode(0, BaragonStateFormat.JSON);
+    assertFalse(BaragonGlobalStateManifest.isManifest(curatorFramework.getData().forPath(BaragonStateDatastore.SERVICES_FORMAT)));
+    assertStateMatchesServices(stateDatastore);
+
+    stateDatastore.updateStateNode(0, BaragonStateFormat.JSON);
+    assertTrue(chunkGenerations(curatorFramework).isEmpty());
+  }
+
+  @Test
+  public void testGzipStateRoundTrip(BaragonStateDatastore stateDatastore, CuratorFramework curatorFramework) throws Exception {
+    addServices(stateDatastore);
+
+    stateDatastore.updateStateNode(0, BaragonStateFormat.GZIP);
+    assertEquals(BaragonStateFormat.GZIP, BaragonStateFormat.detect(curatorFramework.getData().forPath(BaragonStateDatastore.SERVICES_FORMAT)));
+    assertStateMatchesServices(stateDatastore);
+
+    stateDatastore.updateStateNode(CHUNK_BYTES, BaragonStateFormat.GZIP);
+    assertStateMatchesServices(stateDatastore);
+  }
+
+  @Test
+  public void testLegacyStateIsReadAsJson(BaragonStateDatastore stateDatastore, CuratorFramework curatorFramework, ObjectMapper objectMapper) throws Exception {
+    addServices(stateDatastore);
+
+    // written the way the state node was before it had a format header
+    final byte[] legacy = objectMapper.writeValueAsBytes(readServiceStates(stateDatastore));
+    curatorFramework.setData().forPath(BaragonStateDatastore.SERVICES_FORMAT, legacy);
+
+    assertEquals(BaragonStateFormat.JSON, BaragonStateFormat.detect(legacy));
+    assertStateMatchesServices(stateDatastore);
+  }
+
+  @Test
+  public void testFormatsRoundTrip() throws Exception {
+    final byte[] json = "[{\"service\":{\"serviceId\":\"format-test\"},\"upstreams\":[]}]".getBytes(Charsets.UTF_8);
+
+    for (BaragonStateFormat format : BaragonStateFormat.values()) {
+      final byte[] encoded = format.encode(json);
+
+      assertEquals(format, BaragonStateFormat.detect(encoded));
+      assertArrayEquals(json, BaragonStateFormat.decode(encoded));
+    }
+
+    assertArrayEquals(json, BaragonStateFormat.JSON.encode(json));
+    assertArrayEquals(json, BaragonStateFormat.decode(json));
+    assertArrayEquals(new byte[0], BaragonStateFormat.decode(new byte[0]));
+  }
+}
@@ -0,0 +1,90 @@
+package com.hubspot.baragon;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.jukito.JukitoModule;
+import org.jukito.JukitoRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Functions;
+import com.hubspot.baragon.utils.ZkParallelFetcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JukitoRunner.class)
+public class ZkParallelFetcherTests {
+  public static final String ROOT_PATH = "/fetcher-test";
+  public static final int NODE_COUNT = 50;
+
+  public static class Module extends JukitoModule {
+
+    @Override
+    protected void configureTest() {
+      install(new BaragonDataTestModule());
+    }
+  }
+
+  private List<String> createNodes(CuratorFramework curatorFramework, String parent) throws Exception {
+    final List<String> paths = new ArrayList<>(NODE_COUNT);
+
+    for (int i = 0; i < NODE_COUNT; i++) {
+      final String path = String.format("%s/%s/node%s", ROOT_PATH, parent, i);
+      curatorFramework.create().creatingParentsIfNeeded().forPath(path, Integer.toString(i).getBytes(Charsets.UTF_8));
+      paths.add(path);
+    }
+
+    return paths;
+  }
+
+  @Test
+  public void testFetchesEverythingWithSmallWindow(CuratorFramework curatorFramework) throws Exception {
+    final List<String> paths = createNodes(curatorFramework, "window");
+    final ZkParallelFetcher fetcher = new ZkParallelFetcher(curatorFramework, 3, 10000);
+
+    final Map<String, byte[]> data = fetcher.fetchDataInParallel(paths, Functions.<byte[]>identity());
+
+    assertEquals(NODE_COUNT, data.size());
+    assertEquals("7", new String(data.get("node7"), Charsets.UTF_8));
+  }
+
+  @Test
+  public void testStreamingSkipsMissingNodes(CuratorFramework curatorFramework) throws Exception {
+    final List<String> paths = createNodes(curatorFramework, "missing");
+    paths.add(ROOT_PATH + "/missing/doesNotExist");
+
+    final List<String> seen = new ArrayList<>();
+    final Map<String, Exception> failures = new ZkParallelFetcher(curatorFramework, 10, 10000).streamDataInParallel(paths, null, new ZkParallelFetcher.ResultCallback<byte[]>() {
+      @Override
+      public void onResult(String path, byte[] result) {
+        seen.add(path);
+      }
+    });
+
+    assertTrue(failures.isEmpty());
+    assertEquals(NODE_COUNT, seen.size());
+  }
+
+  @Test
+  public void testCallbackFailuresAreReportedPerPath(CuratorFramework curatorFramework) throws Exception {
+    final List<String> paths = createNodes(curatorFramework, "failures");
+    final String failingPath = paths.get(5);
+
+    final Map<String, Exception> failures = new ZkParallelFetcher(curatorFramework, 10, 10000).streamDataInParallel(paths, null, new ZkParallelFetcher.ResultCallback<byte[]>() {
+      @Override
+      public void onResult(String path, byte[] result) {
+        if (path.equals(failingPath)) {
+          throw new IllegalStateException("bad data");
+        }
+      }
+    });
+
+    assertEquals(1, failures.size());
+    assertTrue(failures.get(failingPath) instanceof IllegalStateException);
+  }
+}
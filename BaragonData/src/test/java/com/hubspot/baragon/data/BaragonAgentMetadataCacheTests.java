@@ -0,0 +1,71 @@
+package com.hubspot.baragon.data;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.jukito.JukitoModule;
+import org.jukito.JukitoRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.hubspot.baragon.BaragonDataTestModule;
+import com.hubspot.baragon.models.BaragonAgentMetadata;
+import com.hubspot.baragon.utils.ZkParallelFetcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JukitoRunner.class)
+public class BaragonAgentMetadataCacheTests {
+  public static final String CLUSTER_NAME = "metadata-cache-cluster";
+  public static final String UNKNOWN_CLUSTER_NAME = "metadata-cache-unknown";
+  public static final String BASE_URI = "http://125.125.125.125:8080/baragon-agent/v2";
+
+  public static class Module extends JukitoModule {
+
+    @Override
+    protected void configureTest() {
+      install(new BaragonDataTestModule());
+    }
+  }
+
+  // the test module turns caching off, so build one with it on
+  private static BaragonAgentMetadataCache newCache(CuratorFramework curatorFramework, ObjectMapper objectMapper, ZkParallelFetcher zkFetcher) {
+    return new BaragonAgentMetadataCache(curatorFramework, objectMapper, zkFetcher, true);
+  }
+
+  @Test
+  public void testUnknownGroupIsNotCreated(CuratorFramework curatorFramework, ObjectMapper objectMapper, ZkParallelFetcher zkFetcher, BaragonLoadBalancerDatastore loadBalancerDatastore) throws Exception {
+    final BaragonAgentMetadataCache cache = newCache(curatorFramework, objectMapper, zkFetcher);
+
+    try {
+      assertTrue(cache.getAgentMetadata(UNKNOWN_CLUSTER_NAME).isEmpty());
+      assertTrue(cache.getAgentMetadata(Collections.singleton(UNKNOWN_CLUSTER_NAME)).isEmpty());
+
+      assertNull(curatorFramework.checkExists().forPath(String.format(BaragonLoadBalancerDatastore.LOAD_BALANCER_GROUP_FORMAT, UNKNOWN_CLUSTER_NAME)));
+      assertFalse(loadBalancerDatastore.getLoadBalancerGroupNames().contains(UNKNOWN_CLUSTER_NAME));
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void testKnownGroupIsServed(CuratorFramework curatorFramework, ObjectMapper objectMapper, ZkParallelFetcher zkFetcher) throws Exception {
+    curatorFramework.create().creatingParentsIfNeeded().forPath(String.format(BaragonLoadBalancerDatastore.LOAD_BALANCER_GROUP_HOST_FORMAT, CLUSTER_NAME, "agent-0"), BASE_URI.getBytes(Charsets.UTF_8));
+
+    final BaragonAgentMetadataCache cache = newCache(curatorFramework, objectMapper, zkFetcher);
+
+    try {
+      // the first lookup may be answered before the group's cache has loaded, later ones from the cache
+      for (int i = 0; i < 2; i++) {
+        assertEquals(Collections.singletonList(BaragonAgentMetadata.fromString(BASE_URI)), cache.getAgentMetadata(CLUSTER_NAME));
+      }
+    } finally {
+      cache.close();
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.hubspot.baragon.data;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.jukito.JukitoModule;
+import org.jukito.JukitoRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.hubspot.baragon.BaragonDataTestModule;
+import com.hubspot.baragon.utils.ZkReadCache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@RunWith(JukitoRunner.class)
+public class ZkTransactionTests {
+  public static final String ROOT_PATH = "/transaction-test";
+
+  public static class Module extends JukitoModule {
+
+    @Override
+    protected void configureTest() {
+      install(new BaragonDataTestModule());
+    }
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(Charsets.UTF_8);
+  }
+
+  @Test
+  public void testFailedCommitAppliesNothing(CuratorFramework curatorFramework) throws Exception {
+    curatorFramework.create().creatingParentsIfNeeded().forPath(ROOT_PATH + "/atomic/existing", bytes("before"));
+    curatorFramework.create().creatingParentsIfNeeded().forPath(ROOT_PATH + "/atomic/deleted", bytes("before"));
+
+    final ZkTransaction transaction = new ZkTransaction(curatorFramework, Optional.<ZkReadCache>absent());
+    transaction.delete(ROOT_PATH + "/atomic/deleted", true);
+    transaction.write(ROOT_PATH + "/atomic/created", false, bytes("after"));
+    // staged as new although it exists, so the create fails and should take everything else down with it
+    transaction.write(ROOT_PATH + "/atomic/existing", false, bytes("after"));
+
+    try {
+      transaction.commit();
+      fail("Commit should have failed");
+    } catch (Exception e) {
+      // expected
+    }
+
+    assertNull(curatorFramework.checkExists().forPath(ROOT_PATH + "/atomic/created"));
+    assertNotNull(curatorFramework.checkExists().forPath(ROOT_PATH + "/atomic/deleted"));
+    assertArrayEquals(bytes("before"), curatorFramework.getData().forPath(ROOT_PATH + "/atomic/existing"));
+  }
+
+  @Test
+  public void testLargeTransactionIsCommittedInParts(CuratorFramework curatorFramework) throws Exception {
+    final int nodeCount = 40;
+
+    // small enough that every few operations need a request of their own
+    final ZkTransaction transaction = new ZkTransaction(curatorFramework, Optional.<ZkReadCache>absent(), 512);
+
+    transaction.write(ROOT_PATH + "/split", false, bytes(""));
+    for (int i = 0; i < nodeCount; i++) {
+      transaction.write(String.format("%s/split/node%d", ROOT_PATH, i), false, bytes(String.format("%0100d", i)));
+    }
+
+    transaction.commit();
+
+    assertEquals(nodeCount, curatorFramework.getChildren().forPath(ROOT_PATH + "/split").size());
+    assertArrayEquals(bytes(String.format("%0100d", 7)), curatorFramework.getData().forPath(ROOT_PATH + "/split/node7"));
+  }
+}
@@ -0,0 +1,179 @@
+package com.hubspot.baragon.utils;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.jukito.JukitoModule;
+import org.jukito.JukitoRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.hubspot.baragon.BaragonDataTestModule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JukitoRunner.class)
+public class ZkReadCacheTests {
+  public static final String ROOT_PATH = "/read-cache-test";
+  private static final long WAIT_TIMEOUT_MS = 10000;
+
+  public static class Module extends JukitoModule {
+
+    @Override
+    protected void configureTest() {
+      install(new BaragonDataTestModule());
+    }
+  }
+
+  private static ZkReadCache newCache(CuratorFramework curatorFramework, int maxEntries) {
+    return new ZkReadCache(curatorFramework, new ZkParallelFetcher(curatorFramework, 100, 10000), true, maxEntries);
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(Charsets.UTF_8);
+  }
+
+  private static String string(Optional<byte[]> data) {
+    return data.isPresent() ? new String(data.get(), Charsets.UTF_8) : null;
+  }
+
+  // watches fire asynchronously, so changes made behind the cache's back show up eventually
+  private static void waitFor(String description, Predicate<Void> condition) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + WAIT_TIMEOUT_MS;
+
+    while (!condition.apply(null)) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new AssertionError(String.format("Timed out waiting for %s", description));
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testWatchInvalidatesData(CuratorFramework curatorFramework) throws Exception {
+    final String path = ROOT_PATH + "/watched";
+    curatorFramework.create().creatingParentsIfNeeded().forPath(path, bytes("before"));
+
+    final ZkReadCache cache = newCache(curatorFramework, ZkReadCache.DEFAULT_MAX_ENTRIES);
+
+    assertEquals("before", string(cache.getData(path)));
+    assertTrue(cache.isCached(path));
+
+    curatorFramework.setData().forPath(path, bytes("after"));
+
+    waitFor("the data watch to fire", new Predicate<Void>() {
+      @Override
+      public boolean apply(Void input) {
+        return !cache.isCached(path);
+      }
+    });
+
+    assertEquals("after", string(cache.getData(path)));
+  }
+
+  @Test
+  public void testWatchInvalidatesChildren(CuratorFramework curatorFramework) throws Exception {
+    final String path = ROOT_PATH + "/parent";
+    curatorFramework.create().creatingParentsIfNeeded().forPath(path + "/first");
+
+    final ZkReadCache cache = newCache(curatorFramework, ZkReadCache.DEFAULT_MAX_ENTRIES);
+
+    assertEquals(1, cache.getChildren(path).size());
+
+    curatorFramework.create().forPath(path + "/second");
+
+    waitFor("the children watch to fire", new Predicate<Void>() {
+      @Override
+      public boolean apply(Void input) {
+        return !cache.isCached(path);
+      }
+    });
+
+    assertEquals(2, cache.getChildren(path).size());
+  }
+
+  @Test
+  public void testDeletedNodeIsEvicted(CuratorFramework curatorFramework) throws Exception {
+    final String path = ROOT_PATH + "/deleted";
+    curatorFramework.create().creatingParentsIfNeeded().forPath(path, bytes("data"));
+
+    final ZkReadCache cache = newCache(curatorFramework, ZkReadCache.DEFAULT_MAX_ENTRIES);
+
+    assertTrue(cache.getData(path).isPresent());
+
+    curatorFramework.delete().forPath(path);
+
+    waitFor("the deletion to evict the entry", new Predicate<Void>() {
+      @Override
+      public boolean apply(Void input) {
+        return !cache.isCached(path);
+      }
+    });
+
+    assertFalse(cache.getData(path).isPresent());
+  }
+
+  @Test
+  public void testReadsOwnWritesAfterInvalidate(CuratorFramework curatorFramework) throws Exception {
+    final String parent = ROOT_PATH + "/own-writes";
+    final String path = parent + "/node";
+    curatorFramework.create().creatingParentsIfNeeded().forPath(path, bytes("before"));
+
+    final ZkReadCache cache = newCache(curatorFramework, ZkReadCache.DEFAULT_MAX_ENTRIES);
+
+    assertEquals("before", string(cache.getData(path)));
+    assertEquals(1, cache.getChildren(parent).size());
+
+    curatorFramework.setData().forPath(path, bytes("after"));
+    curatorFramework.create().forPath(parent + "/other");
+    cache.invalidate(path);
+    cache.invalidate(parent + "/other");
+
+    // no waiting, invalidate() has to make the writes visible right away
+    assertEquals("after", string(cache.getData(path)));
+    assertEquals(2, cache.getChildren(parent).size());
+  }
+
+  @Test
+  public void testReconnectInvalidatesEverything(CuratorFramework curatorFramework, TestingServer testingServer) throws Exception {
+    final String path = ROOT_PATH + "/reconnect";
+    curatorFramework.create().creatingParentsIfNeeded().forPath(path, bytes("data"));
+
+    final ZkReadCache cache = newCache(curatorFramework, ZkReadCache.DEFAULT_MAX_ENTRIES);
+
+    cache.getData(path);
+    cache.getChildren(ROOT_PATH);
+    assertTrue(cache.size() > 0);
+
+    testingServer.restart();
+
+    waitFor("the connection loss to clear the cache", new Predicate<Void>() {
+      @Override
+      public boolean apply(Void input) {
+        return cache.size() == 0;
+      }
+    });
+
+    curatorFramework.getZookeeperClient().blockUntilConnectedOrTimedOut();
+    assertEquals("data", string(cache.getData(path)));
+  }
+
+  @Test
+  public void testEntriesAreBounded(CuratorFramework curatorFramework) throws Exception {
+    final int maxEntries = 8;
+    final ZkReadCache cache = newCache(curatorFramework, maxEntries);
+
+    for (int i = 0; i < 50; i++) {
+      final String path = String.format("%s/bounded/node%d", ROOT_PATH, i);
+      curatorFramework.create().creatingParentsIfNeeded().forPath(path, bytes(Integer.toString(i)));
+
+      assertEquals(Integer.toString(i), string(cache.getData(path)));
+    }
+
+    assertTrue(cache.size() <= maxEntries);
+  }
+}
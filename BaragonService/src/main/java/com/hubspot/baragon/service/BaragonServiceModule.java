@@ -4,10 +4,12 @@ import com.google.common.base.Optional;
 import com.hubspot.baragon.config.ElbConfiguration;
 import com.hubspot.baragon.service.listeners.AbstractLatchListener;
 import com.hubspot.baragon.service.listeners.ElbSyncWorkerListener;
+import com.hubspot.baragon.service.listeners.RequestPurgerListener;
 import com.hubspot.baragon.service.listeners.RequestWorkerListener;
 import io.dropwizard.jetty.HttpConnectorFactory;
 import io.dropwizard.server.SimpleServerFactory;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicLong;
@@ -15,6 +17,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.apache.curator.framework.recipes.leader.LeaderLatch;
 
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
@@ -23,8 +26,10 @@ import com.google.inject.multibindings.Multibinder;
 import com.hubspot.baragon.BaragonDataModule;
 import com.hubspot.baragon.config.AuthConfiguration;
 import com.hubspot.baragon.config.HttpClientConfiguration;
+import com.hubspot.baragon.config.RequestPurgingConfiguration;
 import com.hubspot.baragon.config.ZooKeeperConfiguration;
 import com.hubspot.baragon.data.BaragonWorkerDatastore;
+import com.hubspot.baragon.models.BaragonStateFormat;
 import com.hubspot.baragon.service.config.BaragonConfiguration;
 import com.hubspot.baragon.utils.JavaUtils;
 
@@ -45,6 +50,7 @@ public class BaragonServiceModule extends AbstractModule {
     Multibinder<AbstractLatchListener> latchBinder = Multibinder.newSetBinder(binder(), AbstractLatchListener.class);
     latchBinder.addBinding().to(RequestWorkerListener.class);
     latchBinder.addBinding().to(ElbSyncWorkerListener.class);
+    latchBinder.addBinding().to(RequestPurgerListener.class);
   }
 
   @Provides
@@ -63,6 +69,12 @@ public class BaragonServiceModule extends AbstractModule {
     return configuration.getAgentRequestUriFormat();
   }
 
+  @Provides
+  @Named(BaragonDataModule.BARAGON_AGENT_BATCH_REQUEST_URI_FORMAT)
+  public Optional<String> provideAgentBatchUriFormat(BaragonConfiguration configuration) {
+    return configuration.getAgentBatchRequestUriFormat();
+  }
+
   @Provides
   @Named(BaragonDataModule.BARAGON_AGENT_MAX_ATTEMPTS)
   public Integer provideAgentMaxAttempts(BaragonConfiguration configuration) {
@@ -85,6 +97,11 @@ public class BaragonServiceModule extends AbstractModule {
     return configuration.getElbConfiguration();
   }
 
+  @Provides
+  public RequestPurgingConfiguration providesRequestPurgingConfiguration(BaragonConfiguration configuration) {
+    return configuration.getRequestPurgingConfiguration();
+  }
+
   @Provides
   @Singleton
   @Named(BARAGON_SERVICE_SCHEDULED_EXECUTOR)
@@ -92,6 +109,37 @@ public class BaragonServiceModule extends AbstractModule {
     return Executors.newScheduledThreadPool(2);
   }
 
+  @Provides
+  @Named(BaragonDataModule.BARAGON_STATE_INCREMENTAL_UPDATES)
+  public boolean providesIncrementalStateUpdates(BaragonConfiguration config) {
+    return config.getWorkerConfiguration().isIncrementalStateUpdates();
+  }
+
+  @Provides
+  @Named(BaragonDataModule.BARAGON_STATE_MAX_CHUNK_BYTES)
+  public int providesStateMaxChunkBytes(BaragonConfiguration config) {
+    return config.getWorkerConfiguration().getStateNodeMaxChunkBytes();
+  }
+
+  @Provides
+  @Named(BaragonDataModule.BARAGON_STATE_FORMAT)
+  public BaragonStateFormat providesStateFormat(BaragonConfiguration config) {
+    return config.getWorkerConfiguration().getStateNodeFormat();
+  }
+
+  @Provides
+  @Singleton
+  @Named(BaragonDataModule.BARAGON_SERVICE_WORKER_EXECUTOR)
+  public ExecutorService providesWorkerExecutor(BaragonConfiguration config) {
+    return Executors.newFixedThreadPool(config.getWorkerConfiguration().getMaxConcurrentServices(), new ThreadFactoryBuilder().setNameFormat("BaragonRequestWorker-%d").build());
+  }
+
+  @Provides
+  @Named(BaragonDataModule.BARAGON_SERVICE_WORKER_COALESCE_UPDATES)
+  public boolean providesWorkerCoalesceUpdates(BaragonConfiguration config) {
+    return config.getWorkerConfiguration().isCoalesceUpdates();
+  }
+
   @Provides
   @Singleton
   @Named(BaragonDataModule.BARAGON_SERVICE_WORKER_LAST_START)
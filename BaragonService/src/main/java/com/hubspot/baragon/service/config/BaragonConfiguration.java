@@ -11,8 +11,10 @@ import org.hibernate.validator.constraints.NotEmpty;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Optional;
+import com.google.common.base.Strings;
 import com.hubspot.baragon.config.AuthConfiguration;
 import com.hubspot.baragon.config.HttpClientConfiguration;
+import com.hubspot.baragon.config.RequestPurgingConfiguration;
 import com.hubspot.baragon.config.ZooKeeperConfiguration;
 import com.hubspot.baragon.config.ElbConfiguration;
 
@@ -43,6 +45,10 @@ public class BaragonConfiguration extends Configuration {
   @NotEmpty
   private String agentRequestUriFormat = DEFAULT_AGENT_REQUEST_URI_FORMAT;
 
+  // when set, agents that are due several requests in the same worker run get them in a single call
+  @JsonProperty("agentBatchRequestUriFormat")
+  private String agentBatchRequestUriFormat = null;
+
   @JsonProperty("agentMaxAttempts")
   @Min(1)
   private int agentMaxAttempts = 5;
@@ -65,6 +71,11 @@ public class BaragonConfiguration extends Configuration {
   @JsonProperty("elb")
   private Optional<ElbConfiguration> elb = Optional.absent();
 
+  @JsonProperty("requestPurging")
+  @NotNull
+  @Valid
+  private RequestPurgingConfiguration requestPurgingConfiguration = new RequestPurgingConfiguration();
+
   @JsonProperty("ui")
   @Valid
   private UIConfiguration uiConfiguration = new UIConfiguration();
@@ -96,6 +107,14 @@ public class BaragonConfiguration extends Configuration {
     this.agentRequestUriFormat = agentRequestUriFormat;
   }
 
+  public Optional<String> getAgentBatchRequestUriFormat() {
+    return Optional.fromNullable(Strings.emptyToNull(agentBatchRequestUriFormat));
+  }
+
+  public void setAgentBatchRequestUriFormat(String agentBatchRequestUriFormat) {
+    this.agentBatchRequestUriFormat = agentBatchRequestUriFormat;
+  }
+
   public Optional<Long> getWorkerIntervalMs() {
     return Optional.fromNullable(workerIntervalMs);
   }
@@ -156,6 +175,14 @@ public class BaragonConfiguration extends Configuration {
     this.elb = elb;
   }
 
+  public RequestPurgingConfiguration getRequestPurgingConfiguration() {
+    return requestPurgingConfiguration;
+  }
+
+  public void setRequestPurgingConfiguration(RequestPurgingConfiguration requestPurgingConfiguration) {
+    this.requestPurgingConfiguration = requestPurgingConfiguration;
+  }
+
   public UIConfiguration getUiConfiguration() {
     return uiConfiguration;
   }
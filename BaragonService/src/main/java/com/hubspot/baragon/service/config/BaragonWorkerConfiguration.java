@@ -1,7 +1,10 @@
 package com.hubspot.baragon.service.config;
 
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.hubspot.baragon.models.BaragonStateFormat;
 
 
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -14,6 +17,24 @@ public class BaragonWorkerConfiguration {
   @Min(0)
   private int initialDelayMs = 0;
 
+  @Min(1)
+  private int maxConcurrentServices = 1;
+
+  private boolean queueWatchEnabled = false;
+
+  @Min(1)
+  private int sweepIntervalMs = 30000;
+
+  private boolean incrementalStateUpdates = false;
+
+  @Min(0)
+  private int stateNodeMaxChunkBytes = 0;
+
+  @NotNull
+  private BaragonStateFormat stateNodeFormat = BaragonStateFormat.JSON;
+
+  private boolean coalesceUpdates = false;
+
   public boolean isEnabled() {
     return enabled;
   }
@@ -37,4 +58,60 @@ public class BaragonWorkerConfiguration {
   public void setInitialDelayMs(int initialDelayMs) {
     this.initialDelayMs = initialDelayMs;
   }
+
+  public int getMaxConcurrentServices() {
+    return maxConcurrentServices;
+  }
+
+  public void setMaxConcurrentServices(int maxConcurrentServices) {
+    this.maxConcurrentServices = maxConcurrentServices;
+  }
+
+  public boolean isQueueWatchEnabled() {
+    return queueWatchEnabled;
+  }
+
+  public void setQueueWatchEnabled(boolean queueWatchEnabled) {
+    this.queueWatchEnabled = queueWatchEnabled;
+  }
+
+  public int getSweepIntervalMs() {
+    return sweepIntervalMs;
+  }
+
+  public void setSweepIntervalMs(int sweepIntervalMs) {
+    this.sweepIntervalMs = sweepIntervalMs;
+  }
+
+  public boolean isIncrementalStateUpdates() {
+    return incrementalStateUpdates;
+  }
+
+  public void setIncrementalStateUpdates(boolean incrementalStateUpdates) {
+    this.incrementalStateUpdates = incrementalStateUpdates;
+  }
+
+  public int getStateNodeMaxChunkBytes() {
+    return stateNodeMaxChunkBytes;
+  }
+
+  public void setStateNodeMaxChunkBytes(int stateNodeMaxChunkBytes) {
+    this.stateNodeMaxChunkBytes = stateNodeMaxChunkBytes;
+  }
+
+  public BaragonStateFormat getStateNodeFormat() {
+    return stateNodeFormat;
+  }
+
+  public void setStateNodeFormat(BaragonStateFormat stateNodeFormat) {
+    this.stateNodeFormat = stateNodeFormat;
+  }
+
+  public boolean isCoalesceUpdates() {
+    return coalesceUpdates;
+  }
+
+  public void setCoalesceUpdates(boolean coalesceUpdates) {
+    this.coalesceUpdates = coalesceUpdates;
+  }
 }
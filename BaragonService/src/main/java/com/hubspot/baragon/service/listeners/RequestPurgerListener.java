@@ -0,0 +1,58 @@
+package com.hubspot.baragon.service.listeners;
+
+import com.google.inject.Inject;
+import com.hubspot.baragon.config.RequestPurgingConfiguration;
+import com.hubspot.baragon.service.BaragonServiceModule;
+import com.hubspot.baragon.worker.BaragonRequestPurgerWorker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Named;
+
+public class RequestPurgerListener extends AbstractLatchListener {
+  private static final Logger LOG = LoggerFactory.getLogger(RequestPurgerListener.class);
+
+  private final ScheduledExecutorService executorService;
+  private final BaragonRequestPurgerWorker purgerWorker;
+  private final RequestPurgingConfiguration config;
+
+  private ScheduledFuture<?> purgerWorkerFuture = null;
+
+  @Inject
+  public RequestPurgerListener(@Named(BaragonServiceModule.BARAGON_SERVICE_SCHEDULED_EXECUTOR) ScheduledExecutorService executorService,
+                               RequestPurgingConfiguration config,
+                               BaragonRequestPurgerWorker purgerWorker) {
+    this.executorService = executorService;
+    this.config = config;
+    this.purgerWorker = purgerWorker;
+  }
+
+  @Override
+  public void isLeader() {
+    LOG.info("We are the leader! Starting RequestPurgerWorker...");
+
+    if (purgerWorkerFuture != null) {
+      purgerWorkerFuture.cancel(false);
+    }
+
+    purgerWorkerFuture = executorService.scheduleAtFixedRate(purgerWorker, config.getInitialDelaySeconds(), config.getIntervalSeconds(), TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void notLeader() {
+    LOG.info("We are not the leader!");
+
+    if (purgerWorkerFuture != null) {
+      purgerWorkerFuture.cancel(false);
+    }
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return config.isEnabled();
+  }
+}
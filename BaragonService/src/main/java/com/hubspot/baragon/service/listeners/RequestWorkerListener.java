@@ -1,16 +1,34 @@
 package com.hubspot.baragon.service.listeners;
 
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
 import com.google.inject.Inject;
+import com.hubspot.baragon.data.BaragonRequestDatastore;
+import com.hubspot.baragon.managers.AgentManager;
+import com.hubspot.baragon.managers.AgentResponsesListener;
+import com.hubspot.baragon.models.AgentRequestType;
+import com.hubspot.baragon.models.QueuedRequestId;
 import com.hubspot.baragon.service.BaragonServiceModule;
 import com.hubspot.baragon.service.config.BaragonConfiguration;
 import com.hubspot.baragon.worker.BaragonRequestWorker;
-import org.apache.curator.framework.recipes.leader.LeaderLatchListener;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Named;
 
@@ -19,38 +37,195 @@ public class RequestWorkerListener extends AbstractLatchListener {
 
   private final ScheduledExecutorService executorService;
   private final BaragonRequestWorker requestWorker;
+  private final BaragonRequestDatastore requestDatastore;
+  private final AgentManager agentManager;
   private final BaragonConfiguration config;
 
+  private final AtomicBoolean runPending = new AtomicBoolean(false);
+  private final Set<String> watchedRequestIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  // state watches can't be removed and runs may already be queued when leadership is lost, both check this first
+  private volatile boolean leader = false;
+
   private ScheduledFuture<?> requestWorkerFuture = null;
+  private PathChildrenCache queuePathCache = null;
 
   @Inject
   public RequestWorkerListener(@Named(BaragonServiceModule.BARAGON_SERVICE_SCHEDULED_EXECUTOR) ScheduledExecutorService executorService,
                                 BaragonConfiguration config,
-                                BaragonRequestWorker requestWorker) {
+                                BaragonRequestWorker requestWorker,
+                                BaragonRequestDatastore requestDatastore,
+                                AgentManager agentManager) {
     this.executorService = executorService;
     this.config = config;
     this.requestWorker = requestWorker;
+    this.requestDatastore = requestDatastore;
+    this.agentManager = agentManager;
   }
 
   @Override
-  public void isLeader() {
+  public synchronized void isLeader() {
     LOG.info("We are the leader! Starting RequestWorker...");
 
+    leader = true;
+
     if (requestWorkerFuture != null) {
       requestWorkerFuture.cancel(false);
     }
 
-    requestWorkerFuture = executorService.scheduleAtFixedRate(requestWorker, config.getWorkerConfiguration().getInitialDelayMs(), config.getWorkerConfiguration().getIntervalMs(), TimeUnit.MILLISECONDS);
+    // agent bookkeeping held in memory may be stale if another instance led in the meantime
+    agentManager.forgetAllRequests();
+
+    // don't wait for the next tick once all agents have answered
+    agentManager.removeResponsesListener(responsesListener);
+    agentManager.addResponsesListener(responsesListener);
+
+    if (!config.getWorkerConfiguration().isQueueWatchEnabled()) {
+      requestWorkerFuture = executorService.scheduleAtFixedRate(new Runnable() {
+        @Override
+        public void run() {
+          synchronized (requestWorker) {
+            if (leader) {
+              requestWorker.run();
+            }
+          }
+        }
+      }, config.getWorkerConfiguration().getInitialDelayMs(), config.getWorkerConfiguration().getIntervalMs(), TimeUnit.MILLISECONDS);
+      return;
+    }
+
+    closeQueuePathCache();
+
+    queuePathCache = requestDatastore.createQueuePathCache();
+    queuePathCache.getListenable().addListener(queueListener);
+
+    try {
+      queuePathCache.start();
+    } catch (Exception e) {
+      LOG.warn("Failed to start queue watch, relying on the periodic sweep", e);
+    }
+
+    // the sweep catches anything the watches missed (e.g. events lost during a connection loss)
+    requestWorkerFuture = executorService.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        trigger();
+      }
+    }, config.getWorkerConfiguration().getInitialDelayMs(), config.getWorkerConfiguration().getSweepIntervalMs(), TimeUnit.MILLISECONDS);
   }
 
   @Override
-  public void notLeader() {
+  public synchronized void notLeader() {
     LOG.info("We are not the leader!");
-    requestWorkerFuture.cancel(false);
+
+    leader = false;
+
+    if (requestWorkerFuture != null) {
+      requestWorkerFuture.cancel(false);
+    }
+
+    agentManager.removeResponsesListener(responsesListener);
+
+    closeQueuePathCache();
   }
 
   @Override
   public boolean isEnabled() {
     return config.getWorkerConfiguration().isEnabled();
   }
+
+  private void closeQueuePathCache() {
+    if (queuePathCache != null) {
+      try {
+        Closeables.close(queuePathCache, true);
+      } catch (Exception e) {
+        LOG.warn("Failed to close queue watch", e);
+      }
+      queuePathCache = null;
+    }
+
+    watchedRequestIds.clear();
+  }
+
+  // coalesces wake ups, at most one triggered run is waiting to execute at any time
+  private void trigger() {
+    if (leader && runPending.compareAndSet(false, true)) {
+      executorService.execute(triggeredRun);
+    }
+  }
+
+  private final Runnable triggeredRun = new Runnable() {
+    @Override
+    public void run() {
+      synchronized (requestWorker) {
+        runPending.set(false);
+
+        if (!leader) {
+          return;
+        }
+
+        // a transition usually means the next step can be taken right away
+        if (requestWorker.processQueuedRequests()) {
+          trigger();
+        }
+
+        watchQueuedRequestStates();
+      }
+    }
+  };
+
+  private void watchQueuedRequestStates() {
+    final PathChildrenCache cache = queuePathCache;
+
+    if (cache == null) {
+      return;
+    }
+
+    final Set<String> queuedRequestIds = Sets.newHashSet();
+
+    for (ChildData childData : cache.getCurrentData()) {
+      queuedRequestIds.add(QueuedRequestId.fromString(ZKPaths.getNodeFromPath(childData.getPath())).getRequestId());
+    }
+
+    watchedRequestIds.retainAll(queuedRequestIds);
+
+    for (String requestId : queuedRequestIds) {
+      if (watchedRequestIds.add(requestId)) {
+        try {
+          requestDatastore.watchRequestState(requestId, requestStateWatcher);
+        } catch (Exception e) {
+          LOG.warn(String.format("Failed to watch state of %s", requestId), e);
+          watchedRequestIds.remove(requestId);
+        }
+      }
+    }
+  }
+
+  private final AgentResponsesListener responsesListener = new AgentResponsesListener() {
+    @Override
+    public void responsesReceived(String requestId, AgentRequestType requestType) {
+      LOG.debug("Responses for {} ({}) are in, waking up the worker", requestId, requestType);
+      trigger();
+    }
+  };
+
+  private final PathChildrenCacheListener queueListener = new PathChildrenCacheListener() {
+    @Override
+    public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) throws Exception {
+      if (event.getType() == PathChildrenCacheEvent.Type.CHILD_ADDED || event.getType() == PathChildrenCacheEvent.Type.CHILD_REMOVED || event.getType() == PathChildrenCacheEvent.Type.CONNECTION_RECONNECTED) {
+        trigger();
+      }
+    }
+  };
+
+  // a single watcher instance, so zookeeper never registers it twice for the same node
+  private final Watcher requestStateWatcher = new Watcher() {
+    @Override
+    public void process(WatchedEvent event) {
+      if (event.getPath() != null) {
+        watchedRequestIds.remove(ZKPaths.getNodeFromPath(ZKPaths.getPathAndNode(event.getPath()).getPath()));
+        trigger();
+      }
+    }
+  };
 }
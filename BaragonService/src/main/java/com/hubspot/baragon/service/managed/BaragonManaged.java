@@ -3,6 +3,7 @@ package com.hubspot.baragon.service.managed;
 import com.hubspot.baragon.service.listeners.AbstractLatchListener;
 import io.dropwizard.lifecycle.Managed;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.Set;
 
@@ -14,6 +15,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.inject.Inject;
 import com.hubspot.baragon.BaragonDataModule;
+import com.hubspot.baragon.data.BaragonAgentMetadataCache;
 import com.hubspot.baragon.service.BaragonServiceModule;
 import com.hubspot.baragon.service.config.BaragonConfiguration;
 
@@ -22,19 +24,25 @@ public class BaragonManaged implements Managed {
   private static final Logger LOG = LoggerFactory.getLogger(BaragonManaged.class);
 
   private final ScheduledExecutorService executorService;
+  private final ExecutorService workerExecutorService;
   private final LeaderLatch leaderLatch;
   private final BaragonConfiguration config;
   private final Set<AbstractLatchListener> listeners;
+  private final BaragonAgentMetadataCache agentMetadataCache;
 
   @Inject
   public BaragonManaged(Set<AbstractLatchListener> listeners,
                         @Named(BaragonServiceModule.BARAGON_SERVICE_SCHEDULED_EXECUTOR) ScheduledExecutorService executorService,
+                        @Named(BaragonDataModule.BARAGON_SERVICE_WORKER_EXECUTOR) ExecutorService workerExecutorService,
                         @Named(BaragonDataModule.BARAGON_SERVICE_LEADER_LATCH) LeaderLatch leaderLatch,
-                        BaragonConfiguration config) {
+                        BaragonConfiguration config,
+                        BaragonAgentMetadataCache agentMetadataCache) {
     this.listeners = listeners;
     this.executorService = executorService;
+    this.workerExecutorService = workerExecutorService;
     this.leaderLatch = leaderLatch;
     this.config = config;
+    this.agentMetadataCache = agentMetadataCache;
   }
 
   @Override
@@ -50,6 +58,8 @@ public class BaragonManaged implements Managed {
   @Override
   public void stop() throws Exception {
     leaderLatch.close();
+    agentMetadataCache.close();
     executorService.shutdown();
+    workerExecutorService.shutdown();
   }
 }
@@ -1,6 +1,7 @@
 package com.hubspot.baragon.service.resources;
 
 import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 import javax.validation.Valid;
 import javax.ws.rs.Consumes;
@@ -18,6 +19,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
 import com.google.inject.Inject;
+import com.hubspot.baragon.exceptions.RequestNotCancelableException;
 import com.hubspot.baragon.managers.RequestManager;
 import com.hubspot.baragon.models.BaragonRequest;
 import com.hubspot.baragon.models.BaragonResponse;
@@ -32,11 +34,13 @@ public class RequestResource {
 
   private final RequestManager manager;
   private final ObjectMapper objectMapper;
+  private final BaragonRequestWorker worker;
 
   @Inject
-  public RequestResource(RequestManager manager, ObjectMapper objectMapper) {
+  public RequestResource(RequestManager manager, ObjectMapper objectMapper, BaragonRequestWorker worker) {
     this.manager = manager;
     this.objectMapper = objectMapper;
+    this.worker = worker;
   }
 
   @GET
@@ -64,10 +68,22 @@ public class RequestResource {
   @DELETE
   @Path("/{requestId}")
   public BaragonResponse cancelRequest(@PathParam("requestId") String requestId) {
+    final Optional<BaragonRequest> maybeRequest = manager.getRequest(requestId);
+
+    if (!maybeRequest.isPresent()) {
+      return BaragonResponse.requestDoesNotExist(requestId);
+    }
+
     // prevent race conditions when transitioning from a cancel-able to not cancel-able state
-    synchronized (BaragonRequestWorker.class) {
+    final Lock serviceLock = worker.getServiceLock(maybeRequest.get().getLoadBalancerService().getServiceId());
+    serviceLock.lock();
+    try {
       manager.cancelRequest(requestId);
       return manager.getResponse(requestId).or(BaragonResponse.requestDoesNotExist(requestId));
+    } catch (RequestNotCancelableException e) {
+      return e.getResponse();
+    } finally {
+      serviceLock.unlock();
     }
   }
 }
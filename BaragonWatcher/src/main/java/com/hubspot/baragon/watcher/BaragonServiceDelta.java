@@ -0,0 +1,60 @@
+package com.hubspot.baragon.watcher;
+
+import com.hubspot.baragon.models.BaragonService;
+import com.hubspot.baragon.models.BaragonServiceState;
+import com.hubspot.baragon.models.UpstreamInfo;
+
+import java.util.Collection;
+import java.util.Collections;
+
+public class BaragonServiceDelta {
+  private final BaragonServiceState previousState;
+  private final BaragonServiceState newState;
+  private final Collection<UpstreamInfo> addedUpstreams;
+  private final Collection<UpstreamInfo> removedUpstreams;
+
+  public BaragonServiceDelta(BaragonServiceState previousState,
+                             BaragonServiceState newState,
+                             Collection<UpstreamInfo> addedUpstreams,
+                             Collection<UpstreamInfo> removedUpstreams) {
+    this.previousState = previousState;
+    this.newState = newState;
+    this.addedUpstreams = Collections.unmodifiableCollection(addedUpstreams);
+    this.removedUpstreams = Collections.unmodifiableCollection(removedUpstreams);
+  }
+
+  public BaragonServiceState getPreviousState() {
+    return previousState;
+  }
+
+  public BaragonServiceState getNewState() {
+    return newState;
+  }
+
+  public BaragonService getService() {
+    return newState.getService();
+  }
+
+  // true if the service definition itself changed, not just its upstreams
+  public boolean isServiceChanged() {
+    return !previousState.getService().equals(newState.getService());
+  }
+
+  public Collection<UpstreamInfo> getAddedUpstreams() {
+    return addedUpstreams;
+  }
+
+  public Collection<UpstreamInfo> getRemovedUpstreams() {
+    return removedUpstreams;
+  }
+
+  @Override
+  public String toString() {
+    return "BaragonServiceDelta [" +
+        "serviceId=" + newState.getService().getServiceId() +
+        ", serviceChanged=" + isServiceChanged() +
+        ", addedUpstreams=" + addedUpstreams +
+        ", removedUpstreams=" + removedUpstreams +
+        ']';
+  }
+}
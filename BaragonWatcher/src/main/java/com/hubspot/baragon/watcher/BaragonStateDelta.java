@@ -0,0 +1,105 @@
+package com.hubspot.baragon.watcher;
+
+import com.hubspot.baragon.models.BaragonServiceState;
+import com.hubspot.baragon.models.UpstreamInfo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class BaragonStateDelta {
+  private final Collection<BaragonServiceState> addedServices;
+  private final Collection<BaragonServiceState> removedServices;
+  private final Collection<BaragonServiceDelta> changedServices;
+
+  public BaragonStateDelta(Collection<BaragonServiceState> addedServices,
+                           Collection<BaragonServiceState> removedServices,
+                           Collection<BaragonServiceDelta> changedServices) {
+    this.addedServices = Collections.unmodifiableCollection(addedServices);
+    this.removedServices = Collections.unmodifiableCollection(removedServices);
+    this.changedServices = Collections.unmodifiableCollection(changedServices);
+  }
+
+  // both maps are keyed by service id
+  public static BaragonStateDelta compute(Map<String, BaragonServiceState> previousState, Map<String, BaragonServiceState> newState) {
+    final List<BaragonServiceState> added = new ArrayList<>();
+    final List<BaragonServiceState> removed = new ArrayList<>();
+    final List<BaragonServiceDelta> changed = new ArrayList<>();
+
+    for (Map.Entry<String, BaragonServiceState> entry : newState.entrySet()) {
+      final BaragonServiceState previous = previousState.get(entry.getKey());
+
+      if (previous == null) {
+        added.add(entry.getValue());
+      } else if (!previous.equals(entry.getValue())) {
+        final Set<UpstreamInfo> previousUpstreams = new HashSet<>(previous.getUpstreams());
+        final Set<UpstreamInfo> newUpstreams = new HashSet<>(entry.getValue().getUpstreams());
+
+        final List<UpstreamInfo> addedUpstreams = new ArrayList<>();
+        for (UpstreamInfo upstream : newUpstreams) {
+          if (!previousUpstreams.contains(upstream)) {
+            addedUpstreams.add(upstream);
+          }
+        }
+
+        final List<UpstreamInfo> removedUpstreams = new ArrayList<>();
+        for (UpstreamInfo upstream : previousUpstreams) {
+          if (!newUpstreams.contains(upstream)) {
+            removedUpstreams.add(upstream);
+          }
+        }
+
+        // upstreams are compared as sets, so only a reordering isn't reported
+        if (!previous.getService().equals(entry.getValue().getService()) || !addedUpstreams.isEmpty() || !removedUpstreams.isEmpty()) {
+          changed.add(new BaragonServiceDelta(previous, entry.getValue(), addedUpstreams, removedUpstreams));
+        }
+      }
+    }
+
+    for (Map.Entry<String, BaragonServiceState> entry : previousState.entrySet()) {
+      if (!newState.containsKey(entry.getKey())) {
+        removed.add(entry.getValue());
+      }
+    }
+
+    return new BaragonStateDelta(added, removed, changed);
+  }
+
+  public static Map<String, BaragonServiceState> indexByServiceId(Collection<BaragonServiceState> state) {
+    final Map<String, BaragonServiceState> index = new LinkedHashMap<>(state.size());
+    for (BaragonServiceState serviceState : state) {
+      index.put(serviceState.getService().getServiceId(), serviceState);
+    }
+    return index;
+  }
+
+  public Collection<BaragonServiceState> getAddedServices() {
+    return addedServices;
+  }
+
+  public Collection<BaragonServiceState> getRemovedServices() {
+    return removedServices;
+  }
+
+  public Collection<BaragonServiceDelta> getChangedServices() {
+    return changedServices;
+  }
+
+  public boolean isEmpty() {
+    return addedServices.isEmpty() && removedServices.isEmpty() && changedServices.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "BaragonStateDelta [" +
+        "addedServices=" + addedServices.size() +
+        ", removedServices=" + removedServices.size() +
+        ", changedServices=" + changedServices +
+        ']';
+  }
+}
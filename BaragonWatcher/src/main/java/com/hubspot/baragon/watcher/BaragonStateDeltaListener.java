@@ -0,0 +1,5 @@
+package com.hubspot.baragon.watcher;
+
+public interface BaragonStateDeltaListener {
+  void stateChanged(BaragonStateDelta delta);
+}
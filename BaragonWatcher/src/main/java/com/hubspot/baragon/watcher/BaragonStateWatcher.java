@@ -5,31 +5,48 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Function;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.hubspot.baragon.models.BaragonGlobalStateManifest;
 import com.hubspot.baragon.models.BaragonServiceState;
+import com.hubspot.baragon.models.BaragonStateFormat;
 import com.hubspot.ringleader.watcher.Event;
 import com.hubspot.ringleader.watcher.EventListener;
 import com.hubspot.ringleader.watcher.PersistentWatcher;
+import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.listen.ListenerContainer;
+import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
+import java.io.ByteArrayOutputStream;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Singleton
 public class BaragonStateWatcher {
   private static final Logger LOG = LoggerFactory.getLogger(BaragonStateWatcher.class);
 
+  private final ObjectMapper mapper;
+  private final AtomicReference<CuratorFramework> watcherCurator;
+
+  // only touched from the single watcher thread
+  private Map<String, BaragonServiceState> previousState = Collections.emptyMap();
+
   @Inject
   public BaragonStateWatcher(final Set<BaragonStateListener> listeners,
+                             final Set<BaragonStateDeltaListener> deltaListeners,
                              final ObjectMapper mapper,
-                             @Baragon PersistentWatcher watcher) {
+                             @Baragon PersistentWatcher watcher,
+                             @Baragon AtomicReference<CuratorFramework> watcherCurator) {
+    this.mapper = mapper;
+    this.watcherCurator = watcherCurator;
+
     ExecutorService executor = newExecutor();
 
     final ListenerContainer<BaragonStateListener> listenerContainer = new ListenerContainer<>();
@@ -37,6 +54,11 @@ public class BaragonStateWatcher {
       listenerContainer.addListener(listener, executor);
     }
 
+    final ListenerContainer<BaragonStateDeltaListener> deltaListenerContainer = new ListenerContainer<>();
+    for (BaragonStateDeltaListener listener : deltaListeners) {
+      deltaListenerContainer.addListener(listener, executor);
+    }
+
     watcher.getEventListenable().addListener(new EventListener() {
 
       @Override
@@ -50,8 +72,14 @@ public class BaragonStateWatcher {
               newState = Collections.emptyList();
             } else {
               try {
-                newState = mapper.readValue(data, new TypeReference<List<BaragonServiceState>>() {});
-              } catch (IOException e) {
+                if (BaragonGlobalStateManifest.isManifest(data)) {
+                  data = readChunks(mapper.readValue(data, BaragonGlobalStateManifest.class));
+                }
+                newState = mapper.readValue(BaragonStateFormat.decode(data), new TypeReference<List<BaragonServiceState>>() {});
+              } catch (KeeperException.NoNodeException e) {
+                LOG.info("State chunks were replaced while reading them, waiting for the next update");
+                return;
+              } catch (Exception e) {
                 LOG.error("Error parsing Baragon data", e);
                 return;
               }
@@ -73,12 +101,42 @@ public class BaragonStateWatcher {
             return null;
           }
         });
+
+        if (deltaListenerContainer.size() > 0) {
+          final Map<String, BaragonServiceState> currentState = BaragonStateDelta.indexByServiceId(newState);
+          final BaragonStateDelta delta = BaragonStateDelta.compute(previousState, currentState);
+          previousState = currentState;
+
+          if (delta.isEmpty()) {
+            return;
+          }
+
+          deltaListenerContainer.forEach(new Function<BaragonStateDeltaListener, Void>() {
+
+            @Override
+            public Void apply(BaragonStateDeltaListener listener) {
+              listener.stateChanged(delta);
+              return null;
+            }
+          });
+        }
       }
     }, executor);
 
     watcher.start();
   }
 
+  private byte[] readChunks(BaragonGlobalStateManifest manifest) throws Exception {
+    final ByteArrayOutputStream serializedState = new ByteArrayOutputStream(manifest.getTotalBytes());
+    final CuratorFramework curatorFramework = watcherCurator.get();
+
+    for (int i = 0; i < manifest.getChunkCount(); i++) {
+      serializedState.write(curatorFramework.getData().forPath(manifest.getChunkPath(i)));
+    }
+
+    return serializedState.toByteArray();
+  }
+
   private ExecutorService newExecutor() {
     return Executors.newSingleThreadExecutor(new ThreadFactory() {
 
@@ -13,6 +13,8 @@ import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 public class BaragonWatcherModule extends AbstractModule {
 
   @Override
@@ -20,6 +22,7 @@ public class BaragonWatcherModule extends AbstractModule {
     bind(BaragonStateWatcher.class).asEagerSingleton();
 
     Multibinder.newSetBinder(binder(), BaragonStateListener.class);
+    Multibinder.newSetBinder(binder(), BaragonStateDeltaListener.class);
   }
 
   @Baragon
@@ -36,15 +39,26 @@ public class BaragonWatcherModule extends AbstractModule {
     return client.usingNamespace(config.getZkNamespace());
   }
 
+  // the client the persistent watcher is currently using, state chunks are read through it rather than a client of their own
+  @Baragon
+  @Provides
+  @Singleton
+  public AtomicReference<CuratorFramework> provideWatcherCurator() {
+    return new AtomicReference<>();
+  }
+
   @Baragon
   @Provides
   @Singleton
-  public PersistentWatcher provideWatcher(@Baragon final Provider<CuratorFramework> curatorProvider) {
+  public PersistentWatcher provideWatcher(@Baragon final Provider<CuratorFramework> curatorProvider,
+                                          @Baragon final AtomicReference<CuratorFramework> watcherCurator) {
     return new WatcherFactory(new Supplier<CuratorFramework>() {
 
       @Override
       public CuratorFramework get() {
-        return curatorProvider.get();
+        final CuratorFramework client = curatorProvider.get();
+        watcherCurator.set(client);
+        return client;
       }
     }).dataWatcher("/state");
   }
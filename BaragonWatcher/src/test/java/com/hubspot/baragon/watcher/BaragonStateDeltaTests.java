@@ -0,0 +1,95 @@
+package com.hubspot.baragon.watcher;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.hubspot.baragon.models.BaragonService;
+import com.hubspot.baragon.models.BaragonServiceState;
+import com.hubspot.baragon.models.UpstreamInfo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BaragonStateDeltaTests {
+
+  private static BaragonService service(String serviceId, String basePath) {
+    return new BaragonService(serviceId, Collections.<String>emptyList(), basePath, ImmutableSet.of("test"), Collections.<String, Object>emptyMap());
+  }
+
+  private static UpstreamInfo upstream(String upstream) {
+    return new UpstreamInfo(upstream, Optional.of("delta-test"), Optional.<String>absent());
+  }
+
+  private static BaragonServiceState state(BaragonService service, UpstreamInfo... upstreams) {
+    return new BaragonServiceState(service, Arrays.asList(upstreams));
+  }
+
+  private static Map<String, BaragonServiceState> index(BaragonServiceState... states) {
+    return BaragonStateDelta.indexByServiceId(Arrays.asList(states));
+  }
+
+  @Test
+  public void testAddedAndRemovedServices() {
+    final BaragonServiceState kept = state(service("kept", "/kept"), upstream("a:80"));
+    final BaragonServiceState removed = state(service("removed", "/removed"), upstream("b:80"));
+    final BaragonServiceState added = state(service("added", "/added"), upstream("c:80"));
+
+    final BaragonStateDelta delta = BaragonStateDelta.compute(index(kept, removed), index(kept, added));
+
+    assertEquals(Collections.singletonList(added), Arrays.asList(delta.getAddedServices().toArray()));
+    assertEquals(Collections.singletonList(removed), Arrays.asList(delta.getRemovedServices().toArray()));
+    assertTrue(delta.getChangedServices().isEmpty());
+  }
+
+  @Test
+  public void testChangedUpstreams() {
+    final BaragonService service = service("changed", "/changed");
+
+    final BaragonStateDelta delta = BaragonStateDelta.compute(
+        index(state(service, upstream("a:80"), upstream("b:80"))),
+        index(state(service, upstream("b:80"), upstream("c:80"))));
+
+    assertTrue(delta.getAddedServices().isEmpty());
+    assertTrue(delta.getRemovedServices().isEmpty());
+    assertEquals(1, delta.getChangedServices().size());
+
+    final BaragonServiceDelta serviceDelta = delta.getChangedServices().iterator().next();
+
+    assertFalse(serviceDelta.isServiceChanged());
+    assertEquals(ImmutableSet.of(upstream("c:80")), ImmutableSet.copyOf(serviceDelta.getAddedUpstreams()));
+    assertEquals(ImmutableSet.of(upstream("a:80")), ImmutableSet.copyOf(serviceDelta.getRemovedUpstreams()));
+  }
+
+  @Test
+  public void testChangedServiceDefinition() {
+    final BaragonStateDelta delta = BaragonStateDelta.compute(
+        index(state(service("moved", "/before"), upstream("a:80"))),
+        index(state(service("moved", "/after"), upstream("a:80"))));
+
+    assertEquals(1, delta.getChangedServices().size());
+
+    final BaragonServiceDelta serviceDelta = delta.getChangedServices().iterator().next();
+
+    assertTrue(serviceDelta.isServiceChanged());
+    assertEquals("/after", serviceDelta.getService().getServiceBasePath());
+    assertTrue(serviceDelta.getAddedUpstreams().isEmpty());
+    assertTrue(serviceDelta.getRemovedUpstreams().isEmpty());
+  }
+
+  @Test
+  public void testReorderedUpstreamsAreNotAChange() {
+    final BaragonService service = service("reordered", "/reordered");
+
+    final BaragonStateDelta delta = BaragonStateDelta.compute(
+        index(state(service, upstream("a:80"), upstream("b:80"))),
+        index(state(service, upstream("b:80"), upstream("a:80"))));
+
+    assertTrue(delta.isEmpty());
+  }
+}